@@ -0,0 +1,46 @@
+package exceptions;
+
+import java.io.Serial;
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * Пересечения по времени, найденные при загрузке. Содержит все пересекающиеся пары, а не только первую.
+ */
+public class TaskOverlapException extends IllegalArgumentException {
+
+    @Serial
+    private static final long serialVersionUID = 1L;
+    private static final int PAIRS_IN_MESSAGE = 20;
+
+    private final Conflict[] conflicts;
+
+    public TaskOverlapException(List<Conflict> conflicts, String method) {
+        super(message(conflicts, method));
+        this.conflicts = conflicts.toArray(new Conflict[0]);
+    }
+
+    public List<Conflict> getConflicts() {
+        return List.of(conflicts);
+    }
+
+    private static String message(List<Conflict> conflicts, String method) {
+        StringBuilder result = new StringBuilder("Tasks intersect: ")
+                .append(conflicts.size()).append(" conflicting pairs ");
+        result.append(conflicts.subList(0, Math.min(conflicts.size(), PAIRS_IN_MESSAGE)));
+        if (conflicts.size() > PAIRS_IN_MESSAGE) {
+            result.append(" and ").append(conflicts.size() - PAIRS_IN_MESSAGE).append(" more");
+        }
+        return result.append(": method ").append(method).toString();
+    }
+
+    /**
+     * Пара id пересекающихся задач; first начинается не позже second.
+     */
+    public record Conflict(int first, int second) implements Serializable {
+        @Override
+        public String toString() {
+            return first + "-" + second;
+        }
+    }
+}
@@ -2,21 +2,51 @@ package model;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
-import java.util.Objects;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.function.IntConsumer;
 
 import static model.TaskType.EPIC;
 
-public class Epic extends Task {
+/**
+ * Эпик сам поддерживает свои статус и время: счётчики подзадач по статусам, суммарную
+ * длительность и подзадачи, упорядоченные по началу и по окончанию. Они обновляются при каждом
+ * добавлении, замене и удалении подзадачи за O(log n), без обхода всех подзадач и без создания
+ * объектов времени.
+ *
+ * Эпик хранит только id своих подзадач, в порядке добавления. Сами подзадачи эпик, подключённый
+ * через {@link #attach(SubtaskSource)}, берёт у менеджера, так что у каждой подзадачи одна хранимая
+ * копия. Неподключённый эпик (новый, копия или запись снимка) держит переданные ему подзадачи у себя.
+ *
+ * Для учёта используется хранимый экземпляр подзадачи, поэтому его нельзя изменять после
+ * добавления: для изменения подзадача заменяется через replaceSubtask, до замены в хранилище.
+ */
+public class Epic extends Task implements EpicView {
 
-    private final ArrayList<Subtask> subtasks;
-    private LocalDateTime endTime;
+    private static final Comparator<Task> BY_START = ((Comparator<Task>) Task::compareStartTime)
+            .thenComparing(Task::getId);
+    private static final Comparator<Task> BY_END = ((Comparator<Task>) Task::compareEndTime)
+            .thenComparing(Task::getId);
+
+    private IntOrderedSet subtaskIds = new IntOrderedSet();
+    private SubtaskSource source;
+    private Map<Integer, Subtask> detached;
+
+    private final int[] statusCounts = new int[TaskStatus.values().length];
+    private long totalSeconds;
+    private long totalNanos;
+    private final TreeSet<Subtask> starts = new TreeSet<>(BY_START);
+    private final TreeSet<Subtask> ends = new TreeSet<>(BY_END);
 
     //---------------------------------------------------
     //конструктор
     //---------------------------------------------------
     public Epic(String name, String description) {
         super(name, description, TaskStatus.NEW);
-        this.subtasks = new ArrayList<>();
     }
 
     //---------------------------------------------------
@@ -26,59 +56,139 @@ public class Epic extends Task {
         return EPIC;
     }
 
-    @Override
-    public LocalDateTime getEndTime() {
-        return endTime;
+    public void setEndTime(LocalDateTime endTime) {
+        assignEndTime(endTime);
     }
 
-    public void setEndTime(LocalDateTime endTime) {
-        this.endTime = endTime;
+    @Override
+    boolean derivesEndTime() {
+        return false;
     }
 
     //---------------------------------------------------
     //блок методов для Subtask
     //---------------------------------------------------
+
+    /**
+     * Подключает эпик к хранилищу подзадач: дальше подзадачи находятся по id через source.
+     * Подзадачи, которых в source нет, из эпика убираются.
+     */
+    public void attach(SubtaskSource source) {
+        Map<Integer, Subtask> own = detached;
+        this.source = source;
+        this.detached = null;
+        if (own == null) {
+            return;
+        }
+        own.forEach((id, subtask) -> {
+            if (source.findSubtask(id) == null) {
+                subtaskIds.remove(id);
+                count(subtask, -1);
+            }
+        });
+        refresh();
+    }
+
+    /**
+     * Добавляет подзадачу. У подключённого эпика subtask должна быть экземпляром, который хранит source.
+     */
     public void addSubtask(Subtask subtask) {
-        if (subtasks.contains(subtask)) {
+        if (subtask.getId() == null) {
+            System.out.println("model.Subtask has no id");
+            System.out.println("method addSubtask in model.Epic");
+            return;
+        }
+
+        if (subtaskIds.contains(subtask.getId())) {
             System.out.println("model.Subtask already exists here");
             System.out.println("method addSubtask in model.Epic");
             return;
         }
 
-        if (this.getId().equals(subtask.getId())) {
+        if (subtask.getId().equals(this.getId())) {
             System.out.println("epic has the same id");
             System.out.println("method addSubtask in model.Epic");
             return;
         }
 
-        subtasks.add(subtask);
+        keep(subtask);
+        count(subtask, 1);
+        refresh();
+    }
 
-        setEndTime(getSubtasks().stream()
-                .map(Subtask::getEndTime)
-                .filter(Objects::nonNull)
-                .max(LocalDateTime::compareTo)
-                .orElse(null));
+    /**
+     * Добавляет подзадачи из загрузки списком, без проверки на повторы: за уникальность
+     * отвечает вызывающий. Статус и время пересчитываются один раз.
+     */
+    public void addSubtasks(Collection<Subtask> loaded) {
+        for (Subtask subtask : loaded) {
+            keep(subtask);
+            count(subtask, 1);
+        }
+        refresh();
     }
 
+    /**
+     * Убирает подзадачу. Подключённый эпик вызывается до удаления подзадачи из source.
+     */
     public void removeSubtask(Subtask subtask) {
-        if (!subtasks.contains(subtask)) {
+        Subtask removed = subtask.getId() == null ? null : resolve(subtask.getId());
+        if (removed == null || !subtaskIds.remove(subtask.getId())) {
             System.out.println("model.Subtask doesn't exists here");
             System.out.println("method removeSubtask in model.Epic");
             return;
         }
-        subtasks.remove(subtask);
+        if (detached != null) {
+            detached.remove(subtask.getId());
+        }
+        count(removed, -1);
+        refresh();
     }
 
     public ArrayList<Subtask> getSubtasks() {
-        return new ArrayList<>(subtasks);
+        ArrayList<Subtask> result = new ArrayList<>(subtaskIds.size());
+        subtaskIds.forEach(id -> {
+            Subtask subtask = resolve(id);
+            if (subtask != null) {
+                result.add(subtask);
+            }
+        });
+        return result;
+    }
+
+    public int[] getSubtaskIds() {
+        return subtaskIds.toArray();
+    }
+
+    public boolean containsSubtask(int id) {
+        return subtaskIds.contains(id);
+    }
+
+    public int getSubtaskCount() {
+        return subtaskIds.size();
+    }
+
+    public void forEachSubtaskId(IntConsumer action) {
+        subtaskIds.forEach(action);
     }
 
     public void deleteAllSubtasks() {
-        subtasks.clear();
+        subtaskIds.clear();
+        detached = null;
+        Arrays.fill(statusCounts, 0);
+        totalSeconds = 0;
+        totalNanos = 0;
+        starts.clear();
+        ends.clear();
+        refresh();
     }
 
+    /**
+     * Заменяет подзадачу. Подключённый эпик вызывается до замены подзадачи в source.
+     */
     public void replaceSubtask(Subtask subtaskBefore, Subtask subtaskAfter) {
-        if (!subtasks.contains(subtaskBefore)) {
+        Subtask stored = subtaskBefore.getId() == null ? null : resolve(subtaskBefore.getId());
+        if (stored == null || !subtaskIds.contains(subtaskBefore.getId())) {
             System.out.println("There is no subtask with id = " + subtaskBefore.getId() + " in subtasks");
             System.out.println("method replaceSubtask in model.Epic");
             return;
@@ -89,7 +199,75 @@ public class Epic extends Task {
             System.out.println("method replaceSubtask in model.Epic");
             return;
         }
-        subtasks.set(subtasks.indexOf(subtaskBefore), subtaskAfter);
+        count(stored, -1);
+        if (source == null) {
+            detached.put(subtaskAfter.getId(), subtaskAfter);
+        }
+        count(subtaskAfter, 1);
+        refresh();
+    }
+
+    private void keep(Subtask subtask) {
+        subtaskIds.add(subtask.getId());
+        if (source == null) {
+            if (detached == null) {
+                detached = new HashMap<>();
+            }
+            detached.put(subtask.getId(), subtask);
+        }
+    }
+
+    private Subtask resolve(int id) {
+        if (source != null) {
+            return source.findSubtask(id);
+        }
+        return detached == null ? null : detached.get(id);
+    }
+
+    //---------------------------------------------------
+    // блок агрегатов
+    //---------------------------------------------------
+    private void count(Subtask subtask, int delta) {
+        if (subtask.getStatus() != null) {
+            statusCounts[subtask.getStatus().ordinal()] += delta;
+        }
+        if (subtask.getDurationSeconds() != NO_TIME) {
+            totalSeconds += delta * subtask.getDurationSeconds();
+            totalNanos += delta * (long) subtask.getDurationNano();
+        }
+        if (subtask.getStartEpochSecond() != NO_TIME) {
+            track(starts, subtask, delta);
+            if (subtask.getDurationSeconds() != NO_TIME) {
+                track(ends, subtask, delta);
+            }
+        }
+    }
+
+    private static void track(TreeSet<Subtask> times, Subtask subtask, int delta) {
+        if (delta > 0) {
+            times.add(subtask);
+        } else {
+            times.remove(subtask);
+        }
+    }
+
+    /*
+     * Статус: NEW, если все подзадачи новые (или их нет), DONE, если все выполнены, иначе IN_PROGRESS.
+     * Подзадача без статуса не считается ни новой, ни выполненной.
+     */
+    private void refresh() {
+        int size = subtaskIds.size();
+        if (statusCounts[TaskStatus.NEW.ordinal()] == size) {
+            setStatus(TaskStatus.NEW);
+        } else if (statusCounts[TaskStatus.DONE.ordinal()] == size) {
+            setStatus(TaskStatus.DONE);
+        } else {
+            setStatus(TaskStatus.IN_PROGRESS);
+        }
+        copyStartFrom(starts.isEmpty() ? null : starts.first());
+        assignDuration(totalSeconds + Math.floorDiv(totalNanos, 1_000_000_000L),
+                (int) Math.floorMod(totalNanos, 1_000_000_000L));
+        copyEndFrom(ends.isEmpty() ? null : ends.last());
     }
 
     //---------------------------------------------------
@@ -97,24 +275,28 @@ public class Epic extends Task {
     //---------------------------------------------------
     @Override
     public Task cloneTask() {
-        Epic newTask = new Epic(getName(), getDescription());
-        newTask.setId(getId());
-        newTask.setStatus(getStatus());
-        newTask.setDuration(getDuration());
-        newTask.setStartTime(getStartTime());
-        newTask.setEndTime(getEndTime());
-        newTask.subtasks.addAll(subtasks);
-        return newTask;
+        return cloneEpic();
     }
 
+    /**
+     * Копия не подключена к хранилищу: она держит ссылки на текущие подзадачи у себя,
+     * поэтому её можно читать без блокировки, пока менеджер меняет подзадачи.
+     */
     public Epic cloneEpic() {
         Epic newTask = new Epic(getName(), getDescription());
         newTask.setId(getId());
         newTask.setStatus(getStatus());
-        newTask.setDuration(getDuration());
-        newTask.setStartTime(getStartTime());
-        newTask.setEndTime(getEndTime());
-        newTask.subtasks.addAll(subtasks);
+        newTask.copyTimeFrom(this);
+        newTask.subtaskIds = subtaskIds.copy();
+        if (subtaskIds.size() > 0) {
+            newTask.detached = new HashMap<>(subtaskIds.size() * 2);
+            subtaskIds.forEach(id -> newTask.detached.put(id, resolve(id)));
+        }
+        System.arraycopy(statusCounts, 0, newTask.statusCounts, 0, statusCounts.length);
+        newTask.totalSeconds = totalSeconds;
+        newTask.totalNanos = totalNanos;
+        newTask.starts.addAll(starts);
+        newTask.ends.addAll(ends);
         return newTask;
     }
 }
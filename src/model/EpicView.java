@@ -0,0 +1,18 @@
+package model;
+
+import java.util.function.IntConsumer;
+
+/**
+ * Эпик только для чтения: статус, время и id подзадач без сборки списка подзадач.
+ */
+public interface EpicView extends TaskView {
+
+    int getSubtaskCount();
+
+    boolean containsSubtask(int id);
+
+    /**
+     * Передаёт id подзадач в порядке добавления.
+     */
+    void forEachSubtaskId(IntConsumer action);
+}
@@ -0,0 +1,171 @@
+package model;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Множество int без упаковки, которое помнит порядок добавления. Ключи лежат в массиве
+ * в порядке добавления, удалённые позиции отмечаются в битовой маске, а поиск идёт через
+ * хэш-таблицу с открытой адресацией, где хранится позиция ключа. Добавление, удаление
+ * и проверка - O(1) в среднем, обход - в порядке добавления.
+ *
+ * Массив ключей уплотняется, когда в нём кончается место, так что удалённые позиции
+ * занимают не больше его длины.
+ */
+final class IntOrderedSet {
+
+    private static final int EMPTY = 0;
+    private static final int DELETED = -1;
+    private static final int MIN_CAPACITY = 4;
+
+    private int[] keys;
+    private long[] holes;
+    private int[] table;
+    private int used;
+    private int size;
+
+    IntOrderedSet() {
+        allocate(MIN_CAPACITY);
+    }
+
+    private IntOrderedSet(IntOrderedSet source) {
+        keys = source.keys.clone();
+        holes = source.holes.clone();
+        table = source.table.clone();
+        used = source.used;
+        size = source.size;
+    }
+
+    //---------------------------------------------------
+    // блок операций
+    //---------------------------------------------------
+    boolean add(int key) {
+        if (slot(key) >= 0) {
+            return false;
+        }
+        if (used == keys.length) {
+            rebuild();
+        }
+        keys[used] = key;
+        insert(key, used);
+        used++;
+        size++;
+        return true;
+    }
+
+    boolean remove(int key) {
+        int slot = slot(key);
+        if (slot < 0) {
+            return false;
+        }
+        int position = table[slot] - 1;
+        table[slot] = DELETED;
+        holes[position >>> 6] |= 1L << position;
+        size--;
+        return true;
+    }
+
+    boolean contains(int key) {
+        return slot(key) >= 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    void clear() {
+        allocate(MIN_CAPACITY);
+        used = 0;
+        size = 0;
+    }
+
+    /**
+     * Обходит ключи в порядке добавления.
+     */
+    void forEach(IntConsumer action) {
+        for (int position = 0; position < used; position++) {
+            if (!isHole(position)) {
+                action.accept(keys[position]);
+            }
+        }
+    }
+
+    int[] toArray() {
+        int[] result = new int[size];
+        int index = 0;
+        for (int position = 0; position < used; position++) {
+            if (!isHole(position)) {
+                result[index++] = keys[position];
+            }
+        }
+        return result;
+    }
+
+    IntOrderedSet copy() {
+        return new IntOrderedSet(this);
+    }
+
+    //---------------------------------------------------
+    // блок хэш-таблицы
+    //---------------------------------------------------
+
+    /*
+     * Ячейка таблицы с ключом или -1. Таблица минимум вдвое длиннее массива ключей,
+     * поэтому пустая ячейка всегда найдётся и поиск заканчивается.
+     */
+    private int slot(int key) {
+        int mask = table.length - 1;
+        for (int slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+            int entry = table[slot];
+            if (entry == EMPTY) {
+                return -1;
+            }
+            if (entry != DELETED && keys[entry - 1] == key) {
+                return slot;
+            }
+        }
+    }
+
+    private void insert(int key, int position) {
+        int mask = table.length - 1;
+        int slot = hash(key) & mask;
+        while (table[slot] > 0) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = position + 1;
+    }
+
+    private boolean isHole(int position) {
+        return (holes[position >>> 6] & (1L << position)) != 0;
+    }
+
+    /*
+     * Уплотняет массив ключей, убирая удалённые позиции, и удваивает его, если живых ключей
+     * больше половины. Таблица строится заново, без отметок удаления.
+     */
+    private void rebuild() {
+        int[] live = toArray();
+        allocate(size * 2 > keys.length ? keys.length * 2 : keys.length);
+        System.arraycopy(live, 0, keys, 0, live.length);
+        used = live.length;
+        for (int position = 0; position < used; position++) {
+            insert(keys[position], position);
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        holes = new long[(capacity + Long.SIZE - 1) / Long.SIZE];
+        table = new int[capacity * 2];
+    }
+
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(toArray());
+    }
+}
@@ -5,7 +5,7 @@ import java.time.LocalDateTime;
 
 import static model.TaskType.SUBTASK;
 
-public class Subtask extends Task {
+public class Subtask extends Task implements SubtaskView {
 
     private final Integer epicId;
 
@@ -38,14 +38,16 @@ public class Subtask extends Task {
     //---------------------------------------------------
     @Override
     public Task cloneTask() {
-        Subtask newTask = new Subtask(getName(), getDescription(), getStatus(), getStartTime(), getDuration(), epicId);
+        Subtask newTask = new Subtask(getName(), getDescription(), getStatus(), epicId);
         newTask.setId(getId());
+        newTask.copyTimeFrom(this);
         return newTask;
     }
 
     public Subtask cloneSubtask() {
-        Subtask newTask = new Subtask(getName(), getDescription(), getStatus(), getStartTime(), getDuration(), epicId);
+        Subtask newTask = new Subtask(getName(), getDescription(), getStatus(), epicId);
         newTask.setId(getId());
+        newTask.copyTimeFrom(this);
         return newTask;
     }
 }
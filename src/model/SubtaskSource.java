@@ -0,0 +1,13 @@
+package model;
+
+/**
+ * Хранилище подзадач, через которое эпик находит свои подзадачи по id.
+ */
+@FunctionalInterface
+public interface SubtaskSource {
+
+    /**
+     * Подзадача с данным id или null, если её нет.
+     */
+    Subtask findSubtask(int id);
+}
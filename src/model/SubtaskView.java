@@ -0,0 +1,9 @@
+package model;
+
+/**
+ * Подзадача только для чтения.
+ */
+public interface SubtaskView extends TaskView {
+
+    Integer getEpicId();
+}
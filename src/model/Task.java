@@ -2,17 +2,35 @@ package model;
 
 import java.time.Duration;
 import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 import java.util.Objects;
 
 import static model.TaskType.TASK;
 
-public class Task {
+/**
+ * Время задачи хранится примитивами: начало - секунды эпохи (UTC) и наносекунды, длительность -
+ * секунды и наносекунды, окончание вычисляется при изменении начала или длительности и тоже
+ * хранится. Геттеры LocalDateTime и Duration собирают объекты по этим полям, а сравнения
+ * для проверки пересечений работают прямо с полями и ничего не создают.
+ */
+public class Task implements TaskView {
+
+    /**
+     * Значение секунд, означающее, что время не задано.
+     */
+    public static final long NO_TIME = Long.MIN_VALUE;
+    private static final int NANOS_PER_SECOND = 1_000_000_000;
+
     private String name;
     private String description;
     private TaskStatus status;
     private Integer id;
-    private Duration duration;
-    private LocalDateTime startTime;
+    private long startSecond = NO_TIME;
+    private int startNano;
+    private long durationSeconds = NO_TIME;
+    private int durationNano;
+    private long endSecond = NO_TIME;
+    private int endNano;
 
     //---------------------------------------------------
     //конструктор
@@ -28,8 +46,9 @@ public class Task {
         this.description = description;
         this.name = name;
         this.status = status;
-        this.duration = duration;
-        this.startTime = startTime;
+        storeDuration(duration);
+        storeStart(startTime);
+        deriveEnd();
     }
 
     //---------------------------------------------------
@@ -73,34 +92,174 @@ public class Task {
     }
 
     public Duration getDuration() {
-        return duration;
+        return durationSeconds == NO_TIME ? null : Duration.ofSeconds(durationSeconds, durationNano);
     }
 
     public void setDuration(Duration duration) {
-        this.duration = duration;
+        storeDuration(duration);
+        if (derivesEndTime()) {
+            deriveEnd();
+        }
     }
 
     public LocalDateTime getStartTime() {
-        return startTime;
+        return time(startSecond, startNano);
     }
 
     public void setStartTime(LocalDateTime startTime) {
-        this.startTime = startTime;
+        storeStart(startTime);
+        if (derivesEndTime()) {
+            deriveEnd();
+        }
     }
 
     public LocalDateTime getEndTime() {
-        if (startTime == null || duration == null) {
-            return null;
+        return time(endSecond, endNano);
+    }
+
+    //---------------------------------------------------
+    //блок времени без создания объектов
+    //---------------------------------------------------
+
+    /**
+     * Секунды эпохи начала (UTC) или {@link #NO_TIME}.
+     */
+    public long getStartEpochSecond() {
+        return startSecond;
+    }
+
+    public int getStartNano() {
+        return startNano;
+    }
+
+    /**
+     * Длительность в секундах или {@link #NO_TIME}.
+     */
+    public long getDurationSeconds() {
+        return durationSeconds;
+    }
+
+    public int getDurationNano() {
+        return durationNano;
+    }
+
+    /**
+     * Сравнивает начала; задача без начала меньше любой задачи с началом.
+     */
+    public int compareStartTime(Task other) {
+        return compare(startSecond, startNano, other.startSecond, other.startNano);
+    }
+
+    /**
+     * Сравнивает окончания, а для задач без окончания - начала.
+     */
+    public int compareEndTime(Task other) {
+        return compare(lastSecond(), lastNano(), other.lastSecond(), other.lastNano());
+    }
+
+    /**
+     * Закончится ли задача позже начала other. Задача без окончания считается точкой в своём начале.
+     */
+    public boolean endsAfterStartOf(Task other) {
+        return compare(lastSecond(), lastNano(), other.startSecond, other.startNano) > 0;
+    }
+
+    /**
+     * Пересекаются ли по времени задачи, у которых задано начало. Касание концами пересечением не считается.
+     */
+    public boolean overlaps(Task other) {
+        return endsAfterStartOf(other) && other.endsAfterStartOf(this);
+    }
+
+    /*
+     * Окончание считается из начала и длительности у всех задач, кроме эпиков: у эпика оно своё.
+     */
+    boolean derivesEndTime() {
+        return true;
+    }
+
+    void assignEndTime(LocalDateTime endTime) {
+        endSecond = endTime == null ? NO_TIME : endTime.toEpochSecond(ZoneOffset.UTC);
+        endNano = endTime == null ? 0 : endTime.getNano();
+    }
+
+    /*
+     * Копирует начало, длительность и окончание из source без создания объектов времени.
+     */
+    void copyTimeFrom(Task source) {
+        startSecond = source.startSecond;
+        startNano = source.startNano;
+        durationSeconds = source.durationSeconds;
+        durationNano = source.durationNano;
+        endSecond = source.endSecond;
+        endNano = source.endNano;
+    }
+
+    void copyStartFrom(Task source) {
+        startSecond = source == null ? NO_TIME : source.startSecond;
+        startNano = source == null ? 0 : source.startNano;
+    }
+
+    void copyEndFrom(Task source) {
+        endSecond = source == null ? NO_TIME : source.endSecond;
+        endNano = source == null ? 0 : source.endNano;
+    }
+
+    void assignDuration(long seconds, int nano) {
+        durationSeconds = seconds;
+        durationNano = nano;
+    }
+
+    private void storeStart(LocalDateTime startTime) {
+        startSecond = startTime == null ? NO_TIME : startTime.toEpochSecond(ZoneOffset.UTC);
+        startNano = startTime == null ? 0 : startTime.getNano();
+    }
+
+    private void storeDuration(Duration duration) {
+        durationSeconds = duration == null ? NO_TIME : duration.getSeconds();
+        durationNano = duration == null ? 0 : duration.getNano();
+    }
+
+    private void deriveEnd() {
+        if (startSecond == NO_TIME || durationSeconds == NO_TIME) {
+            endSecond = NO_TIME;
+            endNano = 0;
+            return;
         }
-        return startTime.plus(duration);
+        long second = startSecond + durationSeconds;
+        int nano = startNano + durationNano;
+        if (nano >= NANOS_PER_SECOND) {
+            second++;
+            nano -= NANOS_PER_SECOND;
+        }
+        endSecond = second;
+        endNano = nano;
+    }
+
+    private long lastSecond() {
+        return endSecond != NO_TIME ? endSecond : startSecond;
+    }
+
+    private int lastNano() {
+        return endSecond != NO_TIME ? endNano : startNano;
+    }
+
+    private static int compare(long second, int nano, long otherSecond, int otherNano) {
+        int result = Long.compare(second, otherSecond);
+        return result != 0 ? result : Integer.compare(nano, otherNano);
+    }
+
+    private static LocalDateTime time(long second, int nano) {
+        return second == NO_TIME ? null : LocalDateTime.ofEpochSecond(second, nano, ZoneOffset.UTC);
     }
 
     //---------------------------------------------------
     //создание копии
     //---------------------------------------------------
     public Task cloneTask() {
-        Task newTask = new Task(name, description, status, startTime, duration);
+        Task newTask = new Task(name, description, status);
         newTask.setId(id);
+        newTask.copyTimeFrom(this);
         return newTask;
     }
 
@@ -127,8 +286,8 @@ public class Task {
                 ", description='" + description + '\'' +
                 ", status=" + status +
                 ", id=" + id +
-                ", startTime=" + startTime +
-                ", duration=" + duration +
+                ", startTime=" + getStartTime() +
+                ", duration=" + getDuration() +
                 '}';
     }
 }
@@ -0,0 +1,28 @@
+package model;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+/**
+ * Задача только для чтения. Менеджер отдаёт через такие представления свои хранимые объекты
+ * без копирования данных, в обёртке, которую нельзя привести к Task; изменять задачу можно
+ * только через updateTask, updateSubtask и updateEpic.
+ */
+public interface TaskView {
+
+    Integer getId();
+
+    String getName();
+
+    String getDescription();
+
+    TaskStatus getStatus();
+
+    TaskType getType();
+
+    LocalDateTime getStartTime();
+
+    Duration getDuration();
+
+    LocalDateTime getEndTime();
+}
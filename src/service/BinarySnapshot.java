@@ -0,0 +1,247 @@
+package service;
+
+import exceptions.ManagerSaveException;
+import model.*;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Двоичный снимок с фиксированной раскладкой: заголовок, таблица записей одинакового размера
+ * и таблица строк. Читается через FileChannel.map без построчного разбора.
+ *
+ * <pre>
+ * заголовок: magic(int) version(int) generation(long) count(int) stringsOffset(long)
+ * запись:    id(int) type(byte) status(byte) reserved(short) epicId(int)
+ *            startSeconds(long) startNanos(int) durationMinutes(long)
+ *            nameOffset(int) nameLength(int) descriptionOffset(int) descriptionLength(int)
+ * хвост:     crc32c(int) всего, что выше (с версии 2)
+ * </pre>
+ */
+final class BinarySnapshot {
+
+    static final int MAGIC = 0x4B4E4231;
+    static final int VERSION = 2;
+    static final int LEGACY_VERSION = 1;
+    static final int HEADER_SIZE = 28;
+    static final int RECORD_SIZE = 48;
+
+    private static final long NO_TIME = Long.MIN_VALUE;
+    private static final int NO_EPIC = -1;
+    private static final TaskType[] TYPES = TaskType.values();
+    private static final TaskStatus[] STATUSES = TaskStatus.values();
+
+    private BinarySnapshot() {
+    }
+
+    //---------------------------------------------------
+    // блок записи
+    //---------------------------------------------------
+    static void write(File target, List<Task> tasks, List<Epic> epics, long generation, boolean force,
+                      Compression compression) {
+        List<Task> records = new ArrayList<>(tasks);
+        for (Epic epic : epics) {
+            records.add(epic);
+            records.addAll(epic.getSubtasks());
+        }
+
+        List<byte[]> strings = new ArrayList<>(records.size() * 2);
+        for (Task task : records) {
+            strings.add(encode(task.getName()));
+            strings.add(encode(task.getDescription()));
+        }
+
+        try (FileOutputStream file = new FileOutputStream(target);
+             OutputStream compressed = compression.wrap(file);
+             CheckedOutputStream checked = new CheckedOutputStream(compressed, new CRC32C());
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(checked, 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(generation);
+            out.writeInt(records.size());
+            out.writeLong(HEADER_SIZE + (long) records.size() * RECORD_SIZE);
+
+            int stringOffset = 0;
+            for (int i = 0; i < records.size(); i++) {
+                Task task = records.get(i);
+                byte[] name = strings.get(2 * i);
+                byte[] description = strings.get(2 * i + 1);
+
+                out.writeInt(task.getId());
+                out.writeByte(task.getType().ordinal());
+                out.writeByte(task.getStatus().ordinal());
+                out.writeShort(0);
+                out.writeInt(task instanceof Subtask subtask ? subtask.getEpicId() : NO_EPIC);
+                if (task.getStartTime() != null) {
+                    out.writeLong(task.getStartTime().toEpochSecond(ZoneOffset.UTC));
+                    out.writeInt(task.getStartTime().getNano());
+                } else {
+                    out.writeLong(NO_TIME);
+                    out.writeInt(0);
+                }
+                out.writeLong(task.getDuration() != null ? task.getDuration().toMinutes() : NO_TIME);
+                out.writeInt(stringOffset);
+                out.writeInt(name == null ? -1 : name.length);
+                stringOffset += name == null ? 0 : name.length;
+                out.writeInt(stringOffset);
+                out.writeInt(description == null ? -1 : description.length);
+                stringOffset += description == null ? 0 : description.length;
+            }
+
+            for (byte[] value : strings) {
+                if (value != null) {
+                    out.write(value);
+                }
+            }
+
+            out.flush();
+            out.writeInt((int) checked.getChecksum().getValue());
+            out.flush();
+            Compression.finish(compressed);
+            if (force) {
+                file.getChannel().force(true);
+            }
+        } catch (IOException e) {
+            throw new ManagerSaveException("Ошибка записи в файл " + target.getName());
+        }
+    }
+
+    private static byte[] encode(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    //---------------------------------------------------
+    // блок чтения
+    //---------------------------------------------------
+
+    /**
+     * Передаёт записи снимка в sink в порядке записи и возвращает поколение снимка.
+     */
+    static long read(File source, Consumer<Task> sink) throws IOException {
+        MappedByteBuffer buffer = map(source, true);
+        return buffer == null ? 0 : read(buffer, sink);
+    }
+
+    /**
+     * То же для снимка, уже находящегося в памяти, например распакованного.
+     */
+    static long read(ByteBuffer content, String name, Consumer<Task> sink) {
+        if (content.limit() == 0) {
+            return 0;
+        }
+        validate(content, name, true);
+        return read(content, sink);
+    }
+
+    private static long read(ByteBuffer buffer, Consumer<Task> sink) {
+        int count = buffer.getInt(16);
+        int strings = (int) buffer.getLong(20);
+        for (int i = 0; i < count; i++) {
+            sink.accept(decode(buffer, HEADER_SIZE + i * RECORD_SIZE, strings));
+        }
+        return generation(buffer);
+    }
+
+    /**
+     * Отображает снимок в память и проверяет заголовок, для пустого файла возвращает null.
+     * Контрольная сумма проверяется только при verifyChecksum: она требует прочитать файл целиком.
+     */
+    static MappedByteBuffer map(File source, boolean verifyChecksum) throws IOException {
+        try (FileChannel channel = FileChannel.open(source.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size == 0) {
+                return null;
+            }
+            if (size > Integer.MAX_VALUE) {
+                throw new ManagerSaveException("Снимок слишком велик для отображения: " + source.getName());
+            }
+
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            validate(buffer, source.getName(), verifyChecksum);
+            return buffer;
+        }
+    }
+
+    private static void validate(ByteBuffer buffer, String name, boolean verifyChecksum) {
+        int size = buffer.limit();
+        if (size < HEADER_SIZE) {
+            throw new ManagerSaveException("Снимок обрезан: " + name);
+        }
+        int version = buffer.getInt(4);
+        if (buffer.getInt(0) != MAGIC || (version != VERSION && version != LEGACY_VERSION)) {
+            throw new ManagerSaveException("Неизвестный формат снимка: " + name);
+        }
+        if (version == VERSION && verifyChecksum) {
+            CRC32C crc = new CRC32C();
+            crc.update(buffer.slice(0, size - 4));
+            if ((int) crc.getValue() != buffer.getInt(size - 4)) {
+                throw new ManagerSaveException("Контрольная сумма снимка не совпадает: " + name);
+            }
+        }
+    }
+
+    static long generation(ByteBuffer buffer) {
+        return buffer.getLong(8);
+    }
+
+    static Task decode(ByteBuffer buffer, int position, int strings) {
+        int id = buffer.getInt(position);
+        TaskType type = TYPES[buffer.get(position + 4)];
+        TaskStatus status = STATUSES[buffer.get(position + 5)];
+        int epicId = buffer.getInt(position + 8);
+        String name = string(buffer, strings, buffer.getInt(position + 32), buffer.getInt(position + 36));
+        String description = string(buffer, strings, buffer.getInt(position + 40), buffer.getInt(position + 44));
+        LocalDateTime startTime = startTime(buffer, position);
+        Duration duration = duration(buffer, position);
+
+        Task task = switch (type) {
+            case TASK -> new Task(name, description, status, startTime, duration);
+            case EPIC -> {
+                Epic epic = new Epic(name, description);
+                epic.setStatus(status);
+                yield epic;
+            }
+            case SUBTASK -> new Subtask(name, description, status, startTime, duration, epicId);
+        };
+        task.setId(id);
+        return task;
+    }
+
+    static LocalDateTime startTime(ByteBuffer buffer, int position) {
+        long startSeconds = buffer.getLong(position + 12);
+        return startSeconds == NO_TIME
+                ? null
+                : LocalDateTime.ofEpochSecond(startSeconds, buffer.getInt(position + 20), ZoneOffset.UTC);
+    }
+
+    static Duration duration(ByteBuffer buffer, int position) {
+        long durationMinutes = buffer.getLong(position + 24);
+        return durationMinutes == NO_TIME ? null : Duration.ofMinutes(durationMinutes);
+    }
+
+    static String string(ByteBuffer buffer, int strings, int offset, int length) {
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(strings + offset, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,153 @@
+package service;
+
+import exceptions.ManagerSaveException;
+import model.Subtask;
+import model.Task;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Потоковый обмен доской без промежуточных списков. Экспорт обходит хранимые объекты менеджера
+ * и пишет их в поток построчно в формате CSV-снимка, поэтому результат можно открыть как файл .csv.
+ * Импорт читает такой поток и добавляет записи в менеджер пачками ограниченного размера,
+ * так что в памяти одновременно находится не больше одной пачки.
+ */
+public final class BoardTransfer {
+
+    public static final int DEFAULT_BATCH_SIZE = 1_000;
+
+    private static final String CHECKSUM_FIELD = "#crc";
+
+    private BoardTransfer() {
+    }
+
+    //---------------------------------------------------
+    // блок экспорта
+    //---------------------------------------------------
+
+    /**
+     * Пишет всю доску в out и возвращает число записей. Поток не закрывается.
+     * Обход идёт под монитором менеджера: изменяющие методы {@link FileBackedTaskManager}
+     * берут тот же монитор и ждут конца обхода. {@link InMemoryTaskManager} своих блокировок
+     * не берёт, и менять его во время экспорта из других потоков нельзя.
+     */
+    public static int export(InMemoryTaskManager manager, OutputStream out) {
+        try {
+            CheckedOutputStream checked = new CheckedOutputStream(out, new CRC32C());
+            BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(checked, StandardCharsets.UTF_8));
+            int[] records = new int[1];
+            writer.write(FileBackedTaskManager.CSV_HEADER);
+            writer.newLine();
+            synchronized (manager) {
+                manager.forEachStored(task -> {
+                    try {
+                        writer.write(FileBackedTaskManager.toString(task));
+                        writer.newLine();
+                        records[0]++;
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            }
+            writer.flush();
+            String crc = Long.toHexString(checked.getChecksum().getValue());
+            writer.write(FileBackedTaskManager.CHECKSUM_PREFIX + records[0] + "," + crc);
+            writer.newLine();
+            writer.flush();
+            return records[0];
+        } catch (IOException | UncheckedIOException e) {
+            throw new ManagerSaveException("Ошибка экспорта доски");
+        }
+    }
+
+    public static int export(InMemoryTaskManager manager, WritableByteChannel channel) {
+        return export(manager, Channels.newOutputStream(channel));
+    }
+
+    //---------------------------------------------------
+    // блок импорта
+    //---------------------------------------------------
+
+    public static int importFrom(InMemoryTaskManager manager, InputStream in) {
+        return importFrom(manager, in, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Добавляет в менеджер записи из in с их исходными id и возвращает число добавленных.
+     * Записи добавляются пачками из batchSize под монитором менеджера, тем же, что берут изменяющие
+     * методы {@link FileBackedTaskManager}. Между пачками монитор отпускается, поэтому на время импорта
+     * менеджер нужен вызывающему целиком: изменение из другого потока может занять id, который
+     * ещё придёт в потоке, и импорт оборвётся. {@link InMemoryTaskManager} не потокобезопасен вовсе.
+     * Подзадачи, встреченные раньше своего эпика, откладываются до его появления; оставшиеся
+     * без эпика к концу потока пропускаются. Число записей сверяется со строкой #crc, если она есть:
+     * саму контрольную сумму при потоковом чтении не проверить, не держа весь поток в памяти.
+     * Поток не закрывается.
+     */
+    public static int importFrom(InMemoryTaskManager manager, InputStream in, int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Размер пачки должен быть положительным: " + batchSize);
+        }
+
+        List<Task> batch = new ArrayList<>(batchSize);
+        List<Subtask> deferred = new ArrayList<>();
+        int records = 0;
+        int expected = -1;
+        try {
+            CsvTokenizer record = new CsvTokenizer(new InputStreamReader(in, StandardCharsets.UTF_8));
+            while (record.next()) {
+                if (record.fieldEquals(0, "id") || record.fieldEquals(0, FileBackedTaskManager.GENERATION_FIELD)) {
+                    continue;
+                }
+                if (record.fieldEquals(0, CHECKSUM_FIELD)) {
+                    expected = record.intValue(1);
+                    continue;
+                }
+                Task task = FileBackedTaskManager.fromRecord(record, 0);
+                if (task == null) {
+                    continue;
+                }
+                records++;
+                batch.add(task);
+                if (batch.size() == batchSize) {
+                    deferred = apply(manager, batch, deferred);
+                    batch.clear();
+                }
+            }
+        } catch (IOException e) {
+            throw new ManagerSaveException("Ошибка импорта доски");
+        }
+        if (expected >= 0 && expected != records) {
+            throw new ManagerSaveException("Поток обрезан: ожидалось записей " + expected + ", прочитано "
+                    + records);
+        }
+
+        deferred = apply(manager, batch, deferred);
+        if (!deferred.isEmpty()) {
+            System.out.println("Skipped " + deferred.size() + " imported subtasks without an epic");
+        }
+        manager.afterImport();
+        return records - deferred.size();
+    }
+
+    /*
+     * Добавляет пачку и повторяет отложенные подзадачи, чьи эпики могли в ней прийти.
+     */
+    private static List<Subtask> apply(InMemoryTaskManager manager, List<Task> batch, List<Subtask> deferred) {
+        synchronized (manager) {
+            return manager.importBatch(batch, deferred);
+        }
+    }
+}
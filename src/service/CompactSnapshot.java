@@ -0,0 +1,309 @@
+package service;
+
+import exceptions.ManagerSaveException;
+import model.*;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Компактный двоичный снимок с записями переменной длины. В отличие от {@link BinarySnapshot}
+ * он не рассчитан на произвольный доступ, зато каждая запись занимает несколько байт:
+ *
+ * <pre>
+ * заголовок: magic(int) version(byte) generation(varint) count(varint)
+ * запись:    id(varint) packed(byte) [epicId(varint)] [start(varint) [nanos(varint)]] [duration(varint)]
+ *            name(varint length + 1, UTF-8) description(varint length + 1, UTF-8)
+ * packed:    status(2 бита) type(2 бита) hasStart hasDuration hasNanos reserved
+ * хвост:     crc32c(int) всего, что выше
+ * </pre>
+ *
+ * Время начала хранится в минутах от эпохи, доли минуты - отдельным полем только если они есть.
+ * Длина строки 0 означает null. Знаковые значения кодируются zigzag. Файлы версии 1 не содержат
+ * count и crc32c, их записи читаются до конца файла.
+ */
+final class CompactSnapshot {
+
+    static final int MAGIC = 0x4B4E5443;
+    static final int VERSION = 2;
+    static final int LEGACY_VERSION = 1;
+
+    private static final int HAS_START = 1 << 4;
+    private static final int HAS_DURATION = 1 << 5;
+    private static final int HAS_NANOS = 1 << 6;
+    private static final long NANOS_PER_MINUTE = 60_000_000_000L;
+    private static final TaskType[] TYPES = TaskType.values();
+    private static final TaskStatus[] STATUSES = TaskStatus.values();
+
+    private CompactSnapshot() {
+    }
+
+    //---------------------------------------------------
+    // блок записи
+    //---------------------------------------------------
+    static void write(File target, List<Task> tasks, List<Epic> epics, long generation, boolean force,
+                      Compression compression) {
+        long count = tasks.size();
+        for (Epic epic : epics) {
+            count += 1 + epic.getSubtasks().size();
+        }
+
+        try (FileOutputStream file = new FileOutputStream(target);
+             OutputStream compressed = compression.wrap(file);
+             CheckedOutputStream checked = new CheckedOutputStream(compressed, new CRC32C());
+             OutputStream out = new BufferedOutputStream(checked, 1 << 16)) {
+            writeInt(out, MAGIC);
+            out.write(VERSION);
+            writeVarLong(out, generation);
+            writeVarLong(out, count);
+
+            for (Task task : tasks) {
+                writeRecord(out, task);
+            }
+            for (Epic epic : epics) {
+                writeRecord(out, epic);
+                for (Subtask subtask : epic.getSubtasks()) {
+                    writeRecord(out, subtask);
+                }
+            }
+
+            out.flush();
+            writeInt(out, (int) checked.getChecksum().getValue());
+            out.flush();
+            Compression.finish(compressed);
+            if (force) {
+                file.getChannel().force(true);
+            }
+        } catch (IOException e) {
+            throw new ManagerSaveException("Ошибка записи в файл " + target.getName());
+        }
+    }
+
+    static void writeRecord(OutputStream out, Task task) throws IOException {
+        LocalDateTime start = task.getStartTime();
+        long startNanos = 0;
+        long startMinutes = 0;
+        if (start != null) {
+            long seconds = start.toEpochSecond(ZoneOffset.UTC);
+            startMinutes = Math.floorDiv(seconds, 60);
+            startNanos = Math.floorMod(seconds, 60) * 1_000_000_000L + start.getNano();
+        }
+
+        int packed = task.getStatus().ordinal() | task.getType().ordinal() << 2;
+        if (start != null) {
+            packed |= HAS_START;
+        }
+        if (task.getDuration() != null) {
+            packed |= HAS_DURATION;
+        }
+        if (startNanos != 0) {
+            packed |= HAS_NANOS;
+        }
+
+        writeVarLong(out, task.getId());
+        out.write(packed);
+        if (task instanceof Subtask subtask) {
+            writeVarLong(out, subtask.getEpicId());
+        }
+        if (start != null) {
+            writeVarLong(out, zigzag(startMinutes));
+            if (startNanos != 0) {
+                writeVarLong(out, startNanos);
+            }
+        }
+        if (task.getDuration() != null) {
+            writeVarLong(out, zigzag(task.getDuration().toMinutes()));
+        }
+        writeString(out, task.getName());
+        writeString(out, task.getDescription());
+    }
+
+    private static void writeString(OutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.write(0);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(out, bytes.length + 1L);
+        out.write(bytes);
+    }
+
+    private static void writeInt(OutputStream out, int value) throws IOException {
+        out.write(value >>> 24);
+        out.write(value >>> 16);
+        out.write(value >>> 8);
+        out.write(value);
+    }
+
+    static void writeVarLong(OutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    //---------------------------------------------------
+    // блок чтения
+    //---------------------------------------------------
+
+    /**
+     * Передаёт записи снимка в sink в порядке записи и возвращает поколение снимка.
+     */
+    static long read(File source, Consumer<Task> sink) throws IOException {
+        if (source.length() == 0) {
+            return 0;
+        }
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(source.toPath()), 1 << 16)) {
+            return read(in, source.getName(), sink);
+        }
+    }
+
+    /**
+     * То же для потока, например распакованного. Поток не закрывается.
+     */
+    static long read(InputStream source, String name, Consumer<Task> sink) throws IOException {
+        CheckedInputStream checked = new CheckedInputStream(source, new CRC32C());
+        DataInputStream in = new DataInputStream(checked);
+        try {
+            int magic = in.readInt();
+            int version = in.readUnsignedByte();
+            if (magic != MAGIC || (version != VERSION && version != LEGACY_VERSION)) {
+                throw new ManagerSaveException("Неизвестный формат снимка: " + name);
+            }
+            long generation = readVarLong(in);
+
+            if (version == LEGACY_VERSION) {
+                int first;
+                while ((first = in.read()) >= 0) {
+                    sink.accept(readRecord(in, first));
+                }
+                return generation;
+            }
+
+            long count = readVarLong(in);
+            List<Task> records = new ArrayList<>();
+            for (long i = 0; i < count; i++) {
+                records.add(readRecord(in, readByte(in)));
+            }
+            long expected = checked.getChecksum().getValue();
+            if ((int) expected != in.readInt() || in.read() >= 0) {
+                throw new ManagerSaveException("Контрольная сумма снимка не совпадает: " + name);
+            }
+            records.forEach(sink);
+            return generation;
+        } catch (EOFException e) {
+            throw new ManagerSaveException("Снимок обрезан: " + name);
+        }
+    }
+
+    /**
+     * Читает запись, первый байт которой уже прочитан: так конец файла отличается от обрезанной записи.
+     */
+    static Task readRecord(InputStream in, int first) throws IOException {
+        int id = (int) readVarLong(in, first);
+        int packed = readByte(in);
+        if ((packed & 0x3) >= STATUSES.length || (packed >> 2 & 0x3) >= TYPES.length) {
+            throw new IOException("Повреждённая запись " + id);
+        }
+        TaskStatus status = STATUSES[packed & 0x3];
+        TaskType type = TYPES[packed >> 2 & 0x3];
+        int epicId = type == TaskType.SUBTASK ? (int) readVarLong(in) : 0;
+
+        LocalDateTime startTime = null;
+        if ((packed & HAS_START) != 0) {
+            long minutes = unzigzag(readVarLong(in));
+            long nanos = (packed & HAS_NANOS) != 0 ? readVarLong(in) : 0;
+            if (nanos < 0 || nanos >= NANOS_PER_MINUTE) {
+                throw new IOException("Повреждённая запись " + id);
+            }
+            startTime = LocalDateTime.ofEpochSecond(minutes * 60 + nanos / 1_000_000_000L,
+                    (int) (nanos % 1_000_000_000L), ZoneOffset.UTC);
+        }
+        Duration duration = (packed & HAS_DURATION) != 0
+                ? Duration.ofMinutes(unzigzag(readVarLong(in)))
+                : null;
+        String name = readString(in);
+        String description = readString(in);
+
+        Task task = switch (type) {
+            case TASK -> new Task(name, description, status, startTime, duration);
+            case EPIC -> {
+                Epic epic = new Epic(name, description);
+                epic.setStatus(status);
+                yield epic;
+            }
+            case SUBTASK -> new Subtask(name, description, status, startTime, duration, epicId);
+        };
+        task.setId(id);
+        return task;
+    }
+
+    private static String readString(InputStream in) throws IOException {
+        long length = readVarLong(in) - 1;
+        if (length < 0) {
+            return null;
+        }
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("Слишком длинная строка: " + length);
+        }
+        byte[] bytes = in.readNBytes((int) length);
+        if (bytes.length != length) {
+            throw new EOFException("Запись обрезана");
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static long readVarLong(InputStream in) throws IOException {
+        return readVarLong(in, readByte(in));
+    }
+
+    private static long readVarLong(InputStream in, int first) throws IOException {
+        long result = first & 0x7F;
+        int shift = 7;
+        int b = first;
+        while ((b & 0x80) != 0) {
+            if (shift > 63) {
+                throw new IOException("Слишком длинное число varint");
+            }
+            b = readByte(in);
+            result |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        }
+        return result;
+    }
+
+    private static int readByte(InputStream in) throws IOException {
+        int b = in.read();
+        if (b < 0) {
+            throw new EOFException("Запись обрезана");
+        }
+        return b;
+    }
+}
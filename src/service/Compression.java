@@ -0,0 +1,411 @@
+package service;
+
+import exceptions.ManagerSaveException;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+
+/**
+ * Сжатие потоковых снимков (CSV, .tasks, .bin). Выбирается расширением поверх формата снимка:
+ * {@code board.csv.gz} - один поток GZIP, {@code board.csv.bgz} - GZIP из независимых блоков,
+ * или явно через {@link FileBackedTaskManager#setCompression(Compression)}.
+ * При чтении сжатие определяется по содержимому файла, а не по имени.
+ *
+ * <p>Блочный вариант - последовательность самостоятельных членов GZIP, поэтому его читает любой
+ * gzip. В поле FEXTRA каждого члена записана его полная длина:
+ *
+ * <pre>
+ * член:  1f 8b 08 04 mtime(0) xfl(0) os(ff) xlen(8) 'K' 'B' slen(4) blockSize(int)
+ *        deflate(...) crc32(int) isize(int)
+ * </pre>
+ *
+ * По этим длинам границы блоков находятся без распаковки, и блоки распаковываются параллельно
+ * окнами по нескольку блоков.
+ */
+public enum Compression {
+    NONE,
+    GZIP,
+    BLOCKS;
+
+    static final String GZIP_SUFFIX = ".gz";
+    static final String BLOCKS_SUFFIX = ".bgz";
+    static final int BLOCK_SIZE = 1 << 20;
+
+    private static final int GZIP_MAGIC = 0x8B1F;
+    private static final int FEXTRA = 4;
+    private static final int BLOCK_HEADER_SIZE = 20;
+    private static final int BLOCK_TRAILER_SIZE = 8;
+    private static final int GZIP_WINDOW_SIZE = 8 << 20;
+    private static final int WINDOW_BLOCKS = Math.min(32, Math.max(2, Runtime.getRuntime().availableProcessors()));
+
+    static Compression forFile(File file) {
+        if (file.getName().endsWith(GZIP_SUFFIX)) {
+            return GZIP;
+        }
+        if (file.getName().endsWith(BLOCKS_SUFFIX)) {
+            return BLOCKS;
+        }
+        return NONE;
+    }
+
+    /**
+     * Имя файла без суффикса сжатия: по нему определяется формат снимка.
+     */
+    static String innerName(File file) {
+        String name = file.getName();
+        return switch (forFile(file)) {
+            case GZIP -> name.substring(0, name.length() - GZIP_SUFFIX.length());
+            case BLOCKS -> name.substring(0, name.length() - BLOCKS_SUFFIX.length());
+            case NONE -> name;
+        };
+    }
+
+    //---------------------------------------------------
+    // блок записи
+    //---------------------------------------------------
+
+    /**
+     * Оборачивает поток файла. Перед fsync нужно вызвать {@link #finish(OutputStream)}.
+     */
+    OutputStream wrap(OutputStream out) throws IOException {
+        return switch (this) {
+            case NONE -> out;
+            case GZIP -> new GZIPOutputStream(out, 1 << 16);
+            case BLOCKS -> new BlockOutputStream(out);
+        };
+    }
+
+    /**
+     * Дописывает остаток сжатых данных, не закрывая поток.
+     */
+    static void finish(OutputStream out) throws IOException {
+        if (out instanceof GZIPOutputStream gzip) {
+            gzip.finish();
+        } else if (out instanceof BlockOutputStream blocks) {
+            blocks.finish();
+        }
+    }
+
+    private static final class BlockOutputStream extends OutputStream {
+
+        private final OutputStream out;
+        private final byte[] block = new byte[BLOCK_SIZE];
+        private final byte[] compressed = new byte[BLOCK_SIZE + (BLOCK_SIZE >> 3) + 64];
+        private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        private final CRC32 crc = new CRC32();
+        private int length;
+
+        BlockOutputStream(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (length == block.length) {
+                writeBlock();
+            }
+            block[length++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int count) throws IOException {
+            while (count > 0) {
+                if (length == block.length) {
+                    writeBlock();
+                }
+                int copied = Math.min(count, block.length - length);
+                System.arraycopy(bytes, offset, block, length, copied);
+                length += copied;
+                offset += copied;
+                count -= copied;
+            }
+        }
+
+        void finish() throws IOException {
+            if (length > 0) {
+                writeBlock();
+            }
+            out.flush();
+        }
+
+        private void writeBlock() throws IOException {
+            deflater.reset();
+            deflater.setInput(block, 0, length);
+            deflater.finish();
+            int size = 0;
+            while (!deflater.finished()) {
+                size += deflater.deflate(compressed, size, compressed.length - size);
+            }
+            crc.reset();
+            crc.update(block, 0, length);
+
+            ByteBuffer header = ByteBuffer.allocate(BLOCK_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putShort((short) GZIP_MAGIC).put((byte) 8).put((byte) FEXTRA).putInt(0)
+                    .put((byte) 0).put((byte) 0xFF).putShort((short) 8)
+                    .put((byte) 'K').put((byte) 'B').putShort((short) 4)
+                    .putInt(BLOCK_HEADER_SIZE + size + BLOCK_TRAILER_SIZE);
+            ByteBuffer trailer = ByteBuffer.allocate(BLOCK_TRAILER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            trailer.putInt((int) crc.getValue()).putInt(length);
+
+            out.write(header.array());
+            out.write(compressed, 0, size);
+            out.write(trailer.array());
+            length = 0;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                finish();
+            } finally {
+                deflater.end();
+                out.close();
+            }
+        }
+    }
+
+    //---------------------------------------------------
+    // блок чтения
+    //---------------------------------------------------
+    static boolean isCompressed(File source) throws IOException {
+        if (!source.isFile() || source.length() < 2) {
+            return false;
+        }
+        try (InputStream in = new FileInputStream(source)) {
+            return (in.read() | in.read() << 8) == GZIP_MAGIC;
+        }
+    }
+
+    /**
+     * Открывает сжатый снимок для чтения окнами. Блочный снимок распознаётся по полю длины
+     * в заголовке первого члена, любой другой читается как обычный поток GZIP.
+     */
+    static Windows open(File source) throws IOException {
+        FileChannel channel = FileChannel.open(source.toPath(), StandardOpenOption.READ);
+        try {
+            if (channel.size() >= BLOCK_HEADER_SIZE) {
+                ByteBuffer header = ByteBuffer.allocate(BLOCK_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+                readFully(channel, header, 0, source.getName());
+                if (blockSize(header, 0, channel.size()) > 0) {
+                    return new BlockWindows(channel, source.getName());
+                }
+            }
+            return new GzipWindows(channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Распакованное содержимое сжатого снимка, выдаваемое по окнам ограниченного размера:
+     * в памяти одновременно не больше одного окна, так что размер снимка не ограничен размером массива.
+     */
+    abstract static class Windows implements AutoCloseable {
+
+        final FileChannel channel;
+
+        private Windows(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        /**
+         * Следующее окно или null в конце снимка.
+         */
+        abstract ByteBuffer next() throws IOException;
+
+        /**
+         * Окна подряд как один поток.
+         */
+        InputStream stream() {
+            return new InputStream() {
+                private ByteBuffer window = ByteBuffer.allocate(0);
+
+                @Override
+                public int read() throws IOException {
+                    return fill() ? window.get() & 0xFF : -1;
+                }
+
+                @Override
+                public int read(byte[] bytes, int offset, int length) throws IOException {
+                    if (length == 0) {
+                        return 0;
+                    }
+                    if (!fill()) {
+                        return -1;
+                    }
+                    int read = Math.min(length, window.remaining());
+                    window.get(bytes, offset, read);
+                    return read;
+                }
+
+                private boolean fill() throws IOException {
+                    while (window != null && !window.hasRemaining()) {
+                        window = next();
+                    }
+                    return window != null;
+                }
+            };
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    private static final class GzipWindows extends Windows {
+
+        private final InputStream in;
+
+        GzipWindows(FileChannel channel) throws IOException {
+            super(channel);
+            channel.position(0);
+            this.in = new GZIPInputStream(Channels.newInputStream(channel), 1 << 16);
+        }
+
+        @Override
+        ByteBuffer next() throws IOException {
+            byte[] window = new byte[GZIP_WINDOW_SIZE];
+            int read = in.readNBytes(window, 0, window.length);
+            return read == 0 ? null : ByteBuffer.wrap(window, 0, read);
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    /*
+     * Окно - до WINDOW_BLOCKS блоков подряд: их сжатые данные читаются по очереди,
+     * а распаковываются параллельно, каждый в свой участок окна.
+     */
+    private static final class BlockWindows extends Windows {
+
+        private final String name;
+        private final long size;
+        private long position;
+
+        BlockWindows(FileChannel channel, String name) throws IOException {
+            super(channel);
+            this.name = name;
+            this.size = channel.size();
+        }
+
+        @Override
+        ByteBuffer next() throws IOException {
+            List<ByteBuffer> blocks = new ArrayList<>(WINDOW_BLOCKS);
+            List<Integer> offsets = new ArrayList<>(WINDOW_BLOCKS);
+            int inflated = 0;
+            while (blocks.size() < WINDOW_BLOCKS && position < size) {
+                ByteBuffer header = ByteBuffer.allocate(BLOCK_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+                readFully(channel, header, position, name);
+                int blockSize = blockSize(header, position, size);
+                if (blockSize < 0) {
+                    throw new ManagerSaveException("Повреждённый блок сжатого снимка: " + name);
+                }
+                ByteBuffer block = ByteBuffer.allocate(blockSize).order(ByteOrder.LITTLE_ENDIAN);
+                readFully(channel, block, position, name);
+                int isize = block.getInt(blockSize - 4);
+                if (isize < 0 || isize > BLOCK_SIZE) {
+                    throw new ManagerSaveException("Повреждённый блок сжатого снимка: " + name);
+                }
+                blocks.add(block);
+                offsets.add(inflated);
+                inflated += isize;
+                position += blockSize;
+            }
+            if (blocks.isEmpty()) {
+                return null;
+            }
+
+            byte[] window = new byte[inflated];
+            boolean damaged = IntStream.range(0, blocks.size()).parallel()
+                    .anyMatch(i -> !inflateBlock(blocks.get(i), window, offsets.get(i)));
+            if (damaged) {
+                throw new ManagerSaveException("Повреждённый блок сжатого снимка: " + name);
+            }
+            return ByteBuffer.wrap(window);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long from, String name) throws IOException {
+        long position = from;
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new ManagerSaveException("Сжатый снимок обрезан: " + name);
+            }
+            position += read;
+        }
+    }
+
+    /*
+     * Полная длина блока, заголовок которого лежит в header, или -1, если это не блок с полем длины
+     * или блок не помещается в оставшиеся до конца файла байты.
+     */
+    private static int blockSize(ByteBuffer header, long position, long fileSize) {
+        if ((header.getShort(0) & 0xFFFF) != GZIP_MAGIC
+                || (header.get(3) & FEXTRA) == 0
+                || header.getShort(10) != 8
+                || header.get(12) != 'K' || header.get(13) != 'B') {
+            return -1;
+        }
+        int size = header.getInt(16);
+        if (size < BLOCK_HEADER_SIZE + BLOCK_TRAILER_SIZE || size > fileSize - position) {
+            return -1;
+        }
+        return size;
+    }
+
+    /*
+     * Распаковывает блок в target с позиции offset и сверяет длину и CRC32 из его хвоста.
+     */
+    private static boolean inflateBlock(ByteBuffer block, byte[] target, int offset) {
+        int size = block.limit();
+        int isize = block.getInt(size - 4);
+        int expectedCrc = block.getInt(size - 8);
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(block.slice(BLOCK_HEADER_SIZE, size - BLOCK_HEADER_SIZE - BLOCK_TRAILER_SIZE));
+            int read = 0;
+            while (read < isize && !inflater.finished()) {
+                int n = inflater.inflate(target, offset + read, isize - read);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                read += n;
+            }
+            CRC32 crc = new CRC32();
+            crc.update(target, offset, read);
+            return read == isize && (int) crc.getValue() == expectedCrc;
+        } catch (DataFormatException e) {
+            return false;
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,297 @@
+package service;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+
+/**
+ * Потоковый разбор CSV за один проход без split и регулярных выражений.
+ * Поля текущей записи лежат в одном переиспользуемом буфере, числа и даты разбираются
+ * прямо из него, строки создаются только для текстовых полей. Поля в кавычках
+ * могут содержать запятые, переводы строк и удвоенные кавычки.
+ */
+final class CsvTokenizer implements AutoCloseable {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final Reader in;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int position;
+    private int limit;
+
+    private char[] chars = new char[256];
+    private int length;
+    private int[] starts = new int[16];
+    private int[] ends = new int[16];
+    private int count;
+
+    CsvTokenizer(Reader in) {
+        this.in = in;
+    }
+
+    //---------------------------------------------------
+    // блок разбора записей
+    //---------------------------------------------------
+
+    /**
+     * Переходит к следующей непустой записи. Возвращает false в конце входа.
+     */
+    boolean next() throws IOException {
+        while (true) {
+            length = 0;
+            count = 0;
+            int c = read();
+            if (c < 0) {
+                return false;
+            }
+            if (c == '\n') {
+                continue;
+            }
+            if (c == '\r') {
+                skipLineFeed();
+                continue;
+            }
+
+            while (true) {
+                int fieldStart = length;
+                if (c == '"') {
+                    c = readQuoted();
+                } else {
+                    while (c >= 0 && c != ',' && c != '\n' && c != '\r') {
+                        append((char) c);
+                        c = read();
+                    }
+                }
+                addField(fieldStart);
+
+                if (c == ',') {
+                    c = read();
+                    continue;
+                }
+                if (c == '\r') {
+                    skipLineFeed();
+                }
+                return true;
+            }
+        }
+    }
+
+    private int readQuoted() throws IOException {
+        while (true) {
+            int c = read();
+            if (c < 0) {
+                return c;
+            }
+            if (c == '"') {
+                c = read();
+                if (c != '"') {
+                    // после закрывающей кавычки допускаем хвост до разделителя
+                    while (c >= 0 && c != ',' && c != '\n' && c != '\r') {
+                        append((char) c);
+                        c = read();
+                    }
+                    return c;
+                }
+            }
+            append((char) c);
+        }
+    }
+
+    private void skipLineFeed() throws IOException {
+        if (fill() && buffer[position] == '\n') {
+            position++;
+        }
+    }
+
+    private int read() throws IOException {
+        if (!fill()) {
+            return -1;
+        }
+        return buffer[position++];
+    }
+
+    private boolean fill() throws IOException {
+        if (position < limit) {
+            return true;
+        }
+        int read = in.read(buffer, 0, buffer.length);
+        if (read <= 0) {
+            return false;
+        }
+        position = 0;
+        limit = read;
+        return true;
+    }
+
+    private void append(char c) {
+        if (length == chars.length) {
+            chars = Arrays.copyOf(chars, chars.length * 2);
+        }
+        chars[length++] = c;
+    }
+
+    private void addField(int start) {
+        if (count == starts.length) {
+            starts = Arrays.copyOf(starts, count * 2);
+            ends = Arrays.copyOf(ends, count * 2);
+        }
+        starts[count] = start;
+        ends[count] = length;
+        count++;
+    }
+
+    //---------------------------------------------------
+    // блок доступа к полям текущей записи
+    //---------------------------------------------------
+    int fieldCount() {
+        return count;
+    }
+
+    boolean fieldEquals(int index, String value) {
+        int start = starts[index];
+        int fieldLength = ends[index] - start;
+        if (fieldLength != value.length()) {
+            return false;
+        }
+        for (int i = 0; i < fieldLength; i++) {
+            if (chars[start + i] != value.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    boolean isNull(int index) {
+        return fieldEquals(index, "null");
+    }
+
+    String string(int index) {
+        return new String(chars, starts[index], ends[index] - starts[index]);
+    }
+
+    int intValue(int index) {
+        return (int) longValue(index);
+    }
+
+    long longValue(int index) {
+        int i = starts[index];
+        int end = ends[index];
+        if (i == end) {
+            throw new NumberFormatException("Пустое числовое поле");
+        }
+
+        boolean negative = chars[i] == '-';
+        if (negative || chars[i] == '+') {
+            i++;
+        }
+        long result = 0;
+        for (; i < end; i++) {
+            int digit = chars[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException("Не число: " + string(index));
+            }
+            result = result * 10 + digit;
+        }
+        return negative ? -result : result;
+    }
+
+    <E extends Enum<E>> E enumValue(int index, E[] values) {
+        for (E value : values) {
+            if (fieldEquals(index, value.name())) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Неизвестное значение " + string(index));
+    }
+
+    /**
+     * Разбирает вывод LocalDateTime.toString(): uuuu-MM-ddTHH:mm[:ss[.n...]].
+     * Нестандартные значения (например, годы больше 9999) уходят в LocalDateTime.parse.
+     */
+    LocalDateTime dateTime(int index) {
+        int s = starts[index];
+        int fieldLength = ends[index] - s;
+        if (fieldLength < 16 || chars[s + 4] != '-' || chars[s + 7] != '-' || chars[s + 10] != 'T'
+                || chars[s + 13] != ':') {
+            return LocalDateTime.parse(string(index));
+        }
+
+        int year = digits(s, 4);
+        int month = digits(s + 5, 2);
+        int day = digits(s + 8, 2);
+        int hour = digits(s + 11, 2);
+        int minute = digits(s + 14, 2);
+        int second = 0;
+        int nano = 0;
+
+        if (fieldLength > 16) {
+            if (fieldLength < 19 || chars[s + 16] != ':') {
+                return LocalDateTime.parse(string(index));
+            }
+            second = digits(s + 17, 2);
+            if (fieldLength > 19) {
+                if (chars[s + 19] != '.' || fieldLength > 29) {
+                    return LocalDateTime.parse(string(index));
+                }
+                int fraction = fieldLength - 20;
+                nano = digits(s + 20, fraction);
+                for (int i = fraction; i < 9; i++) {
+                    nano *= 10;
+                }
+            }
+        }
+        return LocalDateTime.of(year, month, day, hour, minute, second, nano);
+    }
+
+    private int digits(int start, int size) {
+        int result = 0;
+        for (int i = start; i < start + size; i++) {
+            int digit = chars[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException("Не число в дате: " + new String(chars, start, size));
+            }
+            result = result * 10 + digit;
+        }
+        return result;
+    }
+
+    //---------------------------------------------------
+    // блок записи полей
+    //---------------------------------------------------
+
+    /**
+     * Дописывает поле, заключая его в кавычки, если в нём есть запятая, кавычка или перевод строки.
+     */
+    static void appendField(StringBuilder out, String value) {
+        if (value == null) {
+            out.append("null");
+            return;
+        }
+
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            out.append(value);
+            return;
+        }
+
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                out.append('"');
+            }
+            out.append(c);
+        }
+        out.append('"');
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -5,52 +5,472 @@ import model.*;
 
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedOutputStream;
 
-public class FileBackedTaskManager extends InMemoryTaskManager {
+public class FileBackedTaskManager extends InMemoryTaskManager implements AutoCloseable {
+
+    static final String JOURNAL_SUFFIX = ".journal";
+    static final String OLD_JOURNAL_SUFFIX = ".journal.old";
+    static final String GENERATION_FIELD = "#gen";
+    private static final String GENERATION_PREFIX = GENERATION_FIELD + ",";
+    static final String CHECKSUM_PREFIX = "#crc,";
+    static final String CSV_HEADER = "id,type,name,status,description,startTime,duration,epic";
+    private static final TaskType[] TYPES = TaskType.values();
+    private static final TaskStatus[] STATUSES = TaskStatus.values();
+    private static final JournalOp[] OPS = JournalOp.values();
+    private static final Duration DEFAULT_BATCH_WINDOW = Duration.ofMillis(5);
+    private static final int DEFAULT_QUEUE_CAPACITY = 65_536;
 
     final File file;
+    final File journal;
+    final File oldJournal;
+    private final PersistenceMode mode;
+    private final SnapshotFormat format;
+    private Compression compression;
+    private final JournalWriter journalWriter;
+
+    private Durability durability = Durability.NONE;
+    private Duration batchWindow = DEFAULT_BATCH_WINDOW;
+    private int writeBehindCapacity;
+    private GroupCommitter committer;
+    private boolean waitForCommit;
+
+    private long generation;
+    private int loadedMaxId;
+    private long journalBytes;
+    private int journalRecords;
+
+    private long maxJournalBytes = Long.MAX_VALUE;
+    private int maxJournalRecords = Integer.MAX_VALUE;
+    private ScheduledExecutorService compactor;
+    private ScheduledFuture<?> scheduledCompaction;
+    private Future<?> compaction;
+    private boolean legacyJournal;
+
+    private SlotFile slots;
+    private SegmentStore segments;
+    private boolean storeStale = true;
+    private final Set<Integer> dirtyIds = new HashSet<>();
+    private final Set<TaskType> clearedTypes = EnumSet.noneOf(TaskType.class);
+    private final Set<Integer> dirtyEpicSegments = new HashSet<>();
+    private boolean tasksSegmentDirty;
+    private boolean epicSegmentsCleared;
+
+    /**
+     * Операция записи журнала. Записи в журнал менеджера и {@link FileTaskStore} строятся здесь,
+     * применяются при загрузке через {@link JournalReplay}.
+     */
+    enum JournalOp {
+        PUT,
+        DELETE,
+        CLEAR;
+
+        static String put(Task task) {
+            return PUT + "," + FileBackedTaskManager.toString(task);
+        }
+
+        static String delete(TaskType type, int id) {
+            return DELETE + "," + type + "," + id;
+        }
+
+        static String clear(TaskType type) {
+            return CLEAR + "," + type;
+        }
+    }
 
     public FileBackedTaskManager(File file) {
+        this(file, PersistenceMode.SNAPSHOT);
+    }
+
+    public FileBackedTaskManager(File file, PersistenceMode mode) {
         this.file = file;
+        this.journal = new File(file.getPath() + JOURNAL_SUFFIX);
+        this.oldJournal = new File(file.getPath() + OLD_JOURNAL_SUFFIX);
+        this.mode = mode;
+        this.format = SnapshotFormat.forFile(file);
+        this.compression = Compression.forFile(file);
+        if (compression != Compression.NONE && !format.supportsCompression()) {
+            throw new IllegalArgumentException("Format " + format + " cannot be compressed: " + file.getName());
+        }
+        this.journalWriter = new JournalWriter(journal.toPath(), oldJournal.toPath());
+    }
+
+    public PersistenceMode getMode() {
+        return mode;
+    }
+
+    /**
+     * Сжатие следующих снимков, по умолчанию определяется расширением файла.
+     * Загрузка распознаёт сжатие по содержимому, так что уже записанные снимки читаются в любом случае.
+     */
+    public synchronized void setCompression(Compression compression) {
+        if (compression != Compression.NONE && !format.supportsCompression()) {
+            throw new IllegalArgumentException("Format " + format + " cannot be compressed: " + file.getName());
+        }
+        this.compression = compression;
+    }
+
+    public Compression getCompression() {
+        return compression;
+    }
+
+    //---------------------------------------------------
+    // блок настройки надёжности записи
+    //---------------------------------------------------
+    public void setDurability(Durability durability) {
+        setDurability(durability, DEFAULT_BATCH_WINDOW);
+    }
+
+    /**
+     * NONE - запись без fsync, SYNC_EACH - fsync после каждого изменения,
+     * BATCHED - изменения за окно batchWindow сбрасываются одной записью и одним fsync.
+     */
+    public void setDurability(Durability durability, Duration batchWindow) {
+        synchronized (this) {
+            this.durability = durability;
+            this.batchWindow = batchWindow;
+        }
+        restartCommitter();
+    }
+
+    /**
+     * Отложенная запись: изменяющие методы только меняют состояние в памяти и отмечают его грязным,
+     * а на диск изменения пишет отдельный поток. Если незаписанных изменений накопилось
+     * queueCapacity, вызывающие потоки ждут, пока диск догонит. 0 отключает режим.
+     */
+    public void setWriteBehind(int queueCapacity) {
+        synchronized (this) {
+            this.writeBehindCapacity = Math.max(0, queueCapacity);
+        }
+        restartCommitter();
+    }
+
+    public boolean isWriteBehind() {
+        return writeBehindCapacity > 0;
+    }
+
+    private void restartCommitter() {
+        GroupCommitter previous;
+        synchronized (this) {
+            previous = committer;
+            committer = null;
+            if (durability == Durability.BATCHED || writeBehindCapacity > 0) {
+                committer = new GroupCommitter("kanban-writer-" + file.getName(),
+                        durability == Durability.BATCHED ? batchWindow : Duration.ZERO,
+                        writeBehindCapacity > 0 ? writeBehindCapacity : DEFAULT_QUEUE_CAPACITY,
+                        this::flushBatch);
+            }
+        }
+        if (previous != null) {
+            previous.close();
+        }
+    }
+
+    public Durability getDurability() {
+        return durability;
+    }
+
+    /**
+     * При включении изменяющие методы возвращаются только после того, как их запись попала на диск.
+     */
+    public void setWaitForCommit(boolean waitForCommit) {
+        this.waitForCommit = waitForCommit;
+    }
+
+    /**
+     * Дожидается записи на диск всех уже выполненных изменений.
+     */
+    @Override
+    public void flush() {
+        GroupCommitter current = committer;
+        if (current != null) {
+            current.sync();
+        }
+    }
+
+    private void commit(LongSupplier mutation) {
+        long sequence;
+        GroupCommitter current;
+        synchronized (this) {
+            sequence = mutation.getAsLong();
+            current = committer;
+        }
+        // ждём вне блокировки, чтобы параллельные изменения попали в ту же группу
+        if (current != null && sequence > 0) {
+            current.awaitCapacity();
+            if (waitForCommit) {
+                current.await(sequence);
+            }
+        }
+    }
+
+    private void flushBatch() {
+        boolean force = durability != Durability.NONE;
+        if (mode == PersistenceMode.JOURNAL) {
+            try {
+                journalWriter.flush(force);
+            } catch (IOException e) {
+                throw new ManagerSaveException("Ошибка записи в журнал " + journal.getName());
+            }
+            return;
+        }
+
+        if (isIncremental()) {
+            Runnable write;
+            synchronized (this) {
+                write = prepareIncrementalWrite(force);
+            }
+            write.run();
+            return;
+        }
+
+        // под блокировкой только копия состояния, сама запись идёт без неё
+        List<Task> tasks;
+        List<Epic> epics;
+        long gen;
+        synchronized (this) {
+            tasks = getTasks();
+            epics = copyEpics();
+            gen = generation;
+        }
+        writeSnapshotFile(tasks, epics, gen, force);
     }
 
     //---------------------------------------------------
     // блок сериализации
     //---------------------------------------------------
     private void save() {
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(file))) {
-            writer.write("id,type,name,status,description,startTime,duration,epic");
+        save(durability == Durability.SYNC_EACH);
+    }
+
+    private void save(boolean force) {
+        if (isIncremental()) {
+            prepareIncrementalWrite(force).run();
+            return;
+        }
+        writeSnapshotFile(getTasks(), getEpics(), generation, force);
+    }
+
+    //---------------------------------------------------
+    // блок инкрементальной записи: переписываются только изменённые записи
+    //---------------------------------------------------
+    private boolean isIncremental() {
+        return (format == SnapshotFormat.SLOTS || format == SnapshotFormat.SEGMENTS)
+                && mode == PersistenceMode.SNAPSHOT;
+    }
+
+    /*
+     * Для слотов грязной становится сама запись, для сегментов - файл задач или сегмент эпика.
+     * Подзадача в сегментах отдельно не отмечается: её эпик отмечают вызывающие методы.
+     */
+    private void markDirty(TaskType type, Integer id) {
+        if (!isIncremental()) {
+            return;
+        }
+        if (format == SnapshotFormat.SLOTS) {
+            dirtyIds.add(id);
+        } else if (type == TaskType.TASK) {
+            tasksSegmentDirty = true;
+        } else if (type == TaskType.EPIC) {
+            dirtyEpicSegments.add(id);
+        }
+    }
+
+    private void markCleared(TaskType type) {
+        if (!isIncremental()) {
+            return;
+        }
+        if (format == SnapshotFormat.SLOTS) {
+            clearedTypes.add(type);
+        } else if (type == TaskType.TASK) {
+            tasksSegmentDirty = true;
+        } else if (type == TaskType.EPIC) {
+            epicSegmentsCleared = true;
+            dirtyEpicSegments.clear();
+        }
+        if (type == TaskType.SUBTASK) {
+            // статусы и время эпиков пересчитаны
+            getEpics().forEach(epic -> markDirty(TaskType.EPIC, epic.getId()));
+        }
+    }
+
+    private Runnable prepareIncrementalWrite(boolean force) {
+        return format == SnapshotFormat.SEGMENTS ? prepareSegmentWrite(force) : prepareSlotWrite(force);
+    }
+
+    /*
+     * Вызывается под блокировкой: забирает накопленные изменения с копиями записей
+     * и возвращает запись, которую можно выполнить уже без блокировки.
+     */
+    private Runnable prepareSlotWrite(boolean force) {
+        if (slots == null) {
+            slots = SlotFile.open(file);
+        }
+        SlotFile target = slots;
+
+        if (storeStale) {
+            storeStale = false;
+            dirtyIds.clear();
+            clearedTypes.clear();
+            List<Task> tasks = getTasks();
+            List<Epic> epics = copyEpics();
+            long gen = generation;
+            return () -> target.rewrite(tasks, epics, gen, force);
+        }
+
+        Set<TaskType> cleared = EnumSet.copyOf(clearedTypes);
+        List<Integer> deleted = new ArrayList<>();
+        List<Task> puts = new ArrayList<>();
+        for (Integer id : dirtyIds) {
+            Task current = findTask(id);
+            if (current == null) {
+                current = findSubtask(id);
+            }
+            if (current == null) {
+                current = findEpic(id);
+            }
+            if (current == null) {
+                deleted.add(id);
+            } else {
+                puts.add(current.cloneTask());
+            }
+        }
+        dirtyIds.clear();
+        clearedTypes.clear();
+        return () -> target.apply(cleared, deleted, puts, force);
+    }
+
+    private Runnable prepareSegmentWrite(boolean force) {
+        if (segments == null) {
+            segments = new SegmentStore(file);
+        }
+        SegmentStore target = segments;
+
+        if (storeStale) {
+            storeStale = false;
+            tasksSegmentDirty = false;
+            epicSegmentsCleared = false;
+            dirtyEpicSegments.clear();
+            List<Task> tasks = getTasks();
+            List<Epic> epics = copyEpics();
+            long gen = generation;
+            return () -> target.rewrite(tasks, epics, gen, force);
+        }
+
+        List<Task> tasks = null;
+        if (tasksSegmentDirty) {
+            tasks = new ArrayList<>();
+            for (Task task : getTasks()) {
+                tasks.add(task.cloneTask());
+            }
+        }
+        Map<Integer, Epic> epics = new HashMap<>();
+        for (Integer id : dirtyEpicSegments) {
+            Epic epic = findEpic(id);
+            epics.put(id, epic == null ? null : epic.cloneEpic());
+        }
+        boolean clearEpics = epicSegmentsCleared;
+        tasksSegmentDirty = false;
+        epicSegmentsCleared = false;
+        dirtyEpicSegments.clear();
+
+        List<Task> changedTasks = tasks;
+        return () -> target.update(changedTasks, epics, clearEpics, force);
+    }
+
+    private void writeSnapshotFile(List<Task> tasks, List<Epic> epics, long gen, boolean force) {
+        format.replace(file, tasks, epics, gen, force, compression);
+    }
+
+    /*
+     * Последняя строка снимка - #crc,<число записей>,<CRC32C всего, что выше>.
+     */
+    static void writeCsvSnapshot(File target, List<Task> tasks, List<Epic> epics, long gen, boolean force,
+                                 Compression compression) {
+        try (FileOutputStream out = new FileOutputStream(target);
+             OutputStream compressed = compression.wrap(out);
+             CheckedOutputStream checked = new CheckedOutputStream(compressed, new CRC32C());
+             BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(checked, StandardCharsets.UTF_8))) {
+            int records = writeSnapshot(writer, tasks, epics, gen);
+            writer.flush();
+            String crc = Long.toHexString(checked.getChecksum().getValue());
+            writer.write(CHECKSUM_PREFIX + records + "," + crc);
             writer.newLine();
-            for (Task task : this.getTasks()) {
-                writer.write(toString(task));
-                writer.newLine();
+            writer.flush();
+            Compression.finish(compressed);
+            if (force) {
+                out.getChannel().force(true);
             }
-            for (Epic epic : this.getEpics()) {
-                writer.write(toString(epic));
+        } catch (IOException e) {
+            throw new ManagerSaveException("Ошибка записи в файл " + target.getName());
+        }
+    }
+
+    private List<Epic> copyEpics() {
+        List<Epic> epics = new ArrayList<>();
+        getEpics().forEach(epic -> epics.add(epic.cloneEpic()));
+        return epics;
+    }
+
+    private static int writeSnapshot(BufferedWriter writer, List<Task> tasks, List<Epic> epics, long gen)
+            throws IOException {
+        int records = tasks.size();
+        writer.write(CSV_HEADER);
+        writer.newLine();
+        if (gen > 0) {
+            writer.write(GENERATION_PREFIX + gen);
+            writer.newLine();
+        }
+        for (Task task : tasks) {
+            writer.write(toString(task));
+            writer.newLine();
+        }
+        for (Epic epic : epics) {
+            writer.write(toString(epic));
+            writer.newLine();
+            records++;
+            for (Subtask subtask : epic.getSubtasks()) {
+                writer.write(toString(subtask));
                 writer.newLine();
-                for (Subtask subtask : epic.getSubtasks()) {
-                    writer.write(toString(subtask));
-                    writer.newLine();
-                }
+                records++;
             }
-        } catch (IOException e) {
-            throw new ManagerSaveException("Ошибка записи в файл " + file.getName());
         }
+        return records;
     }
 
-    private String toString(Task task) {
+    static String toString(Task task) {
         StringBuilder result = new StringBuilder();
         result.append(task.getId()).append(",");
         result.append(task.getType()).append(",");
-        result.append(task.getName()).append(",");
+        CsvTokenizer.appendField(result, task.getName());
+        result.append(",");
         result.append(task.getStatus()).append(",");
-        result.append(task.getDescription()).append(",");
+        CsvTokenizer.appendField(result, task.getDescription());
+        result.append(",");
         result.append(task.getStartTime() != null ? task.getStartTime() : "null").append(",");
         result.append(task.getDuration() != null ? task.getDuration().toMinutes() : "null");
 
@@ -61,47 +481,459 @@ public class FileBackedTaskManager extends InMemoryTaskManager {
         return result.toString();
     }
 
+    //---------------------------------------------------
+    // блок журнала: одна запись на изменение вместо перезаписи файла
+    //---------------------------------------------------
+    private long persistPut(Task stored) {
+        if (stored == null) {
+            return 0;
+        }
+        markDirty(stored.getType(), stored.getId());
+        if (stored instanceof Subtask subtask) {
+            markDirty(TaskType.EPIC, subtask.getEpicId());
+        }
+        if (mode == PersistenceMode.JOURNAL) {
+            return appendToJournal(JournalOp.put(stored));
+        }
+        return persistSnapshot();
+    }
+
+    private long persistDelete(TaskType type, Integer id) {
+        markDirty(type, id);
+        if (mode == PersistenceMode.JOURNAL) {
+            return appendToJournal(JournalOp.delete(type, id));
+        }
+        return persistSnapshot();
+    }
+
+    private long persistClear(TaskType type) {
+        markCleared(type);
+        if (mode == PersistenceMode.JOURNAL) {
+            return appendToJournal(JournalOp.clear(type));
+        }
+        return persistSnapshot();
+    }
+
+    private long persistSnapshot() {
+        if (committer != null) {
+            return committer.submit();
+        }
+        save();
+        return 0;
+    }
+
+    private long appendToJournal(String record) {
+        if (journalBytes == 0) {
+            journalBytes += journalWriter.append(GENERATION_PREFIX + generation + "\n");
+        }
+
+        long sequence = 0;
+        journalBytes += journalWriter.appendRecord(record);
+        journalRecords++;
+        if (committer != null) {
+            sequence = committer.submit();
+        } else {
+            try {
+                journalWriter.flush(durability == Durability.SYNC_EACH);
+            } catch (IOException e) {
+                throw new ManagerSaveException("Ошибка записи в журнал " + journal.getName());
+            }
+        }
+
+        if (journalBytes >= maxJournalBytes || journalRecords >= maxJournalRecords) {
+            startCompaction();
+        }
+        return sequence;
+    }
+
+    private void replay(CsvTokenizer record) {
+        JournalOp op = record.enumValue(0, OPS);
+
+        switch (op) {
+            case PUT:
+                Task task = fromRecord(record, 1);
+                if (task != null) {
+                    replayPut(task);
+                    loadedMaxId = Math.max(loadedMaxId, task.getId());
+                }
+                break;
+            case DELETE:
+                Integer id = record.intValue(2);
+                switch (record.enumValue(1, TYPES)) {
+                    case TASK -> super.deleteTaskById(id);
+                    case EPIC -> super.deleteEpicById(id);
+                    case SUBTASK -> super.deleteSubtaskById(id);
+                }
+                break;
+            case CLEAR:
+                switch (record.enumValue(1, TYPES)) {
+                    case TASK -> super.deleteAllTasks();
+                    case EPIC -> super.deleteAllEpics();
+                    case SUBTASK -> super.deleteAllSubtasks();
+                }
+                break;
+        }
+    }
+
+    private void replayPut(Task task) {
+        switch (task.getType()) {
+            case TASK:
+                if (findTask(task.getId()) != null) {
+                    super.updateTask(task);
+                } else {
+                    loadTask(task);
+                }
+                break;
+            case EPIC:
+                if (findEpic(task.getId()) != null) {
+                    super.updateEpic((Epic) task);
+                } else {
+                    loadEpic((Epic) task);
+                }
+                break;
+            case SUBTASK:
+                if (findSubtask(task.getId()) != null) {
+                    super.updateSubtask((Subtask) task);
+                } else {
+                    loadSubtask((Subtask) task);
+                }
+                break;
+        }
+    }
+
+    /*
+     * Старый журнал, затем текущий. Оборванный хвост отрезается, журнал старого формата
+     * после загрузки сразу уплотняется, чтобы новые записи не смешивались со старым форматом.
+     */
+    private void replayJournals(long snapshotGeneration) throws IOException {
+        JournalReplay replay = new JournalReplay(snapshotGeneration);
+        replay.replay(oldJournal, true, this::replay);
+        replay.replay(journal, true, this::replay);
+        generation = replay.generation();
+        journalRecords += replay.records();
+        legacyJournal = replay.isLegacy();
+    }
+
+    //---------------------------------------------------
+    // блок уплотнения: снимок в фоне, затем отбрасывание журнала
+    //---------------------------------------------------
+    public synchronized void setCompactionThresholds(long maxJournalBytes, int maxJournalRecords) {
+        this.maxJournalBytes = maxJournalBytes > 0 ? maxJournalBytes : Long.MAX_VALUE;
+        this.maxJournalRecords = maxJournalRecords > 0 ? maxJournalRecords : Integer.MAX_VALUE;
+    }
+
+    public synchronized void setCompactionInterval(Duration interval) {
+        if (scheduledCompaction != null) {
+            scheduledCompaction.cancel(false);
+            scheduledCompaction = null;
+        }
+        if (interval == null || interval.isZero() || interval.isNegative()) {
+            return;
+        }
+
+        long millis = interval.toMillis();
+        scheduledCompaction = compactor().scheduleWithFixedDelay(() -> {
+            synchronized (this) {
+                if (journalRecords > 0) {
+                    startCompaction();
+                }
+            }
+        }, millis, millis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Переписывает снимок целиком и очищает журнал. В режиме журнала дожидается фонового уплотнения.
+     */
+    public void compact() {
+        if (mode == PersistenceMode.SNAPSHOT) {
+            synchronized (this) {
+                storeStale = true;
+                if (committer == null) {
+                    save();
+                } else {
+                    committer.submit();
+                }
+                deleteJournals();
+            }
+            flush();
+            return;
+        }
+
+        awaitCompaction(false);
+    }
+
+    /**
+     * Импортированные записи не проходят через журнал: снимок пишется из копии состояния.
+     */
+    @Override
+    protected void afterImport() {
+        if (mode == PersistenceMode.SNAPSHOT) {
+            compact();
+        } else {
+            awaitCompaction(true);
+        }
+    }
+
+    /*
+     * Уплотнению из копии состояния нужно дождаться уже идущего: тот собирает снимок
+     * из журнала, в котором нет импортированных записей.
+     */
+    private void awaitCompaction(boolean fromState) {
+        try {
+            Future<?> started;
+            while ((started = startCompaction(fromState)) == null) {
+                try {
+                    runningCompaction().get();
+                } catch (ExecutionException ignored) {
+                    // ошибку прежнего уплотнения получает тот, кто его ждал
+                }
+            }
+            started.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ManagerSaveException("Уплотнение прервано: " + file.getName());
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof ManagerSaveException cause) {
+                throw cause;
+            }
+            throw new ManagerSaveException("Ошибка уплотнения " + file.getName());
+        }
+    }
+
+    /**
+     * Записывает текущее состояние снимком в target, формат и сжатие выбираются по расширению target.
+     */
+    public void exportSnapshot(File target) {
+        exportSnapshot(target, Compression.forFile(target));
+    }
+
+    public synchronized void exportSnapshot(File target, Compression compression) {
+        SnapshotFormat.forFile(target).write(target, getTasks(), getEpics(), generation, true, compression);
+    }
+
+    private Future<?> startCompaction() {
+        return startCompaction(false);
+    }
+
+    /*
+     * Под блокировкой только отмечается точка ротации журнала и поднимается поколение, что не зависит
+     * от числа задач. Новый снимок собирается в фоне из прежнего снимка и старого журнала,
+     * и изменения его не ждут. Копия состояния под блокировкой снимается, только если в журнале
+     * есть не всё: при загрузке, когда писателей ещё нет, и после импорта. Пока идёт другое
+     * уплотнение, такой вызов возвращает null.
+     */
+    private synchronized Future<?> startCompaction(boolean fromState) {
+        if (compaction != null && !compaction.isDone()) {
+            return fromState ? null : compaction;
+        }
+
+        List<Task> tasks = fromState ? getTasks() : null;
+        List<Epic> epics = fromState ? copyEpics() : null;
+        long snapshotGeneration = generation + 1;
+        Compression snapshotCompression = compression;
+
+        journalWriter.markRotation();
+        generation = snapshotGeneration;
+        journalBytes = 0;
+        journalRecords = 0;
+
+        compaction = compactor().submit(
+                () -> writeCompactedSnapshot(tasks, epics, snapshotGeneration, snapshotCompression));
+        return compaction;
+    }
+
+    private synchronized Future<?> runningCompaction() {
+        return compaction;
+    }
+
+    private void writeCompactedSnapshot(List<Task> tasks, List<Epic> epics, long snapshotGeneration,
+                                        Compression snapshotCompression) {
+        try {
+            // всё, что записано до точки ротации, должно остаться в старом журнале
+            journalWriter.flush(true);
+        } catch (IOException e) {
+            throw new ManagerSaveException("Ошибка ротации журнала " + journal.getName());
+        }
+
+        List<Task> snapshotTasks = tasks;
+        List<Epic> snapshotEpics = epics;
+        if (tasks == null) {
+            StoredRecords records = new StoredRecords();
+            try {
+                if (file.exists()) {
+                    format.read(file, records::put);
+                }
+                // старый журнал прогоняется целиком, без сверки поколений: записи, уже вошедшие
+                // в снимок, применяются к нему повторно с тем же итогом
+                new JournalReplay(0).replay(oldJournal, false, records::apply);
+            } catch (IOException e) {
+                throw new ManagerSaveException("Ошибка чтения снимка " + file.getName());
+            }
+            snapshotTasks = records.tasks();
+            snapshotEpics = records.epicsWithSubtasks();
+        }
+
+        format.replace(file, snapshotTasks, snapshotEpics, snapshotGeneration, true, snapshotCompression);
+        try {
+            Files.deleteIfExists(oldJournal.toPath());
+        } catch (IOException e) {
+            throw new ManagerSaveException("Ошибка удаления журнала " + oldJournal.getName());
+        }
+    }
+
+    private void deleteJournals() {
+        try {
+            Files.deleteIfExists(journal.toPath());
+            Files.deleteIfExists(oldJournal.toPath());
+        } catch (IOException e) {
+            throw new ManagerSaveException("Ошибка очистки журнала " + journal.getName());
+        }
+        journalBytes = 0;
+        journalRecords = 0;
+    }
+
+    private synchronized ScheduledExecutorService compactor() {
+        if (compactor == null) {
+            compactor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "kanban-compactor-" + file.getName());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return compactor;
+    }
+
+    @Override
+    public void close() {
+        GroupCommitter currentCommitter;
+        synchronized (this) {
+            currentCommitter = committer;
+            committer = null;
+        }
+        if (currentCommitter != null) {
+            currentCommitter.close();
+        }
+
+        ScheduledExecutorService executor;
+        synchronized (this) {
+            executor = compactor;
+            compactor = null;
+            scheduledCompaction = null;
+        }
+        if (executor != null) {
+            executor.shutdown();
+            try {
+                executor.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        try {
+            journalWriter.flush(durability != Durability.NONE);
+            journalWriter.close();
+        } catch (IOException e) {
+            throw new ManagerSaveException("Ошибка записи в журнал " + journal.getName());
+        }
+
+        synchronized (this) {
+            if (slots != null) {
+                try {
+                    slots.close();
+                } catch (IOException e) {
+                    throw new ManagerSaveException("Ошибка закрытия файла " + file.getName());
+                }
+                slots = null;
+            }
+            segments = null;
+            storeStale = true;
+        }
+    }
+
     //---------------------------------------------------
     // блок десериализации
     //---------------------------------------------------
     public static FileBackedTaskManager loadFromFile(File file) {
-        FileBackedTaskManager result = new FileBackedTaskManager(file);
-        int idNext = 0;
+        return loadFromFile(file, PersistenceMode.SNAPSHOT);
+    }
+
+    public static FileBackedTaskManager loadFromFile(File file, PersistenceMode mode) {
+        return load(file, mode, 0);
+    }
+
+    /**
+     * Загружает снимок .bin без названий и описаний задач и подзадач: они читаются из файла
+     * при первом обращении, последние bodyCacheSize прочитанных держатся в памяти.
+     * Полное сохранение снимка читает все строки, поэтому для больших архивов подходит режим журнала.
+     */
+    public static FileBackedTaskManager loadLazily(File file, PersistenceMode mode, int bodyCacheSize) {
+        if (SnapshotFormat.forFile(file) != SnapshotFormat.BINARY || Compression.forFile(file) != Compression.NONE) {
+            throw new IllegalArgumentException("Lazy loading requires an uncompressed .bin snapshot: " + file.getName());
+        }
+        if (bodyCacheSize <= 0) {
+            throw new IllegalArgumentException("Body cache size must be positive: " + bodyCacheSize);
+        }
+        return load(file, mode, bodyCacheSize);
+    }
+
+    private static FileBackedTaskManager load(File file, PersistenceMode mode, int bodyCacheSize) {
+        FileBackedTaskManager result = new FileBackedTaskManager(file, mode);
+        long snapshotGeneration = 0;
+        boolean hasJournal = result.journal.exists() || result.oldJournal.exists();
 
         try {
-            List<String> lines = Files.readAllLines(file.toPath());
-            for (String line : lines) {
-                if (!line.startsWith("id")) {
-                    Task task = result.fromString(line);
-                    if (task != null) {
-                        idNext = Math.max(idNext, task.getId());
-
-                        if (task.getType().equals(TaskType.TASK)) {
-                            result.loadTask(task);
-                        } else if (task.getType().equals(TaskType.EPIC)) {
-                            result.loadEpic((Epic) task);
-                        } else {
-                            result.loadSubtask((Subtask) task);
-                        }
-                    }
+            if (file.exists() || !hasJournal) {
+                List<Task> records = new ArrayList<>();
+                if (result.isIncremental() && file.exists()) {
+                    snapshotGeneration = result.readStore(records::add);
+                } else if (bodyCacheSize > 0 && file.exists()) {
+                    snapshotGeneration = LazyBodies.read(file, bodyCacheSize, records::add);
+                } else {
+                    snapshotGeneration = result.format.read(file, records::add);
                 }
+                records.forEach(task -> result.loadedMaxId = Math.max(result.loadedMaxId, task.getId()));
+                result.loadBulk(records);
             }
-            result.setId(idNext);
+
+            result.replayJournals(snapshotGeneration);
+            result.journalBytes = result.journal.length();
+            result.setId(result.loadedMaxId);
         } catch (IOException e) {
             throw new ManagerSaveException("Load file error: " + file.getName());
         }
+
+        if (hasJournal && mode == PersistenceMode.SNAPSHOT) {
+            result.compact();
+        } else if (result.oldJournal.exists() || result.legacyJournal) {
+            result.awaitCompaction(true);
+        }
         return result;
     }
 
-    private Task fromString(String value) {
-        String[] splitValue = value.split(",");
-        int id = Integer.parseInt(splitValue[0]);
-        TaskType type = TaskType.valueOf(splitValue[1]);
-        String name = splitValue[2];
-        TaskStatus status = TaskStatus.valueOf(splitValue[3]);
-        String description = splitValue[4];
-        LocalDateTime startTime = splitValue[5].equals("null") ? null : LocalDateTime.parse(splitValue[5]);
-        Duration duration = splitValue[6].equals("null") ? null : Duration.ofMinutes(Long.parseLong(splitValue[6]));
+    /*
+     * Хранилище, из которого прочитано состояние, запоминается: следующие сохранения
+     * переписывают в нём только изменённые записи.
+     */
+    private long readStore(Consumer<Task> sink) throws IOException {
+        storeStale = false;
+        if (format == SnapshotFormat.SEGMENTS) {
+            segments = new SegmentStore(file);
+            return segments.read(sink);
+        }
+        slots = SlotFile.open(file);
+        long snapshotGeneration = slots.read(sink);
+        storeStale = slots.isLegacy();
+        return snapshotGeneration;
+    }
+
+    static Task fromRecord(CsvTokenizer record, int offset) {
+        int id = record.intValue(offset);
+        TaskType type = record.enumValue(offset + 1, TYPES);
+        String name = record.string(offset + 2);
+        TaskStatus status = record.enumValue(offset + 3, STATUSES);
+        String description = record.string(offset + 4);
+        LocalDateTime startTime = record.isNull(offset + 5) ? null : record.dateTime(offset + 5);
+        Duration duration = record.isNull(offset + 6) ? null : Duration.ofMinutes(record.longValue(offset + 6));
 
         switch (type) {
             case TASK:
@@ -114,7 +946,7 @@ public class FileBackedTaskManager extends InMemoryTaskManager {
                 epic.setStatus(status);
                 return epic;
             case SUBTASK:
-                int epicId = Integer.parseInt(splitValue[7]);
+                int epicId = record.intValue(offset + 7);
                 Subtask subtask = new Subtask(name, description, status, startTime, duration, epicId);
                 subtask.setId(id);
                 return subtask;
@@ -128,26 +960,35 @@ public class FileBackedTaskManager extends InMemoryTaskManager {
     //---------------------------------------------------
     @Override
     public void deleteAllTasks() {
-        super.deleteAllTasks();
-        save();
+        commit(() -> {
+            super.deleteAllTasks();
+            return persistClear(TaskType.TASK);
+        });
     }
 
     @Override
     public void createTask(Task task) {
-        super.createTask(task);
-        save();
+        commit(() -> {
+            super.createTask(task);
+            return persistPut(findTask(task.getId()));
+        });
     }
 
     @Override
     public void updateTask(Task task) {
-        super.updateTask(task);
-        save();
+        commit(() -> {
+            super.updateTask(task);
+            return persistPut(findTask(task.getId()));
+        });
     }
 
     @Override
     public void deleteTaskById(Integer id) {
-        super.deleteTaskById(id);
-        save();
+        commit(() -> {
+            boolean exists = findTask(id) != null;
+            super.deleteTaskById(id);
+            return exists ? persistDelete(TaskType.TASK, id) : 0;
+        });
     }
 
     //---------------------------------------------------
@@ -155,26 +996,39 @@ public class FileBackedTaskManager extends InMemoryTaskManager {
     //---------------------------------------------------
     @Override
     public void deleteAllSubtasks() {
-        super.deleteAllSubtasks();
-        save();
+        commit(() -> {
+            super.deleteAllSubtasks();
+            return persistClear(TaskType.SUBTASK);
+        });
     }
 
     @Override
     public void createSubtask(Subtask subtask) {
-        super.createSubtask(subtask);
-        save();
+        commit(() -> {
+            super.createSubtask(subtask);
+            return persistPut(findSubtask(subtask.getId()));
+        });
     }
 
     @Override
     public void updateSubtask(Subtask subtask) {
-        super.updateSubtask(subtask);
-        save();
+        commit(() -> {
+            super.updateSubtask(subtask);
+            return persistPut(findSubtask(subtask.getId()));
+        });
     }
 
     @Override
     public void deleteSubtaskById(Integer id) {
-        super.deleteSubtaskById(id);
-        save();
+        commit(() -> {
+            Subtask existing = findSubtask(id);
+            super.deleteSubtaskById(id);
+            if (existing == null) {
+                return 0;
+            }
+            markDirty(TaskType.EPIC, existing.getEpicId());
+            return persistDelete(TaskType.SUBTASK, id);
+        });
     }
 
     //---------------------------------------------------
@@ -182,26 +1036,35 @@ public class FileBackedTaskManager extends InMemoryTaskManager {
     //---------------------------------------------------
     @Override
     public void deleteAllEpics() {
-        super.deleteAllEpics();
-        save();
+        commit(() -> {
+            super.deleteAllEpics();
+            return persistClear(TaskType.EPIC);
+        });
     }
 
     @Override
     public void createEpic(Epic epic) {
-        super.createEpic(epic);
-        save();
+        commit(() -> {
+            super.createEpic(epic);
+            return persistPut(findEpic(epic.getId()));
+        });
     }
 
     @Override
     public void updateEpic(Epic epic) {
-        super.updateEpic(epic);
-        save();
+        commit(() -> {
+            super.updateEpic(epic);
+            return persistPut(findEpic(epic.getId()));
+        });
     }
 
     @Override
     public void deleteEpicById(Integer id) {
-        super.deleteEpicById(id);
-        save();
+        commit(() -> {
+            boolean exists = findEpic(id) != null;
+            super.deleteEpicById(id);
+            return exists ? persistDelete(TaskType.EPIC, id) : 0;
+        });
     }
 
     public static void main(String[] args) throws IOException {
@@ -0,0 +1,179 @@
+package service;
+
+import exceptions.ManagerSaveException;
+import model.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Файловое хранилище: снимок в одном из форматов {@link SnapshotFormat} и журнал изменений
+ * в формате журнала {@link FileBackedTaskManager}. Изменения дописываются в журнал,
+ * снимок переписывается целиком, когда журнал набрал snapshotThreshold записей, и при загрузке.
+ * Чтение журнала и замена снимка общие с менеджером: {@link JournalReplay}
+ * и {@link SnapshotFormat#replace}.
+ *
+ * <p>Журнал удаляется после замены снимка. Если процесс упал между этими шагами, журнал
+ * применяется к новому снимку повторно: запись, удаление и очистка идемпотентны,
+ * так что результат тот же.
+ */
+public final class FileTaskStore implements TaskStore {
+
+    static final int DEFAULT_SNAPSHOT_THRESHOLD = 10_000;
+
+    private final File file;
+    private final File journal;
+    private final SnapshotFormat format;
+    private final JournalWriter writer;
+    private int snapshotThreshold = DEFAULT_SNAPSHOT_THRESHOLD;
+    private int journalRecords;
+
+    FileTaskStore(File file, SnapshotFormat format) {
+        if (!format.supportsCompression()) {
+            throw new IllegalArgumentException("Format " + format + " is not supported by file store");
+        }
+        this.file = file;
+        this.journal = new File(file.getPath() + FileBackedTaskManager.JOURNAL_SUFFIX);
+        this.format = format;
+        this.writer = new JournalWriter(journal.toPath(),
+                new File(file.getPath() + FileBackedTaskManager.OLD_JOURNAL_SUFFIX).toPath());
+    }
+
+    //---------------------------------------------------
+    // блок поставщиков: по одному на формат снимка
+    //---------------------------------------------------
+    public static final class CsvProvider implements TaskStoreProvider {
+
+        @Override
+        public String name() {
+            return "csv";
+        }
+
+        @Override
+        public TaskStore open(String location) {
+            return new FileTaskStore(new File(location == null ? "tasks.csv" : location), SnapshotFormat.CSV);
+        }
+    }
+
+    /**
+     * Снимок .bin читается через отображение файла в память.
+     */
+    public static final class BinaryProvider implements TaskStoreProvider {
+
+        @Override
+        public String name() {
+            return "binary";
+        }
+
+        @Override
+        public TaskStore open(String location) {
+            return new FileTaskStore(new File(location == null ? "tasks.bin" : location), SnapshotFormat.BINARY);
+        }
+    }
+
+    public static final class CompactProvider implements TaskStoreProvider {
+
+        @Override
+        public String name() {
+            return "compact";
+        }
+
+        @Override
+        public TaskStore open(String location) {
+            return new FileTaskStore(new File(location == null ? "tasks.tasks" : location), SnapshotFormat.COMPACT);
+        }
+    }
+
+    public synchronized void setSnapshotThreshold(int snapshotThreshold) {
+        this.snapshotThreshold = snapshotThreshold > 0 ? snapshotThreshold : Integer.MAX_VALUE;
+    }
+
+    //---------------------------------------------------
+    // блок загрузки: снимок, затем журнал поверх него
+    //---------------------------------------------------
+    @Override
+    public synchronized void load(Consumer<Task> sink) {
+        StoredRecords records = new StoredRecords();
+        try {
+            if (file.exists()) {
+                format.read(file, records::put);
+            }
+            JournalReplay replay = new JournalReplay(0);
+            replay.replay(journal, true, records::apply);
+            journalRecords += replay.records();
+        } catch (IOException e) {
+            throw new ManagerSaveException("Load file error: " + file.getName());
+        }
+
+        if (journalRecords > 0) {
+            snapshot(records.tasks(), records.epicsWithSubtasks());
+        }
+        records.forEach(sink);
+    }
+
+    //---------------------------------------------------
+    // блок записи
+    //---------------------------------------------------
+    @Override
+    public synchronized void append(Task task) {
+        appendRecord(FileBackedTaskManager.JournalOp.put(task));
+    }
+
+    @Override
+    public synchronized void appendDelete(TaskType type, int id) {
+        appendRecord(FileBackedTaskManager.JournalOp.delete(type, id));
+    }
+
+    @Override
+    public synchronized void appendClear(TaskType type) {
+        appendRecord(FileBackedTaskManager.JournalOp.clear(type));
+    }
+
+    private void appendRecord(String record) {
+        writer.appendRecord(record);
+        journalRecords++;
+        try {
+            writer.flush(false);
+        } catch (IOException e) {
+            throw new ManagerSaveException("Ошибка записи в журнал " + journal.getName());
+        }
+    }
+
+    @Override
+    public synchronized boolean needsSnapshot() {
+        return journalRecords >= snapshotThreshold;
+    }
+
+    @Override
+    public synchronized void snapshot(List<Task> tasks, List<Epic> epics) {
+        format.replace(file, tasks, epics, 0, true, Compression.forFile(file));
+        try {
+            writer.close();
+            Files.deleteIfExists(journal.toPath());
+        } catch (IOException e) {
+            throw new ManagerSaveException("Ошибка очистки журнала " + journal.getName());
+        }
+        journalRecords = 0;
+    }
+
+    @Override
+    public synchronized void flush() {
+        try {
+            writer.flush(true);
+        } catch (IOException e) {
+            throw new ManagerSaveException("Ошибка записи в журнал " + journal.getName());
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            writer.close();
+        } catch (IOException e) {
+            throw new ManagerSaveException("Ошибка записи в журнал " + journal.getName());
+        }
+    }
+}
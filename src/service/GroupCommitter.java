@@ -0,0 +1,153 @@
+package service;
+
+import exceptions.ManagerSaveException;
+
+import java.time.Duration;
+
+/**
+ * Групповая фиксация: изменения получают порядковый номер, фоновый поток раз в окно
+ * выполняет одну общую запись на диск и отмечает все накопленные номера как сохранённые.
+ * Число ещё не записанных изменений ограничено capacity: при отставании диска
+ * вызывающие потоки ждут в awaitCapacity.
+ *
+ * Если запись не удалась, номера не отмечаются сохранёнными, фоновый поток останавливается,
+ * а ошибка остаётся до close: её получает каждый, кто ждёт несохранённый номер или отправляет новый.
+ */
+class GroupCommitter implements AutoCloseable {
+
+    private final Runnable flushAction;
+    private final long windowMillis;
+    private final long capacity;
+    private final Thread thread;
+
+    private long submitted;
+    private long committed;
+    private boolean closed;
+    private RuntimeException failure;
+
+    GroupCommitter(String name, Duration window, int capacity, Runnable flushAction) {
+        this.flushAction = flushAction;
+        this.windowMillis = Math.max(0, window.toMillis());
+        this.capacity = Math.max(1, capacity);
+        this.thread = new Thread(this::run, name);
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    synchronized long submit() {
+        throwIfFailed();
+        submitted++;
+        notifyAll();
+        return submitted;
+    }
+
+    synchronized void await(long sequence) {
+        while (committed < sequence && failure == null && thread.isAlive()) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ManagerSaveException("Ожидание фиксации прервано");
+            }
+        }
+        if (committed < sequence) {
+            throwIfFailed();
+        }
+    }
+
+    synchronized void awaitCapacity() {
+        while (submitted - committed >= capacity && failure == null && thread.isAlive()) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ManagerSaveException("Ожидание очереди записи прервано");
+            }
+        }
+        throwIfFailed();
+    }
+
+    void sync() {
+        long sequence;
+        synchronized (this) {
+            sequence = submitted;
+        }
+        await(sequence);
+    }
+
+    private void throwIfFailed() {
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void run() {
+        while (true) {
+            synchronized (this) {
+                while (submitted == committed && !closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (submitted == committed) {
+                    return;
+                }
+                // даём окну набрать ещё изменений, чтобы записать их одним flush
+                long deadline = System.currentTimeMillis() + windowMillis;
+                long remaining = windowMillis;
+                while (!closed && remaining > 0) {
+                    try {
+                        wait(remaining);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    remaining = deadline - System.currentTimeMillis();
+                }
+            }
+
+            long target;
+            synchronized (this) {
+                target = submitted;
+            }
+
+            RuntimeException error = null;
+            try {
+                flushAction.run();
+            } catch (RuntimeException e) {
+                error = e;
+            }
+
+            synchronized (this) {
+                if (error != null) {
+                    failure = error;
+                    notifyAll();
+                    return;
+                }
+                committed = target;
+                notifyAll();
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            RuntimeException cause = failure;
+            failure = null;
+            if (cause != null) {
+                throw cause;
+            }
+        }
+    }
+}
@@ -3,13 +3,11 @@ package service;
 import model.Task;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 public class InMemoryHistoryManager implements HistoryManager {
 
-    private final Map<Integer, Node> historyMap = new HashMap<>();
+    private final IntMap<Node> historyMap = new IntMap<>();
     private Node head;
     private Node tail;
 
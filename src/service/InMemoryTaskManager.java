@@ -1,31 +1,55 @@
 package service;
 
+import exceptions.TaskOverlapException;
 import model.Epic;
+import model.EpicView;
 import model.Subtask;
+import model.SubtaskSource;
+import model.SubtaskView;
 import model.Task;
-import model.TaskStatus;
+import model.TaskView;
+import model.TaskType;
 
-import java.time.Duration;
-import java.time.LocalDateTime;
 import java.util.*;
+import java.util.function.Consumer;
 
-public class InMemoryTaskManager implements TaskManager {
+public class InMemoryTaskManager implements TaskManager, AutoCloseable {
 
     private Integer id = 0;
-    private final Map<Integer, Task> tasks;
-    private final Map<Integer, Subtask> subtasks;
-    private final Map<Integer, Epic> epics;
+    private final IntMap<Task> tasks;
+    private final IntMap<Subtask> subtasks;
+    private final IntMap<Epic> epics;
     private final HistoryManager historyManager;
-    private final Set<Task> prioritizedTasks = new TreeSet<>(
-            Comparator.comparing(Task::getStartTime)
-                    .thenComparing(Task::getId)
-    );
+    private final TaskStore store;
+    private StringPool stringPool;
+    private final IntervalIndex prioritizedTasks = new IntervalIndex();
+    private final SubtaskSource subtaskSource = this::findSubtask;
 
     public InMemoryTaskManager() {
-        this.tasks = new HashMap<>();
-        this.subtasks = new HashMap<>();
-        this.epics = new HashMap<>();
+        this(NoOpTaskStore.INSTANCE);
+    }
+
+    /**
+     * Менеджер загружает содержимое store и сообщает ему о каждом последующем изменении.
+     */
+    public InMemoryTaskManager(TaskStore store) {
+        this(store, null);
+    }
+
+    /**
+     * То же, но названия и описания загруженных и сохраняемых задач проходят через stringPool.
+     */
+    public InMemoryTaskManager(TaskStore store, StringPool stringPool) {
+        this.tasks = new IntMap<>();
+        this.subtasks = new IntMap<>();
+        this.epics = new IntMap<>();
         this.historyManager = Managers.getDefaultHistory();
+        this.store = store;
+        this.stringPool = stringPool;
+        List<Task> loaded = new ArrayList<>();
+        store.load(loaded::add);
+        loaded.forEach(task -> id = Math.max(id, task.getId()));
+        loadBulk(loaded);
     }
 
     private void updateId() {
@@ -36,6 +60,21 @@ public class InMemoryTaskManager implements TaskManager {
         this.id = id;
     }
 
+    //---------------------------------------------------
+    //доступ к хранимым объектам без копирования и истории
+    //---------------------------------------------------
+    protected final Task findTask(Integer id) {
+        return id == null ? null : tasks.get(id);
+    }
+
+    protected final Subtask findSubtask(Integer id) {
+        return id == null ? null : subtasks.get(id);
+    }
+
+    protected final Epic findEpic(Integer id) {
+        return id == null ? null : epics.get(id);
+    }
+
     //---------------------------------------------------
     //блок методов для tasks
     //---------------------------------------------------
@@ -51,11 +90,12 @@ public class InMemoryTaskManager implements TaskManager {
             prioritizedTasks.remove(t);
         });
         tasks.clear();
+        storeClear(TaskType.TASK);
     }
 
     @Override
     public Task getTaskById(Integer id) {
-        if (!tasks.containsKey(id)) {
+        if (id == null || !tasks.containsKey(id)) {
             System.out.println("There's no task with id " + id);
             System.out.println("method getTaskById in service.InMemoryTaskManager");
             return null;
@@ -68,7 +108,7 @@ public class InMemoryTaskManager implements TaskManager {
 
     @Override
     public void createTask(Task task) {
-        if (tasks.containsKey(task.getId())) {
+        if (task.getId() != null && tasks.containsKey(task.getId())) {
             System.out.println("task already exists with id = " + task.getId());
             System.out.println("method createTask in service.InMemoryTaskManager");
             return;
@@ -82,10 +122,12 @@ public class InMemoryTaskManager implements TaskManager {
         updateId();
         task.setId(id);
 
+        intern(task);
         tasks.put(id, task.cloneTask());
         if (task.getStartTime() != null) {
             prioritizedTasks.add(tasks.get(task.getId()));
         }
+        storePut(tasks.get(id));
     }
 
     @Override
@@ -101,17 +143,19 @@ public class InMemoryTaskManager implements TaskManager {
                     + "method updateTask in service.InMemoryTaskManager");
         }
 
+        intern(task);
         prioritizedTasks.remove(tasks.get(task.getId()));
         tasks.put(task.getId(), task.cloneTask());
         historyManager.update(task.getId(), task.cloneTask());
         if (task.getStartTime() != null) {
             prioritizedTasks.add(tasks.get(task.getId()));
         }
+        storePut(tasks.get(task.getId()));
     }
 
     @Override
     public void deleteTaskById(Integer id) {
-        if (!tasks.containsKey(id)) {
+        if (id == null || !tasks.containsKey(id)) {
             System.out.println("There is no task with id = " + id + " in tasks");
             System.out.println("method deleteTaskById in service.InMemoryTaskManager");
             return;
@@ -120,6 +164,7 @@ public class InMemoryTaskManager implements TaskManager {
         historyManager.remove(id);
         prioritizedTasks.remove(tasks.get(id));
         tasks.remove(id);
+        storeDelete(TaskType.TASK, id);
     }
 
     protected void loadTask(Task task) {
@@ -128,6 +173,7 @@ public class InMemoryTaskManager implements TaskManager {
                     + "method loadTask in service.InMemoryTaskManager");
         }
 
+        intern(task);
         tasks.put(task.getId(), task);
         if (task.getStartTime() != null) {
             prioritizedTasks.add(tasks.get(task.getId()));
@@ -146,19 +192,16 @@ public class InMemoryTaskManager implements TaskManager {
     public void deleteAllSubtasks() {
         subtasks.values().forEach(s -> historyManager.remove(s.getId()));
 
-        epics.values().forEach(epic -> {
-            epic.deleteAllSubtasks();
-            checkEpicStatus(epic.getId());
-            checkEpicTime(epic.getId());
-        });
+        epics.values().forEach(Epic::deleteAllSubtasks);
 
         prioritizedTasks.removeAll(subtasks.values());
         subtasks.clear();
+        storeClear(TaskType.SUBTASK);
     }
 
     @Override
     public Subtask getSubtaskById(Integer id) {
-        if (!subtasks.containsKey(id)) {
+        if (id == null || !subtasks.containsKey(id)) {
             System.out.println("There's no subtask with id " + id);
             System.out.println("method getSubtaskById in service.InMemoryTaskManager");
             return null;
@@ -171,19 +214,20 @@ public class InMemoryTaskManager implements TaskManager {
 
     @Override
     public void createSubtask(Subtask subtask) {
-        if (!epics.containsKey(subtask.getEpicId())) {
+        if (subtask.getEpicId() == null || !epics.containsKey(subtask.getEpicId())) {
             System.out.println("for this subtask doesn't exist epic with id = " + subtask.getEpicId());
             System.out.println("method createSubtask in service.InMemoryTaskManager");
             return;
         }
 
-        if (subtasks.containsKey(subtask.getId())) {
+        if (subtask.getId() != null && subtasks.containsKey(subtask.getId())) {
             System.out.println("subtask already exists with id = " + subtask.getId());
             System.out.println("method createSubtask in service.InMemoryTaskManager");
             return;
         }
 
-        if (epics.containsKey(subtask.getId()) || tasks.containsKey(subtask.getId())) {
+        if (subtask.getId() != null
+                && (epics.containsKey(subtask.getId()) || tasks.containsKey(subtask.getId()))) {
             System.out.println("already exists another task with id = " + subtask.getId());
             System.out.println("method createSubtask in service.InMemoryTaskManager");
             return;
@@ -197,14 +241,15 @@ public class InMemoryTaskManager implements TaskManager {
         updateId();
         subtask.setId(id);
 
-        subtasks.put(id, subtask.cloneSubtask());
-        epics.get(subtask.getEpicId()).addSubtask(subtask.cloneSubtask());
-        checkEpicStatus(subtask.getEpicId());
-        checkEpicTime(subtask.getEpicId());
+        intern(subtask);
+        Subtask stored = subtask.cloneSubtask();
+        subtasks.put(id, stored);
+        epics.get(subtask.getEpicId()).addSubtask(stored);
 
         if (subtask.getStartTime() != null) {
             prioritizedTasks.add(subtasks.get(subtask.getId()));
         }
+        storePut(subtasks.get(id));
     }
 
     @Override
@@ -228,47 +273,43 @@ public class InMemoryTaskManager implements TaskManager {
                     + "method updateSubtask in service.InMemoryTaskManager");
         }
 
+        intern(subtask);
         prioritizedTasks.remove(subtasks.get(subtask.getId()));
-        epics.get(subtask.getEpicId()).replaceSubtask(subtasks.get(subtask.getId()), subtask);
-        subtasks.put(subtask.getId(), subtask.cloneSubtask());
-        checkEpicStatus(subtask.getEpicId());
-        checkEpicTime(subtask.getEpicId());
+        Subtask stored = subtask.cloneSubtask();
+        epics.get(subtask.getEpicId()).replaceSubtask(subtasks.get(subtask.getId()), stored);
+        subtasks.put(subtask.getId(), stored);
         historyManager.update(subtask.getId(), subtask.cloneSubtask());
         if (subtask.getStartTime() != null) {
             prioritizedTasks.add(subtasks.get(subtask.getId()));
         }
+        storePut(subtasks.get(subtask.getId()));
     }
 
     @Override
     public void deleteSubtaskById(Integer id) {
-        if (!subtasks.containsKey(id)) {
+        if (id == null || !subtasks.containsKey(id)) {
             System.out.println("There is no subtask with id = " + id + " in subtasks");
             System.out.println("method deleteSubtaskById in service.InMemoryTaskManager");
             return;
         }
 
         epics.get(subtasks.get(id).getEpicId()).removeSubtask(subtasks.get(id));
-        checkEpicStatus(subtasks.get(id).getEpicId());
-        checkEpicTime(subtasks.get(id).getEpicId());
         historyManager.remove(id);
         prioritizedTasks.remove(subtasks.get(id));
         subtasks.remove(id);
+        storeDelete(TaskType.SUBTASK, id);
     }
 
     protected void loadSubtask(Subtask subtask) {
-        if (!epics.containsKey(subtask.getEpicId())) {
+        if (subtask.getEpicId() == null || !epics.containsKey(subtask.getEpicId())) {
             System.out.println("for this subtask doesn't exist epic with id = " + subtask.getEpicId());
             System.out.println("method loadSubtask in service.InMemoryTaskManager");
             return;
         }
 
+        intern(subtask);
         subtasks.put(subtask.getId(), subtask);
-        Epic epic = epics.get(subtask.getEpicId());
-        if (epic != null) {
-            epic.addSubtask(subtask);
-            checkEpicStatus(epic.getId());
-            checkEpicTime(subtask.getEpicId());
-        }
+        epics.get(subtask.getEpicId()).addSubtask(subtask);
 
         if (hasIntersections(subtask)) {
             throw new IllegalArgumentException("Task intersects with existing task: "
@@ -278,11 +319,6 @@ public class InMemoryTaskManager implements TaskManager {
         if (subtask.getStartTime() != null) {
             prioritizedTasks.add(subtasks.get(subtask.getId()));
         }
-
-        if (epic != null) {
-            epic.addSubtask(subtask);
-            checkEpicStatus(epic.getId());
-        }
     }
 
     //---------------------------------------------------
@@ -300,11 +336,12 @@ public class InMemoryTaskManager implements TaskManager {
         prioritizedTasks.removeAll(subtasks.values());
         subtasks.clear();
         epics.clear();
+        storeClear(TaskType.EPIC);
     }
 
     @Override
     public Epic getEpicById(Integer id) {
-        if (!epics.containsKey(id)) {
+        if (id == null || !epics.containsKey(id)) {
             System.out.println("There's no epic with id " + id);
             System.out.println("method getEpicById in service.InMemoryTaskManager");
             return null;
@@ -317,7 +354,7 @@ public class InMemoryTaskManager implements TaskManager {
 
     @Override
     public void createEpic(Epic epic) {
-        if (epics.containsKey(epic.getId())) {
+        if (epic.getId() != null && epics.containsKey(epic.getId())) {
             System.out.println("task already exists with id = " + epic.getId());
             System.out.println("method createEpic in service.InMemoryTaskManager");
             return;
@@ -325,7 +362,11 @@ public class InMemoryTaskManager implements TaskManager {
 
         updateId();
         epic.setId(id);
-        epics.put(id, epic.cloneEpic());
+        intern(epic);
+        Epic stored = epic.cloneEpic();
+        stored.attach(subtaskSource);
+        epics.put(id, stored);
+        storePut(stored);
     }
 
     @Override
@@ -336,14 +377,16 @@ public class InMemoryTaskManager implements TaskManager {
             return;
         }
 
+        intern(epic);
         epics.get(epic.getId()).setDescription(epic.getDescription());
         epics.get(epic.getId()).setName(epic.getName());
         historyManager.update(epic.getId(), epic.cloneTask());
+        storePut(epics.get(epic.getId()));
     }
 
     @Override
     public void deleteEpicById(Integer id) {
-        if (!epics.containsKey(id)) {
+        if (id == null || !epics.containsKey(id)) {
             System.out.println("There is no epic with id = " + id + " in epics");
             System.out.println("method deleteEpicById in service.InMemoryTaskManager");
             return;
@@ -357,19 +400,128 @@ public class InMemoryTaskManager implements TaskManager {
 
         historyManager.remove(id);
         epics.remove(id);
+        storeDelete(TaskType.EPIC, id);
     }
 
+    /**
+     * Загружает эпик тем же путём, что и пачку записей. Искать его подзадачи среди загруженных
+     * не нужно: подзадача без эпика не загружается, а удаление эпика удаляет и его подзадачи.
+     */
     protected void loadEpic(Epic epic) {
-        epics.put(epic.getId(), epic);
+        loadBulk(List.of(epic));
+    }
 
-        subtasks.values().stream()
-                .filter(subtask -> subtask.getEpicId().equals(epic.getId()))
-                .forEach(subtask -> epics.get(epic.getId()).addSubtask(subtask));
+    //---------------------------------------------------
+    //блок массовой загрузки
+    //---------------------------------------------------
 
-        if (hasIntersections(epic)) {
-            throw new IllegalArgumentException("Task intersects with existing task: "
-                    + "method loadEpic in service.InMemoryTaskManager");
+    /**
+     * Загружает записи снимка за один проход: подзадачи группируются по эпикам, пересечения
+     * проверяются одной сортировкой, а в конце каждому эпику его подзадачи передаются списком,
+     * параллельно по эпикам, так что статус и время эпика считаются один раз. Записи могут
+     * идти в любом порядке.
+     *
+     * <p>Если в менеджере уже есть задачи со временем, новые записи сортируются только между собой,
+     * а с загруженными сверяются через соседей в индексе. Пересечения проверяются до того,
+     * как менеджер изменён: при {@link TaskOverlapException} в нём не остаётся ни одной записи.
+     *
+     * <p>Конструктор вызывает метод до того, как подкласс инициализирован, поэтому ни он,
+     * ни методы поиска, через которые эпики находят подзадачи, не переопределяются.
+     */
+    protected final void loadBulk(Collection<? extends Task> records) {
+        List<Task> loadedTasks = new ArrayList<>();
+        IntMap<Epic> loadedEpics = new IntMap<>();
+        Map<Integer, List<Subtask>> byEpic = new HashMap<>();
+        List<Task> timed = new ArrayList<>();
+        for (Task task : records) {
+            switch (task.getType()) {
+                case TASK -> {
+                    loadedTasks.add(task);
+                    if (task.getStartTime() != null) {
+                        timed.add(task);
+                    }
+                }
+                case EPIC -> loadedEpics.put(task.getId(), (Epic) task);
+                case SUBTASK -> {
+                    Subtask subtask = (Subtask) task;
+                    byEpic.computeIfAbsent(subtask.getEpicId(), key -> new ArrayList<>()).add(subtask);
+                }
+            }
         }
+
+        Map<Epic, List<Subtask>> attached = new IdentityHashMap<>(byEpic.size());
+        byEpic.forEach((epicId, epicSubtasks) -> {
+            Epic epic = epicId == null ? null : loadedEpics.get(epicId);
+            if (epic == null) {
+                epic = findEpic(epicId);
+            }
+            if (epic == null) {
+                System.out.println("for " + epicSubtasks.size() + " subtasks doesn't exist epic with id = "
+                        + epicId);
+                System.out.println("method loadBulk in service.InMemoryTaskManager");
+                return;
+            }
+            for (Subtask subtask : epicSubtasks) {
+                if (subtask.getStartTime() != null) {
+                    timed.add(subtask);
+                }
+            }
+            attached.put(epic, epicSubtasks);
+        });
+
+        List<TaskOverlapException.Conflict> conflicts = findOverlaps(timed);
+        if (prioritizedTasks.size() > 0) {
+            for (Task task : timed) {
+                prioritizedTasks.forEachOverlap(task, stored ->
+                        conflicts.add(new TaskOverlapException.Conflict(stored.getId(), task.getId())));
+            }
+        }
+        if (!conflicts.isEmpty()) {
+            throw new TaskOverlapException(conflicts, "loadBulk in service.InMemoryTaskManager");
+        }
+
+        for (Task task : loadedTasks) {
+            intern(task);
+            tasks.put(task.getId(), task);
+        }
+        for (Epic epic : loadedEpics.values()) {
+            intern(epic);
+            epic.attach(subtaskSource);
+            epics.put(epic.getId(), epic);
+        }
+        for (List<Subtask> epicSubtasks : attached.values()) {
+            for (Subtask subtask : epicSubtasks) {
+                intern(subtask);
+                subtasks.put(subtask.getId(), subtask);
+            }
+        }
+        prioritizedTasks.addAll(timed);
+        attached.entrySet().parallelStream().forEach(entry -> entry.getKey().addSubtasks(entry.getValue()));
+    }
+
+    /*
+     * Все пересекающиеся пары за один проход по задачам, отсортированным по началу, а при равном
+     * начале по окончанию. В куче по окончанию держатся задачи, которые ещё не закончились
+     * к началу текущей: каждая из них пересекается с текущей. Без пересечений куча не растёт
+     * больше одной задачи, и проход занимает O(n log n).
+     */
+    private static List<TaskOverlapException.Conflict> findOverlaps(List<Task> timed) {
+        Comparator<Task> byStart = Task::compareStartTime;
+        timed.sort(byStart.thenComparing(Task::compareEndTime));
+        List<TaskOverlapException.Conflict> conflicts = new ArrayList<>();
+        PriorityQueue<Task> running = new PriorityQueue<>(Task::compareEndTime);
+        for (Task task : timed) {
+            while (!running.isEmpty() && !running.peek().endsAfterStartOf(task)) {
+                running.poll();
+            }
+            for (Task other : running) {
+                if (!other.getId().equals(task.getId())) {
+                    conflicts.add(new TaskOverlapException.Conflict(other.getId(), task.getId()));
+                }
+            }
+            running.add(task);
+        }
+        return conflicts;
     }
 
     @Override
@@ -384,95 +536,207 @@ public class InMemoryTaskManager implements TaskManager {
     }
 
     //---------------------------------------------------
-    //История просмотров задач
+    //блок просмотра без копирования
     //---------------------------------------------------
-    public List<Task> getHistory() {
-        return historyManager.getHistory();
+    @Override
+    public TaskView viewTask(int id) {
+        return ReadOnlyViews.of(tasks.get(id));
+    }
+
+    @Override
+    public SubtaskView viewSubtask(int id) {
+        return ReadOnlyViews.of(subtasks.get(id));
+    }
+
+    @Override
+    public EpicView viewEpic(int id) {
+        return ReadOnlyViews.of(epics.get(id));
     }
 
     //---------------------------------------------------
-    //изменение статусов эпиков
+    //блок хранилища
     //---------------------------------------------------
-    private void checkEpicStatus(Integer id) {
-        if (!epics.containsKey(id)) {
-            System.out.println("model.Epic with id=" + id + " does not exist");
-            System.out.println("method checkEpicStatus in service.InMemoryTaskManager");
-            return;
+    private void storePut(Task task) {
+        store.append(task);
+        snapshotIfNeeded();
+    }
+
+    private void storeDelete(TaskType type, int id) {
+        store.appendDelete(type, id);
+        snapshotIfNeeded();
+    }
+
+    private void storeClear(TaskType type) {
+        store.appendClear(type);
+        snapshotIfNeeded();
+    }
+
+    private void snapshotIfNeeded() {
+        if (store.needsSnapshot()) {
+            snapshotNow();
         }
+    }
 
-        TaskStatus allNew = TaskStatus.NEW;
-        TaskStatus allDone = TaskStatus.DONE;
+    private void snapshotNow() {
+        List<Epic> epicCopies = new ArrayList<>();
+        epics.values().forEach(epic -> epicCopies.add(epic.cloneEpic()));
+        store.snapshot(new ArrayList<>(tasks.values()), epicCopies);
+    }
 
-        for (Subtask subtask : epics.get(id).getSubtasks()) {
-            if (subtask.getStatus() != TaskStatus.NEW) {
-                allNew = subtask.getStatus();
-            }
-            if (subtask.getStatus() != TaskStatus.DONE) {
-                allDone = subtask.getStatus();
+    //---------------------------------------------------
+    //блок пула строк
+    //---------------------------------------------------
+
+    /**
+     * Включает пул строк (null - выключает). Уже загруженные задачи проходят через пул сразу.
+     */
+    public synchronized void setStringPool(StringPool stringPool) {
+        this.stringPool = stringPool;
+        forEachStored(task -> {
+            intern(task);
+            if (task instanceof Epic epic) {
+                epic.getSubtasks().forEach(this::intern);
             }
-        }
+        });
+    }
 
-        if (allNew == TaskStatus.NEW) {
-            epics.get(id).setStatus(TaskStatus.NEW);
-        } else if (allDone == TaskStatus.DONE) {
-            epics.get(id).setStatus(TaskStatus.DONE);
-        } else {
-            epics.get(id).setStatus(TaskStatus.IN_PROGRESS);
-        }
+    public StringPool getStringPool() {
+        return stringPool;
     }
 
-    private void checkEpicTime(Integer id) {
-        if (!epics.containsKey(id)) {
-            System.out.println("model.Epic with id=" + id + " does not exist");
-            System.out.println("method checkEpicStatus in service.InMemoryTaskManager");
+    /*
+     * Заменяет название и описание экземплярами из пула. Ленивые заготовки не трогаются:
+     * присваивание заставило бы их прочитать строки из снимка.
+     */
+    private void intern(Task task) {
+        if (stringPool == null || LazyBodies.isStub(task)) {
             return;
         }
+        String name = task.getName();
+        String pooledName = stringPool.intern(name);
+        if (pooledName != name) {
+            task.setName(pooledName);
+        }
+        String description = task.getDescription();
+        String pooledDescription = stringPool.intern(description);
+        if (pooledDescription != description) {
+            task.setDescription(pooledDescription);
+        }
+    }
 
-        epics.get(id).setStartTime(getSubtasks().stream()
-                .map(Subtask::getStartTime)
-                .filter(Objects::nonNull)
-                .min(Comparator.naturalOrder())
-                .orElse(null));
+    //---------------------------------------------------
+    //блок календаря слотов
+    //---------------------------------------------------
 
-        epics.get(id).setDuration(getSubtasks().stream()
-                .map(Subtask::getDuration)
-                .filter(Objects::nonNull)
-                .reduce(Duration.ZERO, Duration::plus));
+    /**
+     * Подключает пустой календарь слотов для проверки пересечений (null - отключает).
+     * Уже добавленные задачи сразу отмечаются в нём.
+     */
+    public synchronized void setSlotCalendar(SlotCalendar calendar) {
+        prioritizedTasks.setCalendar(calendar);
+    }
 
-        if (epics.get(id).getStartTime() == null) {
-            return;
+    public SlotCalendar getSlotCalendar() {
+        return prioritizedTasks.getCalendar();
+    }
+
+    //---------------------------------------------------
+    //блок потокового обмена: обход хранимых объектов без копий
+    //---------------------------------------------------
+
+    /**
+     * Передаёт в sink хранимые объекты без копирования: задачи, эпики, затем подзадачи.
+     */
+    void forEachStored(Consumer<Task> sink) {
+        tasks.values().forEach(sink);
+        epics.values().forEach(sink);
+        subtasks.values().forEach(sink);
+    }
+
+    /**
+     * Добавляет пачку импортированных записей с их id вместе с отложенными раньше подзадачами.
+     * Подзадачи, эпик которых ещё не загружен, возвращаются, чтобы повторить их после следующих пачек.
+     * Пачка с ошибкой, в том числе с id, повторённым в ней самой или среди отложенных, не добавляется целиком.
+     */
+    List<Subtask> importBatch(List<Task> batch, List<Subtask> deferred) {
+        List<Task> candidates = new ArrayList<>(batch.size() + deferred.size());
+        candidates.addAll(batch);
+        candidates.addAll(deferred);
+
+        Set<Integer> seen = new HashSet<>();
+        Set<Integer> batchEpics = new HashSet<>();
+        for (Task task : candidates) {
+            Integer taskId = task.getId();
+            if (tasks.containsKey(taskId) || epics.containsKey(taskId) || subtasks.containsKey(taskId)) {
+                throw new IllegalArgumentException("Task with id " + taskId + " already exists: "
+                        + "method importBatch in service.InMemoryTaskManager");
+            }
+            if (!seen.add(taskId)) {
+                throw new IllegalArgumentException("Task with id " + taskId + " is imported twice: "
+                        + "method importBatch in service.InMemoryTaskManager");
+            }
+            if (task instanceof Epic) {
+                batchEpics.add(taskId);
+            }
         }
-        epics.get(id).setEndTime(epics.get(id).getSubtasks().stream()
-                .map(Subtask::getEndTime)
-                .filter(Objects::nonNull)
-                .max(LocalDateTime::compareTo)
-                .orElse(null));
 
+        List<Subtask> pending = new ArrayList<>();
+        List<Task> ready = new ArrayList<>(candidates.size());
+        for (Task task : candidates) {
+            if (task instanceof Subtask subtask && !epics.containsKey(subtask.getEpicId())
+                    && !batchEpics.contains(subtask.getEpicId())) {
+                pending.add(subtask);
+                continue;
+            }
+            ready.add(task);
+        }
+        loadBulk(ready);
+        ready.forEach(task -> id = Math.max(id, task.getId()));
+        return pending;
+    }
+
+    /**
+     * Вызывается после импорта: импортированные записи сохраняются одним снимком.
+     */
+    protected synchronized void afterImport() {
+        snapshotNow();
+    }
+
+    /**
+     * Дожидается, пока хранилище запишет все изменения на диск.
+     */
+    public void flush() {
+        store.flush();
+    }
+
+    @Override
+    public void close() {
+        store.close();
     }
 
     //---------------------------------------------------
-    //блок проверки на пересечение
+    //История просмотров задач
     //---------------------------------------------------
-    public ArrayList<Task> getPrioritizedTasks() {
-        return new ArrayList<>(prioritizedTasks);
+    public List<Task> getHistory() {
+        return historyManager.getHistory();
     }
 
-    private boolean areOverlapping(Task a, Task b) {
-        if (a.getStartTime() == null || b.getStartTime() == null) {
-            return false;
-        }
-
-        LocalDateTime startOfA = a.getStartTime();
-        LocalDateTime startOfB = b.getStartTime();
-        LocalDateTime endOfA = a.getEndTime();
-        LocalDateTime endOfB = b.getEndTime();
-        return startOfA.isBefore(endOfB) && startOfB.isBefore(endOfA);
+    //---------------------------------------------------
+    //блок проверки на пересечение
+    //---------------------------------------------------
+    public ArrayList<Task> getPrioritizedTasks() {
+        return prioritizedTasks.toList();
     }
 
     private boolean hasIntersections(Task task) {
-        return getPrioritizedTasks().stream()
-                .filter(t -> !t.getId().equals(task.getId()))
-                .anyMatch(t -> areOverlapping(task, t));
+        Task stored = null;
+        if (task.getId() != null) {
+            stored = tasks.get(task.getId());
+            if (stored == null) {
+                stored = subtasks.get(task.getId());
+            }
+        }
+        return prioritizedTasks.overlaps(task, stored);
     }
 
     //---------------------------------------------------
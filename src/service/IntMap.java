@@ -0,0 +1,216 @@
+package service;
+
+import java.util.AbstractCollection;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Отображение int в объект без упаковки ключей: ключи и значения лежат в двух массивах,
+ * коллизии разрешаются линейным пробированием, ёмкость - степень двойки. Удалённая запись
+ * помечается маркером, чтобы не рвать цепочки пробирования; маркеры убираются при перестройке.
+ *
+ * На запись уходит одна ячейка int и одна ссылка вместо узла HashMap и объекта Integer,
+ * поиск ничего не создаёт. Значения null не хранятся: null в массиве значений означает пустую ячейку.
+ *
+ * Ключ смешивается так же, как в HashMap, поэтому небольшие id, как и раньше, обходятся по возрастанию.
+ */
+final class IntMap<V> {
+
+    private static final Object DELETED = new Object();
+    private static final int MIN_CAPACITY = 16;
+
+    private int[] keys;
+    private Object[] values;
+    private int size;
+    private int deleted;
+
+    IntMap() {
+        keys = new int[MIN_CAPACITY];
+        values = new Object[MIN_CAPACITY];
+    }
+
+    //---------------------------------------------------
+    // блок операций
+    //---------------------------------------------------
+    V get(int key) {
+        int slot = slot(key);
+        return slot < 0 ? null : value(slot);
+    }
+
+    boolean containsKey(int key) {
+        return slot(key) >= 0;
+    }
+
+    /**
+     * Кладёт значение по ключу и возвращает прежнее или null.
+     */
+    V put(int key, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Null values are not supported: key " + key);
+        }
+        int mask = keys.length - 1;
+        int free = -1;
+        int slot = hash(key) & mask;
+        for (Object current = values[slot]; current != null; current = values[slot]) {
+            if (current == DELETED) {
+                if (free < 0) {
+                    free = slot;
+                }
+            } else if (keys[slot] == key) {
+                V previous = value(slot);
+                values[slot] = value;
+                return previous;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        if (free >= 0) {
+            slot = free;
+            deleted--;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        size++;
+        if ((size + deleted) * 4L > keys.length * 3L) {
+            rehash(size * 2L > keys.length ? keys.length * 2 : keys.length);
+        }
+        return null;
+    }
+
+    /**
+     * Удаляет запись и возвращает её значение или null, если ключа не было.
+     */
+    V remove(int key) {
+        int slot = slot(key);
+        if (slot < 0) {
+            return null;
+        }
+        V previous = value(slot);
+        values[slot] = DELETED;
+        size--;
+        deleted++;
+        return previous;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    void clear() {
+        keys = new int[MIN_CAPACITY];
+        values = new Object[MIN_CAPACITY];
+        size = 0;
+        deleted = 0;
+    }
+
+    /**
+     * Живое представление значений в порядке ячеек. Менять отображение во время обхода нельзя.
+     */
+    Collection<V> values() {
+        return new AbstractCollection<>() {
+            @Override
+            public Iterator<V> iterator() {
+                return new Iterator<>() {
+                    private int slot = IntMap.this.next(0);
+
+                    @Override
+                    public boolean hasNext() {
+                        return slot < values.length;
+                    }
+
+                    @Override
+                    public V next() {
+                        if (slot >= values.length) {
+                            throw new NoSuchElementException();
+                        }
+                        V result = value(slot);
+                        slot = IntMap.this.next(slot + 1);
+                        return result;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    //---------------------------------------------------
+    // блок ячеек
+    //---------------------------------------------------
+
+    /*
+     * Ячейка с ключом или -1. Заполнено не больше трёх четвертей таблицы, так что пустая ячейка
+     * найдётся и поиск заканчивается.
+     */
+    private int slot(int key) {
+        int mask = keys.length - 1;
+        for (int slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+            Object current = values[slot];
+            if (current == null) {
+                return -1;
+            }
+            if (current != DELETED && keys[slot] == key) {
+                return slot;
+            }
+        }
+    }
+
+    private int next(int from) {
+        int slot = from;
+        while (slot < values.length && (values[slot] == null || values[slot] == DELETED)) {
+            slot++;
+        }
+        return slot;
+    }
+
+    @SuppressWarnings("unchecked")
+    private V value(int slot) {
+        return (V) values[slot];
+    }
+
+    /*
+     * Переносит живые записи в таблицу заданной ёмкости; маркеры удаления пропадают.
+     */
+    private void rehash(int capacity) {
+        int[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new int[capacity];
+        values = new Object[capacity];
+        deleted = 0;
+        int mask = capacity - 1;
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] != null && oldValues[i] != DELETED) {
+                int slot = hash(oldKeys[i]) & mask;
+                while (values[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private static int hash(int key) {
+        return key ^ (key >>> 16);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder("{");
+        for (int slot = next(0); slot < values.length; slot = next(slot + 1)) {
+            if (result.length() > 1) {
+                result.append(", ");
+            }
+            result.append(keys[slot]).append('=').append(values[slot]);
+        }
+        return result.append('}').toString();
+    }
+}
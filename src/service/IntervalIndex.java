@@ -0,0 +1,179 @@
+package service;
+
+import model.Task;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+
+/**
+ * Задачи со временем, упорядоченные по началу, а при равном начале по id. Хранимые задачи
+ * попарно не пересекаются, поэтому новая задача может пересечься только с последней группой
+ * задач, начавшихся не позже неё, или с первой задачей, начавшейся позже. Проверка сводится
+ * к нескольким соседним узлам дерева: O(log n) и без копирования множества.
+ *
+ * Задачи без времени начала в индекс не попадают, добавление и удаление их игнорирует.
+ *
+ * С подключённым {@link SlotCalendar} выровненные задачи дополнительно отмечаются в календаре.
+ * Выровненный кандидат проверяется по битам, а к дереву индекс обращается, только если
+ * в нём есть невыровненные задачи, с которыми календарь сравнить не может.
+ */
+final class IntervalIndex {
+
+    private final TreeSet<Task> tasks = new TreeSet<>(
+            ((Comparator<Task>) Task::compareStartTime)
+                    .thenComparing(Task::getId, Comparator.nullsFirst(Comparator.naturalOrder()))
+    );
+    private SlotCalendar calendar;
+    private int unaligned;
+
+    /**
+     * Подключает календарь (null - отключает) и отмечает в нём уже добавленные задачи.
+     */
+    void setCalendar(SlotCalendar calendar) {
+        if (calendar != null && calendar.getOccupiedSlots() != 0) {
+            throw new IllegalArgumentException("Slot calendar must be empty");
+        }
+        this.calendar = calendar;
+        unaligned = 0;
+        for (Task task : tasks) {
+            mark(task, true);
+        }
+    }
+
+    SlotCalendar getCalendar() {
+        return calendar;
+    }
+
+    void add(Task task) {
+        if (task.getStartEpochSecond() != Task.NO_TIME && tasks.add(task)) {
+            mark(task, true);
+        }
+    }
+
+    void addAll(Collection<? extends Task> added) {
+        added.forEach(this::add);
+    }
+
+    void remove(Task task) {
+        if (task != null && task.getStartEpochSecond() != Task.NO_TIME && tasks.remove(task)) {
+            mark(task, false);
+        }
+    }
+
+    private void mark(Task task, boolean added) {
+        if (calendar == null) {
+            return;
+        }
+        long first = calendar.firstSlot(task);
+        if (first < 0) {
+            unaligned += added ? 1 : -1;
+        } else {
+            calendar.update(first, calendar.slots(task), added);
+        }
+    }
+
+    void removeAll(Collection<? extends Task> removed) {
+        removed.forEach(this::remove);
+    }
+
+    ArrayList<Task> toList() {
+        return new ArrayList<>(tasks);
+    }
+
+    int size() {
+        return tasks.size();
+    }
+
+    /**
+     * Пересекается ли candidate с какой-либо задачей индекса, кроме задачи с тем же id.
+     * stored - хранимая версия candidate или null, её слоты календаря не считаются занятыми.
+     */
+    boolean overlaps(Task candidate, Task stored) {
+        if (candidate.getStartEpochSecond() == Task.NO_TIME) {
+            return false;
+        }
+
+        if (calendar != null) {
+            long first = calendar.firstSlot(candidate);
+            if (first >= 0) {
+                long storedFirst = -1;
+                long storedCount = 0;
+                if (stored != null && stored.getStartEpochSecond() != Task.NO_TIME && tasks.contains(stored)) {
+                    storedFirst = calendar.firstSlot(stored);
+                    storedCount = storedFirst < 0 ? 0 : calendar.slots(stored);
+                }
+                if (!calendar.isFree(first, calendar.slots(candidate), storedFirst, storedCount)) {
+                    return true;
+                }
+                if (unaligned == 0) {
+                    return false;
+                }
+            }
+        }
+
+        Task before = tasks.lower(candidate);
+        while (before != null) {
+            if (intersect(before, candidate)) {
+                return true;
+            }
+            Task previous = tasks.lower(before);
+            if (previous == null || previous.compareStartTime(before) != 0) {
+                break;
+            }
+            before = previous;
+        }
+
+        Task after = tasks.higher(candidate);
+        while (after != null) {
+            if (intersect(after, candidate)) {
+                return true;
+            }
+            if (after.compareStartTime(candidate) > 0 && !after.getId().equals(candidate.getId())) {
+                break;
+            }
+            after = tasks.higher(after);
+        }
+        return false;
+    }
+
+    /**
+     * Передаёт в action все задачи индекса, которые пересекаются с candidate, кроме задачи с тем же id.
+     * Слева смотрится только последняя группа задач с одинаковым началом, справа - задачи,
+     * начавшиеся до окончания candidate. Календарь не используется: ему неизвестно, чьи слоты заняты.
+     */
+    void forEachOverlap(Task candidate, Consumer<Task> action) {
+        if (candidate.getStartEpochSecond() == Task.NO_TIME) {
+            return;
+        }
+
+        Task before = tasks.lower(candidate);
+        while (before != null) {
+            if (intersect(before, candidate)) {
+                action.accept(before);
+            }
+            Task previous = tasks.lower(before);
+            if (previous == null || previous.compareStartTime(before) != 0) {
+                break;
+            }
+            before = previous;
+        }
+
+        for (Task after = tasks.higher(candidate); after != null; after = tasks.higher(after)) {
+            if (intersect(after, candidate)) {
+                action.accept(after);
+            } else if (after.compareStartTime(candidate) > 0) {
+                break;
+            }
+        }
+    }
+
+    private static boolean intersect(Task a, Task b) {
+        if (a.getId() != null && a.getId().equals(b.getId())) {
+            return false;
+        }
+        return a.overlaps(b);
+    }
+}
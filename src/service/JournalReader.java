@@ -0,0 +1,158 @@
+package service;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.zip.CRC32C;
+
+/**
+ * Последовательно читает журнал, записанный {@link JournalWriter}. Запись с неверной длиной,
+ * контрольной суммой или без завершающего перевода строки считается оборванным хвостом:
+ * чтение останавливается, а {@link #validLength()} указывает, где заканчиваются целые записи.
+ */
+final class JournalReader implements AutoCloseable {
+
+    enum Entry {
+        HEADER,
+        RECORD,
+        LEGACY,
+        END
+    }
+
+    private static final int MAX_LENGTH_DIGITS = 10;
+
+    private final InputStream in;
+    private long position;
+    private long validLength;
+    private boolean torn;
+    private boolean framed;
+    private String payload;
+    private long generation;
+
+    JournalReader(File source) throws IOException {
+        this.in = new BufferedInputStream(Files.newInputStream(source.toPath()), 1 << 16);
+    }
+
+    /**
+     * HEADER - строка поколения, RECORD - целая запись, LEGACY - журнал старого формата без рамок,
+     * END - конец журнала или оборванный хвост. Строка без рамки после записи в рамке - это мусор
+     * в хвосте после падения, а не старый формат.
+     */
+    Entry next() throws IOException {
+        validLength = position;
+        int c = read();
+        if (c < 0) {
+            return Entry.END;
+        }
+        if (c == '#') {
+            return readHeader();
+        }
+        if (c == '@') {
+            return readRecord();
+        }
+        return framed ? tornTail() : Entry.LEGACY;
+    }
+
+    private Entry readHeader() throws IOException {
+        StringBuilder line = new StringBuilder("#");
+        int c;
+        while ((c = read()) != '\n') {
+            if (c < 0) {
+                return tornTail();
+            }
+            line.append((char) c);
+        }
+
+        String prefix = FileBackedTaskManager.GENERATION_FIELD + ",";
+        if (line.toString().startsWith(prefix)) {
+            try {
+                generation = Long.parseLong(line.substring(prefix.length()).trim());
+            } catch (NumberFormatException e) {
+                return tornTail();
+            }
+        }
+        return Entry.HEADER;
+    }
+
+    private Entry readRecord() throws IOException {
+        long length = 0;
+        int digits = 0;
+        int c;
+        while ((c = read()) != ',') {
+            if (c < '0' || c > '9' || ++digits > MAX_LENGTH_DIGITS) {
+                return tornTail();
+            }
+            length = length * 10 + (c - '0');
+        }
+        if (digits == 0 || length > Integer.MAX_VALUE) {
+            return tornTail();
+        }
+
+        long expected = 0;
+        for (int i = 0; i < 8; i++) {
+            int digit = Character.digit(read(), 16);
+            if (digit < 0) {
+                return tornTail();
+            }
+            expected = expected << 4 | digit;
+        }
+        if (read() != ',') {
+            return tornTail();
+        }
+
+        byte[] bytes = in.readNBytes((int) length);
+        position += bytes.length;
+        if (bytes.length != length || read() != '\n') {
+            return tornTail();
+        }
+
+        CRC32C crc = new CRC32C();
+        crc.update(bytes);
+        if (crc.getValue() != expected) {
+            return tornTail();
+        }
+        payload = new String(bytes, StandardCharsets.UTF_8);
+        framed = true;
+        return Entry.RECORD;
+    }
+
+    private Entry tornTail() {
+        torn = true;
+        return Entry.END;
+    }
+
+    private int read() throws IOException {
+        int c = in.read();
+        if (c >= 0) {
+            position++;
+        }
+        return c;
+    }
+
+    String payload() {
+        return payload;
+    }
+
+    long generation() {
+        return generation;
+    }
+
+    boolean isTorn() {
+        return torn;
+    }
+
+    /**
+     * Длина журнала до начала последней прочитанной записи или оборванного хвоста.
+     */
+    long validLength() {
+        return validLength;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -0,0 +1,111 @@
+package service;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+
+/**
+ * Проход по журналам, записанным {@link JournalWriter}, поверх снимка с поколением snapshotGeneration.
+ * Журнал, заголовок которого старше снимка, уже вошёл в снимок и пропускается. Журнал старого
+ * формата без рамок читается как CSV.
+ *
+ * <p>Проход запоминает последнее встреченное поколение, число применённых записей
+ * и то, попадался ли журнал старого формата.
+ */
+final class JournalReplay {
+
+    private final long snapshotGeneration;
+    private long generation;
+    private int records;
+    private boolean legacy;
+
+    JournalReplay(long snapshotGeneration) {
+        this.snapshotGeneration = snapshotGeneration;
+        this.generation = snapshotGeneration;
+    }
+
+    /**
+     * Передаёт записи журнала source в handler. Если процесс упал посреди записи, чтение
+     * останавливается на оборванном хвосте; при truncateTornTail хвост ещё и отрезается от файла,
+     * иначе файл не меняется.
+     */
+    void replay(File source, boolean truncateTornTail, Consumer<CsvTokenizer> handler) throws IOException {
+        if (!source.exists()) {
+            return;
+        }
+
+        long validLength;
+        try (JournalReader reader = new JournalReader(source)) {
+            loop:
+            while (true) {
+                switch (reader.next()) {
+                    case HEADER:
+                        if (reader.generation() < snapshotGeneration) {
+                            return;
+                        }
+                        generation = Math.max(generation, reader.generation());
+                        break;
+                    case RECORD:
+                        try (CsvTokenizer record = new CsvTokenizer(new StringReader(reader.payload()))) {
+                            if (record.next()) {
+                                handler.accept(record);
+                                records++;
+                            }
+                        }
+                        break;
+                    case LEGACY:
+                        legacy = true;
+                        replayLegacy(source, handler);
+                        return;
+                    default:
+                        break loop;
+                }
+            }
+            if (!reader.isTorn() || !truncateTornTail) {
+                return;
+            }
+            validLength = reader.validLength();
+        }
+
+        try (FileChannel channel = FileChannel.open(source.toPath(), StandardOpenOption.WRITE)) {
+            System.out.println("journal " + source.getName() + " has a torn tail, truncated at " + validLength);
+            channel.truncate(validLength);
+            channel.force(true);
+        }
+    }
+
+    private void replayLegacy(File source, Consumer<CsvTokenizer> handler) throws IOException {
+        FileChannel channel = FileChannel.open(source.toPath(), StandardOpenOption.READ);
+        try (CsvTokenizer record = new CsvTokenizer(Channels.newReader(channel, StandardCharsets.UTF_8))) {
+            while (record.next()) {
+                if (record.fieldEquals(0, FileBackedTaskManager.GENERATION_FIELD)) {
+                    long journalGeneration = record.longValue(1);
+                    if (journalGeneration < snapshotGeneration) {
+                        return;
+                    }
+                    generation = Math.max(generation, journalGeneration);
+                } else {
+                    handler.accept(record);
+                    records++;
+                }
+            }
+        }
+    }
+
+    long generation() {
+        return generation;
+    }
+
+    int records() {
+        return records;
+    }
+
+    boolean isLegacy() {
+        return legacy;
+    }
+}
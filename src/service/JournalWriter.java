@@ -0,0 +1,151 @@
+package service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32C;
+
+/**
+ * Дописывает записи журнала через один открытый FileChannel. Записи копятся в буфере
+ * и уходят на диск одной операцией write, при необходимости с FileChannel.force.
+ *
+ * <p>Каждая запись обрамляется длиной и CRC32C: {@code @<длина в байтах>,<crc hex>,<запись>\n},
+ * чтобы при загрузке оборванный хвост журнала можно было найти и отрезать.
+ */
+class JournalWriter implements AutoCloseable {
+
+    private final Path path;
+    private final Path rotatedPath;
+    private final Object flushLock = new Object();
+    private ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    private int rotationPoint = -1;
+    private FileChannel channel;
+
+    JournalWriter(Path path, Path rotatedPath) {
+        this.path = path;
+        this.rotatedPath = rotatedPath;
+    }
+
+    synchronized int append(String line) {
+        byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+        buffer.writeBytes(bytes);
+        return bytes.length;
+    }
+
+    synchronized int appendRecord(String record) {
+        byte[] bytes = record.getBytes(StandardCharsets.UTF_8);
+        CRC32C crc = new CRC32C();
+        crc.update(bytes);
+        byte[] prefix = frame(bytes.length, crc.getValue());
+        buffer.writeBytes(prefix);
+        buffer.writeBytes(bytes);
+        buffer.write('\n');
+        return prefix.length + bytes.length + 1;
+    }
+
+    static byte[] frame(int length, long crc) {
+        String hex = Long.toHexString(crc);
+        return ("@" + length + "," + "0".repeat(8 - hex.length()) + hex + ",").getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Отмечает, что всё добавленное до этого момента остаётся в старом журнале:
+     * при ближайшем flush он переименовывается в rotatedPath, а новые записи идут в свежий файл.
+     */
+    synchronized void markRotation() {
+        rotationPoint = buffer.size();
+    }
+
+    void flush(boolean force) throws IOException {
+        synchronized (flushLock) {
+            byte[] pending;
+            int rotateAt;
+            synchronized (this) {
+                if (buffer.size() == 0 && rotationPoint < 0 && !force) {
+                    return;
+                }
+                pending = buffer.toByteArray();
+                rotateAt = rotationPoint;
+                buffer = new ByteArrayOutputStream();
+                rotationPoint = -1;
+            }
+
+            int offset = 0;
+            if (rotateAt >= 0) {
+                write(pending, 0, rotateAt);
+                if (channel != null) {
+                    channel.force(false);
+                    channel.close();
+                    channel = null;
+                }
+                rotate();
+                offset = rotateAt;
+            }
+
+            write(pending, offset, pending.length - offset);
+            if (force && channel != null) {
+                channel.force(false);
+            }
+        }
+    }
+
+    private void write(byte[] data, int offset, int length) throws IOException {
+        if (length == 0) {
+            return;
+        }
+        FileChannel target = channel();
+        ByteBuffer chunk = ByteBuffer.wrap(data, offset, length);
+        while (chunk.hasRemaining()) {
+            target.write(chunk);
+        }
+    }
+
+    private void rotate() throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+        if (!Files.exists(rotatedPath)) {
+            Files.move(path, rotatedPath, StandardCopyOption.ATOMIC_MOVE);
+            return;
+        }
+
+        // предыдущее уплотнение не завершилось: дописываем журнал к старому без его заголовка
+        byte[] records = Files.readAllBytes(path);
+        int start = 0;
+        if (records.length > 0 && records[0] == '#') {
+            while (start < records.length && records[start] != '\n') {
+                start++;
+            }
+            start++;
+        }
+        if (start < records.length) {
+            Files.write(rotatedPath, Arrays.copyOfRange(records, start, records.length), StandardOpenOption.APPEND);
+        }
+        Files.delete(path);
+    }
+
+    private FileChannel channel() throws IOException {
+        if (channel == null || !channel.isOpen()) {
+            channel = FileChannel.open(path,
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        }
+        return channel;
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (flushLock) {
+            if (channel != null) {
+                channel.close();
+                channel = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package service;
+
+import exceptions.ManagerSaveException;
+import model.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Ленивая загрузка {@link BinarySnapshot}: при чтении создаются только заготовки задач и подзадач
+ * с id, статусом, эпиком и временем, а название и описание читаются из отображённого файла
+ * при первом обращении к ним. Прочитанные строки держатся в LRU-кэше ограниченного размера,
+ * вытесненные при следующем обращении читаются из файла заново. Эпики загружаются целиком.
+ *
+ * Заготовка, которой присвоили название или описание, забирает свои строки себе и больше
+ * к файлу не обращается. Отображение остаётся действительным и после замены снимка на диске.
+ */
+final class LazyBodies {
+
+    private static final TaskType[] TYPES = TaskType.values();
+    private static final TaskStatus[] STATUSES = TaskStatus.values();
+
+    private final File source;
+    private final MappedByteBuffer buffer;
+    private final int strings;
+    private final int stringsEnd;
+    private final Map<Integer, String[]> cache;
+
+    private LazyBodies(File source, MappedByteBuffer buffer, int strings, int cacheSize) {
+        this.source = source;
+        this.buffer = buffer;
+        this.strings = strings;
+        this.stringsEnd = buffer.getInt(4) == BinarySnapshot.VERSION ? buffer.limit() - 4 : buffer.limit();
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, String[]> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    //---------------------------------------------------
+    // блок чтения индекса
+    //---------------------------------------------------
+
+    /**
+     * Передаёт в sink эпики и заготовки задач и подзадач и возвращает поколение снимка.
+     * Контрольная сумма файла не проверяется, так как потребовала бы прочитать все строки:
+     * вместо неё границы записей и строк проверяются при обращении.
+     */
+    static long read(File source, int cacheSize, Consumer<Task> sink) throws IOException {
+        MappedByteBuffer buffer = BinarySnapshot.map(source, false);
+        if (buffer == null) {
+            return 0;
+        }
+
+        int count = buffer.getInt(16);
+        long strings = buffer.getLong(20);
+        if (count < 0 || strings != BinarySnapshot.HEADER_SIZE + (long) count * BinarySnapshot.RECORD_SIZE
+                || strings > buffer.limit()) {
+            throw new ManagerSaveException("Снимок обрезан: " + source.getName());
+        }
+
+        LazyBodies bodies = new LazyBodies(source, buffer, (int) strings, cacheSize);
+        for (int i = 0; i < count; i++) {
+            sink.accept(bodies.index(BinarySnapshot.HEADER_SIZE + i * BinarySnapshot.RECORD_SIZE));
+        }
+        return BinarySnapshot.generation(buffer);
+    }
+
+    private Task index(int position) {
+        int id = buffer.getInt(position);
+        int type = buffer.get(position + 4);
+        int status = buffer.get(position + 5);
+        if (type < 0 || type >= TYPES.length || status < 0 || status >= STATUSES.length) {
+            throw new ManagerSaveException("Повреждённая запись " + id + ": " + source.getName());
+        }
+
+        Task task = switch (TYPES[type]) {
+            case TASK -> new TaskStub(this, position, STATUSES[status],
+                    BinarySnapshot.startTime(buffer, position), BinarySnapshot.duration(buffer, position));
+            case EPIC -> {
+                String[] body = readBody(position);
+                Epic epic = new Epic(body[0], body[1]);
+                epic.setStatus(STATUSES[status]);
+                yield epic;
+            }
+            case SUBTASK -> new SubtaskStub(this, position, STATUSES[status],
+                    BinarySnapshot.startTime(buffer, position), BinarySnapshot.duration(buffer, position),
+                    buffer.getInt(position + 8));
+        };
+        task.setId(id);
+        return task;
+    }
+
+    //---------------------------------------------------
+    // блок чтения строк
+    //---------------------------------------------------
+
+    /*
+     * Название и описание записи: из кэша или из файла.
+     */
+    private synchronized String[] body(int position) {
+        String[] body = cache.get(position);
+        if (body == null) {
+            body = readBody(position);
+            cache.put(position, body);
+        }
+        return body;
+    }
+
+    private String[] readBody(int position) {
+        return new String[]{
+                string(position, buffer.getInt(position + 32), buffer.getInt(position + 36)),
+                string(position, buffer.getInt(position + 40), buffer.getInt(position + 44))
+        };
+    }
+
+    private String string(int position, int offset, int length) {
+        if (length == -1) {
+            return null;
+        }
+        if (length < 0 || offset < 0 || (long) strings + offset + length > stringsEnd) {
+            throw new ManagerSaveException("Повреждённая запись " + buffer.getInt(position) + ": "
+                    + source.getName());
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(strings + offset, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    //---------------------------------------------------
+    // блок заготовок
+    //---------------------------------------------------
+    static boolean isStub(Task task) {
+        return task instanceof TaskStub || task instanceof SubtaskStub;
+    }
+
+    /*
+     * Ссылка заготовки на её строки в файле. Заготовки задачи и подзадачи делегируют сюда
+     * чтение названия и описания и отвязку от файла.
+     */
+    private static final class LazyBody {
+
+        private LazyBodies bodies;
+        private final int position;
+
+        LazyBody(LazyBodies bodies, int position) {
+            this.bodies = bodies;
+            this.position = position;
+        }
+
+        String name(String own) {
+            return bodies == null ? own : bodies.body(position)[0];
+        }
+
+        String description(String own) {
+            return bodies == null ? own : bodies.body(position)[1];
+        }
+
+        /*
+         * Переносит строки из файла в owner и больше к файлу не обращается.
+         */
+        void detach(Task owner) {
+            if (bodies != null) {
+                String[] body = bodies.body(position);
+                bodies = null;
+                owner.setName(body[0]);
+                owner.setDescription(body[1]);
+            }
+        }
+    }
+
+    private static final class TaskStub extends Task {
+
+        private final LazyBody body;
+
+        TaskStub(LazyBodies bodies, int position, TaskStatus status,
+                 LocalDateTime startTime, Duration duration) {
+            super(null, null, status, startTime, duration);
+            this.body = new LazyBody(bodies, position);
+        }
+
+        @Override
+        public String getName() {
+            return body.name(super.getName());
+        }
+
+        @Override
+        public String getDescription() {
+            return body.description(super.getDescription());
+        }
+
+        @Override
+        public void setName(String name) {
+            body.detach(this);
+            super.setName(name);
+        }
+
+        @Override
+        public void setDescription(String description) {
+            body.detach(this);
+            super.setDescription(description);
+        }
+
+        @Override
+        public Task cloneTask() {
+            Task copy = new Task(getName(), getDescription(), getStatus(), getStartTime(), getDuration());
+            copy.setId(getId());
+            return copy;
+        }
+
+        @Override
+        public String toString() {
+            return cloneTask().toString();
+        }
+    }
+
+    private static final class SubtaskStub extends Subtask {
+
+        private final LazyBody body;
+
+        SubtaskStub(LazyBodies bodies, int position, TaskStatus status,
+                    LocalDateTime startTime, Duration duration, int epicId) {
+            super(null, null, status, startTime, duration, epicId);
+            this.body = new LazyBody(bodies, position);
+        }
+
+        @Override
+        public String getName() {
+            return body.name(super.getName());
+        }
+
+        @Override
+        public String getDescription() {
+            return body.description(super.getDescription());
+        }
+
+        @Override
+        public void setName(String name) {
+            body.detach(this);
+            super.setName(name);
+        }
+
+        @Override
+        public void setDescription(String description) {
+            body.detach(this);
+            super.setDescription(description);
+        }
+
+        @Override
+        public String toString() {
+            return cloneSubtask().toString();
+        }
+    }
+}
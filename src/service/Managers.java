@@ -1,15 +1,67 @@
 package service;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ServiceLoader;
+
 public final class Managers {
 
+    /**
+     * Имя хранилища для {@link #getDefault()}: memory, csv, binary, compact или имя стороннего поставщика.
+     */
+    public static final String STORE_PROPERTY = "kanban.store";
+    public static final String STORE_LOCATION_PROPERTY = "kanban.store.location";
+    /**
+     * Размер пула строк для {@link #getDefault()}; если свойство не задано, пул не используется.
+     */
+    public static final String STRING_POOL_PROPERTY = "kanban.strings.pool";
+
     private Managers() {
     }
 
     public static TaskManager getDefault() {
-        return new InMemoryTaskManager();
+        return new InMemoryTaskManager(getDefaultStore(), getDefaultStringPool());
     }
 
     public static HistoryManager getDefaultHistory() {
         return new InMemoryHistoryManager();
     }
+
+    public static StringPool getDefaultStringPool() {
+        String capacity = System.getProperty(STRING_POOL_PROPERTY);
+        if (capacity == null) {
+            return null;
+        }
+        try {
+            return new StringPool(Integer.parseInt(capacity.trim()));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid string pool capacity: " + capacity);
+        }
+    }
+
+    //---------------------------------------------------
+    // блок выбора хранилища
+    //---------------------------------------------------
+    public static TaskStore getDefaultStore() {
+        return openStore(System.getProperty(STORE_PROPERTY, NoOpTaskStore.NAME),
+                System.getProperty(STORE_LOCATION_PROPERTY));
+    }
+
+    public static TaskStore openStore(String name, String location) {
+        if (NoOpTaskStore.NAME.equals(name)) {
+            return NoOpTaskStore.INSTANCE;
+        }
+        for (TaskStoreProvider provider : ServiceLoader.load(TaskStoreProvider.class)) {
+            if (provider.name().equals(name)) {
+                return provider.open(location);
+            }
+        }
+        throw new IllegalArgumentException("Unknown task store: " + name);
+    }
+
+    public static List<String> getStoreNames() {
+        List<String> names = new ArrayList<>();
+        ServiceLoader.load(TaskStoreProvider.class).forEach(provider -> names.add(provider.name()));
+        return names;
+    }
 }
@@ -0,0 +1,66 @@
+package service;
+
+import model.Epic;
+import model.Task;
+import model.TaskType;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Хранилище, которое ничего не сохраняет: менеджер работает только в памяти.
+ */
+public final class NoOpTaskStore implements TaskStore {
+
+    static final String NAME = "memory";
+    static final NoOpTaskStore INSTANCE = new NoOpTaskStore();
+
+    private NoOpTaskStore() {
+    }
+
+    public static final class Provider implements TaskStoreProvider {
+
+        @Override
+        public String name() {
+            return NAME;
+        }
+
+        @Override
+        public TaskStore open(String location) {
+            return INSTANCE;
+        }
+    }
+
+    @Override
+    public void load(Consumer<Task> sink) {
+    }
+
+    @Override
+    public void append(Task task) {
+    }
+
+    @Override
+    public void appendDelete(TaskType type, int id) {
+    }
+
+    @Override
+    public void appendClear(TaskType type) {
+    }
+
+    @Override
+    public boolean needsSnapshot() {
+        return false;
+    }
+
+    @Override
+    public void snapshot(List<Task> tasks, List<Epic> epics) {
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,424 @@
+package service;
+
+import exceptions.ManagerSaveException;
+import model.Epic;
+import model.Subtask;
+import model.Task;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32C;
+
+/**
+ * Параллельная загрузка CSV-снимка. Файл делится на куски по границам записей,
+ * куски разбираются одновременно в общем ForkJoinPool, а затем результаты детерминированно
+ * сливаются: сначала задачи, потом эпики, потом подзадачи, каждый тип в порядке файла.
+ *
+ * <p>Граница записи - перевод строки вне кавычек. Чтобы найти её без последовательного прохода,
+ * сначала параллельно считается число кавычек в каждом куске, а префиксная чётность
+ * говорит, находится ли начало куска внутри поля в кавычках.
+ *
+ * <p>Если снимок заканчивается строкой {@code #crc,<записей>,<CRC32C>}, контрольная сумма всего,
+ * что выше неё, считается параллельно с разбором и сверяется вместе с числом записей.
+ * Снимки без этой строки читаются как раньше.
+ */
+final class ParallelCsvLoader {
+
+    private static final long MIN_CHUNK_SIZE = 1 << 20;
+    private static final long MAX_CHUNK_SIZE = 1L << 30;
+    private static final int SCAN_BUFFER_SIZE = 1 << 16;
+    private static final int FOOTER_SCAN_SIZE = 128;
+
+    private ParallelCsvLoader() {
+    }
+
+    private static final class Chunk {
+        final List<Task> tasks = new ArrayList<>();
+        final List<Epic> epics = new ArrayList<>();
+        final List<Subtask> subtasks = new ArrayList<>();
+        long generation;
+    }
+
+    /**
+     * Передаёт записи снимка в sink и возвращает поколение снимка.
+     */
+    static long load(File source, Consumer<Task> sink) throws IOException {
+        try (FileChannel channel = FileChannel.open(source.toPath(), StandardOpenOption.READ)) {
+            return load(new ChannelSource(channel), source.getName(), sink);
+        }
+    }
+
+    /**
+     * То же для распакованного снимка, который приходит окнами. Каждое окно до начала последней
+     * записи в нём разбирается параллельно, как файл; последняя запись, возможно неполная,
+     * переносится в начало следующего окна. В памяти одновременно одно окно и разобранные записи.
+     */
+    static long load(Compression.Windows windows, String name, Consumer<Task> sink) throws IOException {
+        List<Chunk> chunks = new ArrayList<>();
+        CRC32C crc = new CRC32C();
+        ByteBuffer carry = ByteBuffer.allocate(0);
+        for (ByteBuffer window = windows.next(); window != null; window = windows.next()) {
+            ByteBuffer content = ByteBuffer.allocate(carry.remaining() + window.remaining());
+            content.put(carry).put(window).flip();
+            int end = lastRecordStart(content);
+            crc.update(content.slice(0, end));
+            chunks.addAll(parseChunks(new BufferSource(content.slice(0, end)), end));
+            carry = content.slice(end, content.limit() - end);
+        }
+
+        // в последней записи может оказаться строка #crc
+        BufferSource tail = new BufferSource(carry);
+        Footer footer = carry.limit() == 0 ? null : readFooter(tail, carry.limit());
+        int size = footer == null ? carry.limit() : (int) footer.start;
+        crc.update(carry.slice(0, size));
+        chunks.addAll(parseChunks(tail, size));
+        return emit(chunks, footer, footer == null ? 0 : crc.getValue(), name, sink);
+    }
+
+    private static long load(Source source, String name, Consumer<Task> sink) throws IOException {
+        long size = source.size();
+        if (size == 0) {
+            return 0;
+        }
+
+        Footer footer = readFooter(source, size);
+        CompletableFuture<Long> checksum = null;
+        if (footer != null) {
+            size = footer.start;
+            long covered = size;
+            checksum = CompletableFuture.supplyAsync(() -> crc(source, covered));
+        }
+
+        List<Chunk> chunks = parseChunks(source, size);
+        long crc = 0;
+        if (checksum != null) {
+            try {
+                crc = checksum.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof UncheckedIOException cause) {
+                    throw cause.getCause();
+                }
+                throw e;
+            }
+        }
+        return emit(chunks, footer, crc, name, sink);
+    }
+
+    /*
+     * Сверяет число записей и контрольную сумму со строкой #crc, если она была, и передаёт записи
+     * в sink: сначала задачи, потом эпики, потом подзадачи. Возвращает поколение снимка.
+     */
+    private static long emit(List<Chunk> chunks, Footer footer, long crc, String name, Consumer<Task> sink) {
+        if (footer != null) {
+            long records = chunks.stream()
+                    .mapToLong(chunk -> chunk.tasks.size() + chunk.epics.size() + chunk.subtasks.size())
+                    .sum();
+            if (records != footer.records || crc != footer.crc) {
+                throw new ManagerSaveException("Контрольная сумма снимка не совпадает: " + name);
+            }
+        }
+
+        chunks.forEach(chunk -> chunk.tasks.forEach(sink));
+        chunks.forEach(chunk -> chunk.epics.forEach(sink));
+        chunks.forEach(chunk -> chunk.subtasks.forEach(sink));
+        return chunks.stream()
+                .mapToLong(chunk -> chunk.generation)
+                .reduce(0, Math::max);
+    }
+
+    /*
+     * Делит первые size байт источника на куски по границам записей и разбирает их параллельно.
+     * Источник должен начинаться с начала записи.
+     */
+    private static List<Chunk> parseChunks(Source source, long size) throws IOException {
+        if (size == 0) {
+            return List.of();
+        }
+
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        int count = (int) Math.max(1, Math.min(size / MIN_CHUNK_SIZE, parallelism * 4L));
+        count = (int) Math.max(count, size / MAX_CHUNK_SIZE + 1);
+
+        long[] nominal = new long[count + 1];
+        for (int i = 0; i <= count; i++) {
+            nominal[i] = size * i / count;
+        }
+
+        try {
+            int[] quotes = IntStream.range(0, count).parallel()
+                    .map(i -> countQuotes(source, nominal[i], nominal[i + 1]))
+                    .toArray();
+
+            boolean[] insideQuotes = new boolean[count];
+            for (int i = 1; i < count; i++) {
+                insideQuotes[i] = insideQuotes[i - 1] ^ (quotes[i - 1] % 2 == 1);
+            }
+
+            long[] starts = new long[count + 1];
+            starts[count] = size;
+            IntStream.range(1, count).parallel()
+                    .forEach(i -> starts[i] = recordStart(source, nominal[i], insideQuotes[i], size));
+
+            return IntStream.range(0, count).parallel()
+                    .mapToObj(i -> parse(source, starts[i], Math.max(starts[i], starts[i + 1])))
+                    .toList();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /*
+     * Начало последней записи окна: позиция после последнего перевода строки вне кавычек,
+     * не считая перевода строки в самом конце. Окно начинается с начала записи.
+     */
+    private static int lastRecordStart(ByteBuffer content) {
+        boolean quoted = false;
+        int start = 0;
+        for (int i = 0; i < content.limit() - 1; i++) {
+            byte b = content.get(i);
+            if (b == '"') {
+                quoted = !quoted;
+            } else if (b == '\n' && !quoted) {
+                start = i + 1;
+            }
+        }
+        return start;
+    }
+
+    //---------------------------------------------------
+    // блок источников: файл читается по позициям, распакованный снимок - из памяти
+    //---------------------------------------------------
+    private interface Source {
+        long size() throws IOException;
+
+        int read(ByteBuffer target, long position) throws IOException;
+
+        ByteBuffer region(long from, long length) throws IOException;
+    }
+
+    private static final class ChannelSource implements Source {
+
+        private final FileChannel channel;
+
+        ChannelSource(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public long size() throws IOException {
+            return channel.size();
+        }
+
+        @Override
+        public int read(ByteBuffer target, long position) throws IOException {
+            return channel.read(target, position);
+        }
+
+        @Override
+        public ByteBuffer region(long from, long length) throws IOException {
+            return channel.map(FileChannel.MapMode.READ_ONLY, from, length);
+        }
+    }
+
+    private static final class BufferSource implements Source {
+
+        private final ByteBuffer content;
+
+        BufferSource(ByteBuffer content) {
+            this.content = content;
+        }
+
+        @Override
+        public long size() {
+            return content.limit();
+        }
+
+        @Override
+        public int read(ByteBuffer target, long position) {
+            if (position >= content.limit()) {
+                return -1;
+            }
+            int length = (int) Math.min(target.remaining(), content.limit() - position);
+            target.put(content.slice((int) position, length));
+            return length;
+        }
+
+        @Override
+        public ByteBuffer region(long from, long length) {
+            return content.slice((int) from, (int) length);
+        }
+    }
+
+    private static final class Footer {
+        final long start;
+        final long records;
+        final long crc;
+
+        Footer(long start, long records, long crc) {
+            this.start = start;
+            this.records = records;
+            this.crc = crc;
+        }
+    }
+
+    private static Footer readFooter(Source source, long size) {
+        int length = (int) Math.min(size, FOOTER_SCAN_SIZE);
+        ByteBuffer tail = ByteBuffer.allocate(length);
+        long position = size - length;
+        while (tail.hasRemaining()) {
+            position += read(source, tail, position);
+        }
+
+        byte[] bytes = tail.array();
+        int end = length;
+        while (end > 0 && (bytes[end - 1] == '\n' || bytes[end - 1] == '\r')) {
+            end--;
+        }
+        int start = end;
+        while (start > 0 && bytes[start - 1] != '\n') {
+            start--;
+        }
+        if (start == 0 && length < size) {
+            return null;
+        }
+
+        String line = new String(bytes, start, end - start, StandardCharsets.US_ASCII);
+        if (!line.startsWith(FileBackedTaskManager.CHECKSUM_PREFIX)) {
+            return null;
+        }
+        String[] fields = line.split(",");
+        try {
+            return new Footer(size - length + start, Long.parseLong(fields[1]), Long.parseLong(fields[2], 16));
+        } catch (RuntimeException e) {
+            throw new ManagerSaveException("Повреждённая контрольная строка снимка");
+        }
+    }
+
+    private static long crc(Source source, long to) {
+        CRC32C crc = new CRC32C();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20);
+        long position = 0;
+        while (position < to) {
+            buffer.clear().limit((int) Math.min(buffer.capacity(), to - position));
+            position += read(source, buffer, position);
+            buffer.flip();
+            crc.update(buffer);
+        }
+        return crc.getValue();
+    }
+
+    private static int countQuotes(Source source, long from, long to) {
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+        int quotes = 0;
+        long position = from;
+        while (position < to) {
+            buffer.clear().limit((int) Math.min(buffer.capacity(), to - position));
+            int read = read(source, buffer, position);
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '"') {
+                    quotes++;
+                }
+            }
+            position += read;
+        }
+        return quotes;
+    }
+
+    private static long recordStart(Source source, long from, boolean insideQuotes, long size) {
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+        boolean quoted = insideQuotes;
+        long position = from;
+        while (position < size) {
+            buffer.clear();
+            int read = read(source, buffer, position);
+            for (int i = 0; i < read; i++) {
+                byte b = buffer.get(i);
+                if (b == '"') {
+                    quoted = !quoted;
+                } else if (b == '\n' && !quoted) {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    private static int read(Source source, ByteBuffer buffer, long position) {
+        try {
+            int read = source.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Неожиданный конец файла");
+            }
+            return read;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Chunk parse(Source source, long from, long to) {
+        Chunk chunk = new Chunk();
+        if (from >= to) {
+            return chunk;
+        }
+
+        try (CsvTokenizer record = new CsvTokenizer(new InputStreamReader(
+                new RegionInputStream(source.region(from, to - from)),
+                StandardCharsets.UTF_8))) {
+            while (record.next()) {
+                if (record.fieldEquals(0, FileBackedTaskManager.GENERATION_FIELD)) {
+                    chunk.generation = record.longValue(1);
+                } else if (!record.fieldEquals(0, "id")) {
+                    Task task = FileBackedTaskManager.fromRecord(record, 0);
+                    if (task instanceof Subtask subtask) {
+                        chunk.subtasks.add(subtask);
+                    } else if (task instanceof Epic epic) {
+                        chunk.epics.add(epic);
+                    } else if (task != null) {
+                        chunk.tasks.add(task);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return chunk;
+    }
+
+    private static final class RegionInputStream extends InputStream {
+
+        private final ByteBuffer region;
+
+        RegionInputStream(ByteBuffer region) {
+            this.region = region;
+        }
+
+        @Override
+        public int read() {
+            return region.hasRemaining() ? region.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (!region.hasRemaining()) {
+                return -1;
+            }
+            int read = Math.min(length, region.remaining());
+            region.get(bytes, offset, read);
+            return read;
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package service;
+
+import model.Epic;
+import model.EpicView;
+import model.Subtask;
+import model.SubtaskView;
+import model.Task;
+import model.TaskStatus;
+import model.TaskType;
+import model.TaskView;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.function.IntConsumer;
+
+/**
+ * Обёртки только для чтения над хранимыми объектами менеджера. Обёртка не копирует данные задачи,
+ * а только ссылается на неё, и её нельзя привести обратно к Task и изменить в обход updateTask,
+ * updateSubtask и updateEpic.
+ */
+final class ReadOnlyViews {
+
+    private ReadOnlyViews() {
+    }
+
+    static TaskView of(Task task) {
+        return task == null ? null : new TaskRef(task);
+    }
+
+    static SubtaskView of(Subtask subtask) {
+        return subtask == null ? null : new SubtaskRef(subtask);
+    }
+
+    static EpicView of(Epic epic) {
+        return epic == null ? null : new EpicRef(epic);
+    }
+
+    //---------------------------------------------------
+    // блок обёрток
+    //---------------------------------------------------
+    private record TaskRef(Task task) implements TaskView {
+        @Override
+        public Integer getId() {
+            return task.getId();
+        }
+
+        @Override
+        public String getName() {
+            return task.getName();
+        }
+
+        @Override
+        public String getDescription() {
+            return task.getDescription();
+        }
+
+        @Override
+        public TaskStatus getStatus() {
+            return task.getStatus();
+        }
+
+        @Override
+        public TaskType getType() {
+            return task.getType();
+        }
+
+        @Override
+        public LocalDateTime getStartTime() {
+            return task.getStartTime();
+        }
+
+        @Override
+        public Duration getDuration() {
+            return task.getDuration();
+        }
+
+        @Override
+        public LocalDateTime getEndTime() {
+            return task.getEndTime();
+        }
+
+        @Override
+        public String toString() {
+            return task.toString();
+        }
+    }
+
+    private record SubtaskRef(Subtask subtask) implements SubtaskView {
+        @Override
+        public Integer getEpicId() {
+            return subtask.getEpicId();
+        }
+
+        @Override
+        public Integer getId() {
+            return subtask.getId();
+        }
+
+        @Override
+        public String getName() {
+            return subtask.getName();
+        }
+
+        @Override
+        public String getDescription() {
+            return subtask.getDescription();
+        }
+
+        @Override
+        public TaskStatus getStatus() {
+            return subtask.getStatus();
+        }
+
+        @Override
+        public TaskType getType() {
+            return subtask.getType();
+        }
+
+        @Override
+        public LocalDateTime getStartTime() {
+            return subtask.getStartTime();
+        }
+
+        @Override
+        public Duration getDuration() {
+            return subtask.getDuration();
+        }
+
+        @Override
+        public LocalDateTime getEndTime() {
+            return subtask.getEndTime();
+        }
+
+        @Override
+        public String toString() {
+            return subtask.toString();
+        }
+    }
+
+    private record EpicRef(Epic epic) implements EpicView {
+        @Override
+        public int getSubtaskCount() {
+            return epic.getSubtaskCount();
+        }
+
+        @Override
+        public boolean containsSubtask(int id) {
+            return epic.containsSubtask(id);
+        }
+
+        @Override
+        public void forEachSubtaskId(IntConsumer action) {
+            epic.forEachSubtaskId(action);
+        }
+
+        @Override
+        public Integer getId() {
+            return epic.getId();
+        }
+
+        @Override
+        public String getName() {
+            return epic.getName();
+        }
+
+        @Override
+        public String getDescription() {
+            return epic.getDescription();
+        }
+
+        @Override
+        public TaskStatus getStatus() {
+            return epic.getStatus();
+        }
+
+        @Override
+        public TaskType getType() {
+            return epic.getType();
+        }
+
+        @Override
+        public LocalDateTime getStartTime() {
+            return epic.getStartTime();
+        }
+
+        @Override
+        public Duration getDuration() {
+            return epic.getDuration();
+        }
+
+        @Override
+        public LocalDateTime getEndTime() {
+            return epic.getEndTime();
+        }
+
+        @Override
+        public String toString() {
+            return epic.toString();
+        }
+    }
+}
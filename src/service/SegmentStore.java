@@ -0,0 +1,263 @@
+package service;
+
+import exceptions.ManagerSaveException;
+import model.Epic;
+import model.Task;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+
+/**
+ * Хранение по сегментам: обычные задачи и каждый эпик со своими подзадачами лежат в отдельных
+ * файлах каталога в формате {@link CompactSnapshot}, а манифест перечисляет сегменты.
+ * Изменение эпика переписывает только его сегмент, сегменты пишутся и читаются параллельно.
+ *
+ * <pre>
+ * manifest:  segments,1
+ *            #gen,N
+ *            tasks
+ *            epic,ID
+ *            ...
+ * </pre>
+ *
+ * Каждый файл пишется во временный и атомарно переименовывается. Манифест меняется последним,
+ * поэтому сегменты, которых в нём нет, при загрузке игнорируются и удаляются при следующей записи.
+ */
+final class SegmentStore {
+
+    static final String MANIFEST = "manifest";
+    static final int VERSION = 1;
+
+    private static final String HEADER = "segments";
+    private static final String TASKS = "tasks";
+    private static final String EPIC = "epic";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String TMP_SUFFIX = ".tmp";
+
+    private final File directory;
+    private final Set<Integer> epicIds = new TreeSet<>();
+    private long generation;
+
+    SegmentStore(File directory) {
+        this.directory = directory;
+    }
+
+    //---------------------------------------------------
+    // блок чтения
+    //---------------------------------------------------
+    static long read(File directory, Consumer<Task> sink) throws IOException {
+        return new SegmentStore(directory).read(sink);
+    }
+
+    /**
+     * Читает все сегменты параллельно и передаёт записи в sink: сначала задачи,
+     * затем эпики в порядке манифеста, каждый вместе со своими подзадачами.
+     */
+    synchronized long read(Consumer<Task> sink) throws IOException {
+        epicIds.clear();
+        List<File> segments = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(new File(directory, MANIFEST).toPath())) {
+            String header = reader.readLine();
+            if (header == null || !header.equals(HEADER + "," + VERSION)) {
+                throw new ManagerSaveException("Неизвестный формат манифеста: " + directory.getName());
+            }
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(FileBackedTaskManager.GENERATION_FIELD + ",")) {
+                    generation = Long.parseLong(line.substring(FileBackedTaskManager.GENERATION_FIELD.length() + 1));
+                } else if (line.equals(TASKS)) {
+                    segments.add(tasksSegment());
+                } else if (line.startsWith(EPIC + ",")) {
+                    int id = Integer.parseInt(line.substring(EPIC.length() + 1));
+                    epicIds.add(id);
+                    segments.add(epicSegment(id));
+                }
+            }
+        }
+
+        try {
+            List<List<Task>> records = segments.parallelStream()
+                    .map(segment -> {
+                        List<Task> segmentRecords = new ArrayList<>();
+                        try {
+                            CompactSnapshot.read(segment, segmentRecords::add);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                        return segmentRecords;
+                    })
+                    .toList();
+            records.forEach(segmentRecords -> segmentRecords.forEach(sink));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return generation;
+    }
+
+    //---------------------------------------------------
+    // блок записи
+    //---------------------------------------------------
+    static void write(File directory, List<Task> tasks, List<Epic> epics, long generation, boolean force) {
+        new SegmentStore(directory).rewrite(tasks, epics, generation, force);
+    }
+
+    /**
+     * Переписывает все сегменты и манифест, лишние файлы сегментов удаляются.
+     */
+    synchronized void rewrite(List<Task> tasks, List<Epic> epics, long generation, boolean force) {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new ManagerSaveException("Не удалось создать каталог " + directory.getName());
+        }
+
+        writeTasks(tasks, force);
+        epics.parallelStream().forEach(epic -> writeEpic(epic, force));
+
+        this.generation = generation;
+        epicIds.clear();
+        epics.forEach(epic -> epicIds.add(epic.getId()));
+        writeManifest(force);
+        deleteUnlisted();
+    }
+
+    /**
+     * Переписывает только изменённые сегменты. tasks равен null, если задачи не менялись,
+     * в epics отображение на null означает удалённый эпик. При clearEpics удаляются
+     * все сегменты эпиков, которых нет в epics.
+     */
+    synchronized void update(List<Task> tasks, Map<Integer, Epic> epics, boolean clearEpics, boolean force) {
+        if (tasks != null) {
+            writeTasks(tasks, force);
+        }
+        epics.values().parallelStream()
+                .filter(epic -> epic != null)
+                .forEach(epic -> writeEpic(epic, force));
+
+        boolean listChanged = false;
+        List<Integer> removed = new ArrayList<>();
+        if (clearEpics) {
+            for (Integer id : epicIds) {
+                if (epics.get(id) == null) {
+                    removed.add(id);
+                }
+            }
+            epicIds.removeAll(removed);
+            listChanged = !removed.isEmpty();
+        }
+        for (Map.Entry<Integer, Epic> entry : epics.entrySet()) {
+            if (entry.getValue() == null) {
+                if (epicIds.remove(entry.getKey())) {
+                    removed.add(entry.getKey());
+                    listChanged = true;
+                }
+            } else {
+                listChanged |= epicIds.add(entry.getKey());
+            }
+        }
+
+        if (listChanged) {
+            writeManifest(force);
+        }
+        for (Integer id : removed) {
+            try {
+                Files.deleteIfExists(epicSegment(id).toPath());
+            } catch (IOException e) {
+                throw new ManagerSaveException("Ошибка удаления сегмента эпика " + id);
+            }
+        }
+    }
+
+    private void writeTasks(List<Task> tasks, boolean force) {
+        replace(tasksSegment(), tmp -> CompactSnapshot.write(tmp, tasks, Collections.emptyList(), 0, force,
+                Compression.NONE));
+    }
+
+    private void writeEpic(Epic epic, boolean force) {
+        replace(epicSegment(epic.getId()),
+                tmp -> CompactSnapshot.write(tmp, Collections.emptyList(), List.of(epic), 0, force, Compression.NONE));
+    }
+
+    private void writeManifest(boolean force) {
+        replace(new File(directory, MANIFEST), tmp -> {
+            try (FileOutputStream out = new FileOutputStream(tmp);
+                 BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8))) {
+                writer.write(HEADER + "," + VERSION);
+                writer.newLine();
+                writer.write(FileBackedTaskManager.GENERATION_FIELD + "," + generation);
+                writer.newLine();
+                writer.write(TASKS);
+                writer.newLine();
+                for (Integer id : epicIds) {
+                    writer.write(EPIC + "," + id);
+                    writer.newLine();
+                }
+                writer.flush();
+                if (force) {
+                    out.getChannel().force(true);
+                }
+            } catch (IOException e) {
+                throw new ManagerSaveException("Ошибка записи манифеста " + directory.getName());
+            }
+        });
+    }
+
+    private void replace(File target, Consumer<File> writer) {
+        File tmp = new File(target.getPath() + TMP_SUFFIX);
+        writer.accept(tmp);
+        try {
+            Files.move(tmp.toPath(), target.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new ManagerSaveException("Ошибка замены файла " + target.getName());
+        }
+    }
+
+    private void deleteUnlisted() {
+        File[] files = directory.listFiles((dir, name) -> name.startsWith(EPIC + "-")
+                && (name.endsWith(SEGMENT_SUFFIX) || name.endsWith(SEGMENT_SUFFIX + TMP_SUFFIX)));
+        if (files == null) {
+            return;
+        }
+        for (File segment : files) {
+            if (segment.getName().endsWith(TMP_SUFFIX) || !epicIds.contains(epicIdOf(segment))) {
+                try {
+                    Files.deleteIfExists(segment.toPath());
+                } catch (IOException e) {
+                    throw new ManagerSaveException("Ошибка удаления сегмента " + segment.getName());
+                }
+            }
+        }
+    }
+
+    private File tasksSegment() {
+        return new File(directory, TASKS + SEGMENT_SUFFIX);
+    }
+
+    private File epicSegment(int id) {
+        return new File(directory, EPIC + "-" + id + SEGMENT_SUFFIX);
+    }
+
+    private static int epicIdOf(File segment) {
+        String name = segment.getName();
+        try {
+            return Integer.parseInt(name.substring(EPIC.length() + 1, name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
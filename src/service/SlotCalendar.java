@@ -0,0 +1,213 @@
+package service;
+
+import model.Task;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * Календарь занятых слотов для быстрой проверки пересечений при автопланировании.
+ * Горизонт планирования делится на слоты фиксированной длины, каждый слот - один бит.
+ * Проверка и резервирование окна - несколько операций над словами long.
+ *
+ * <p>Биты хранятся страницами по {@value #PAGE_BITS} слотов, страница создаётся при первом
+ * резервировании в ней. Незанятые участки горизонта памяти не занимают, поэтому длинный
+ * горизонт с редкими задачами обходится дёшево.
+ *
+ * <p>Календарь учитывает только выровненные задачи: начало и длительность кратны слоту, длительность
+ * положительна, задача целиком внутри горизонта. Остальные задачи менеджер проверяет точно,
+ * через {@link IntervalIndex}. Подключается через {@link InMemoryTaskManager#setSlotCalendar(SlotCalendar)}.
+ */
+public final class SlotCalendar {
+
+    static final int PAGE_BITS = 1 << 12;
+    private static final int PAGE_WORDS = PAGE_BITS / Long.SIZE;
+
+    private final LocalDateTime horizonStart;
+    private final long horizonSecond;
+    private final long slotSeconds;
+    private final long slotCount;
+    private final long[][] pages;
+    private long occupied;
+
+    public SlotCalendar(LocalDateTime horizonStart, Duration horizon, Duration slot) {
+        if (slot.isNegative() || slot.isZero() || slot.getNano() != 0) {
+            throw new IllegalArgumentException("Slot must be a positive whole number of seconds: " + slot);
+        }
+        if (horizon.isNegative() || horizon.isZero() || horizon.getNano() != 0
+                || horizon.getSeconds() % slot.getSeconds() != 0) {
+            throw new IllegalArgumentException("Horizon must be a positive multiple of the slot: " + horizon);
+        }
+        long count = horizon.getSeconds() / slot.getSeconds();
+        if (count > (long) Integer.MAX_VALUE * PAGE_BITS) {
+            throw new IllegalArgumentException("Too many slots in horizon: " + count);
+        }
+        this.horizonStart = horizonStart;
+        this.horizonSecond = horizonStart.toEpochSecond(ZoneOffset.UTC);
+        this.slotSeconds = slot.getSeconds();
+        this.slotCount = count;
+        this.pages = new long[(int) ((count + PAGE_BITS - 1) / PAGE_BITS)][];
+    }
+
+    //---------------------------------------------------
+    // блок окон
+    //---------------------------------------------------
+
+    /**
+     * Первый слот окна или -1, если окно не выровнено по слотам или выходит за горизонт.
+     */
+    long firstSlot(LocalDateTime start, Duration duration) {
+        if (start == null || duration == null || duration.isNegative() || duration.isZero()
+                || duration.getNano() != 0 || start.getNano() != 0 || duration.getSeconds() % slotSeconds != 0) {
+            return -1;
+        }
+        long offset = ChronoUnit.SECONDS.between(horizonStart, start);
+        if (offset < 0 || offset % slotSeconds != 0) {
+            return -1;
+        }
+        long first = offset / slotSeconds;
+        return first + duration.getSeconds() / slotSeconds <= slotCount ? first : -1;
+    }
+
+    long slots(Duration duration) {
+        return duration.getSeconds() / slotSeconds;
+    }
+
+    /**
+     * То же для окна задачи, по примитивным полям времени без создания объектов.
+     */
+    long firstSlot(Task task) {
+        if (horizonStart.getNano() != 0) {
+            return firstSlot(task.getStartTime(), task.getDuration());
+        }
+        long seconds = task.getDurationSeconds();
+        if (task.getStartEpochSecond() == Task.NO_TIME || seconds == Task.NO_TIME || seconds <= 0
+                || task.getDurationNano() != 0 || task.getStartNano() != 0 || seconds % slotSeconds != 0) {
+            return -1;
+        }
+        long offset = task.getStartEpochSecond() - horizonSecond;
+        if (offset < 0 || offset % slotSeconds != 0) {
+            return -1;
+        }
+        long first = offset / slotSeconds;
+        return first + seconds / slotSeconds <= slotCount ? first : -1;
+    }
+
+    long slots(Task task) {
+        return task.getDurationSeconds() / slotSeconds;
+    }
+
+    public boolean isAligned(LocalDateTime start, Duration duration) {
+        return firstSlot(start, duration) >= 0;
+    }
+
+    /**
+     * Свободны ли все слоты окна. Для невыровненного окна бросает IllegalArgumentException.
+     */
+    public boolean isFree(LocalDateTime start, Duration duration) {
+        return isFree(requireAligned(start, duration), slots(duration), -1, 0);
+    }
+
+    /**
+     * Занимает окно, если оно свободно. Возвращает false, если хотя бы один слот уже занят.
+     */
+    public boolean reserve(LocalDateTime start, Duration duration) {
+        long first = requireAligned(start, duration);
+        if (!isFree(first, slots(duration), -1, 0)) {
+            return false;
+        }
+        update(first, slots(duration), true);
+        return true;
+    }
+
+    public void release(LocalDateTime start, Duration duration) {
+        update(requireAligned(start, duration), slots(duration), false);
+    }
+
+    /**
+     * Число занятых слотов.
+     */
+    public long getOccupiedSlots() {
+        return occupied;
+    }
+
+    public long getSlotCount() {
+        return slotCount;
+    }
+
+    private long requireAligned(LocalDateTime start, Duration duration) {
+        long first = firstSlot(start, duration);
+        if (first < 0) {
+            throw new IllegalArgumentException("Window is not aligned to the calendar: " + start + " " + duration);
+        }
+        return first;
+    }
+
+    //---------------------------------------------------
+    // блок битов
+    //---------------------------------------------------
+
+    /*
+     * Свободны ли слоты [first, first + count), не считая слотов [exceptFirst, exceptFirst + exceptCount).
+     */
+    boolean isFree(long first, long count, long exceptFirst, long exceptCount) {
+        long end = first + count;
+        long slot = first;
+        while (slot < end) {
+            long[] page = pages[(int) (slot / PAGE_BITS)];
+            long pageEnd = Math.min(end, (slot / PAGE_BITS + 1) * PAGE_BITS);
+            if (page == null) {
+                slot = pageEnd;
+                continue;
+            }
+            while (slot < pageEnd) {
+                int bit = (int) (slot % PAGE_BITS);
+                long wordEnd = Math.min(pageEnd, slot - bit % Long.SIZE + Long.SIZE);
+                long mask = mask(slot, wordEnd) & ~mask(Math.max(slot, exceptFirst),
+                        Math.min(wordEnd, exceptFirst + exceptCount));
+                if ((page[bit / Long.SIZE] & mask) != 0) {
+                    return false;
+                }
+                slot = wordEnd;
+            }
+        }
+        return true;
+    }
+
+    void update(long first, long count, boolean reserve) {
+        long end = first + count;
+        for (long slot = first; slot < end; ) {
+            int pageIndex = (int) (slot / PAGE_BITS);
+            if (pages[pageIndex] == null) {
+                if (!reserve) {
+                    slot = (pageIndex + 1L) * PAGE_BITS;
+                    continue;
+                }
+                pages[pageIndex] = new long[PAGE_WORDS];
+            }
+            long[] page = pages[pageIndex];
+            int bit = (int) (slot % PAGE_BITS);
+            long wordEnd = Math.min(end, slot - bit % Long.SIZE + Long.SIZE);
+            long mask = mask(slot, wordEnd);
+            long before = page[bit / Long.SIZE];
+            long after = reserve ? before | mask : before & ~mask;
+            page[bit / Long.SIZE] = after;
+            occupied += Long.bitCount(after) - Long.bitCount(before);
+            slot = wordEnd;
+        }
+    }
+
+    /*
+     * Маска битов слотов [from, to) внутри одного слова; пустая, если from >= to.
+     */
+    private static long mask(long from, long to) {
+        if (from >= to) {
+            return 0;
+        }
+        int low = (int) (from % Long.SIZE);
+        int high = (int) ((to - 1) % Long.SIZE);
+        return (-1L >>> (Long.SIZE - 1 - high)) & (-1L << low);
+    }
+}
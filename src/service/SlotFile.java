@@ -0,0 +1,475 @@
+package service;
+
+import exceptions.ManagerSaveException;
+import model.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+
+/**
+ * Файл из слотов фиксированного размера, в котором запись можно переписать или удалить на месте.
+ * Запись кодируется как в {@link CompactSnapshot} и занимает цепочку слотов; удалённые слоты
+ * помечаются как свободные и переиспользуются, начиная с младших.
+ *
+ * <pre>
+ * заголовок: magic(int) version(int) slotSize(int) generation(long), до HEADER_SIZE байт
+ * слот:      state(byte) next(int) length(short) crc32c(int) payload(SLOT_SIZE - SLOT_HEADER байт)
+ * запись:    stamp(varint) и запись CompactSnapshot, разложенные по payload цепочки
+ * </pre>
+ *
+ * Изменённая запись пишется в новые слоты: сначала продолжения, затем голова, и только потом
+ * освобождается старая цепочка. Если процесс упал посередине, при открытии из двух голов
+ * с одним id остаётся та, у которой больше stamp, а цепочки с неверной контрольной суммой
+ * пропускаются. Продолжения, до которых не дошла ни одна целая голова, считаются свободными.
+ * Файлы версии 1 (без crc32c и stamp) читаются и при следующей записи переписываются целиком.
+ */
+final class SlotFile implements AutoCloseable {
+
+    static final int MAGIC = 0x4B4E5331;
+    static final int VERSION = 2;
+    static final int LEGACY_VERSION = 1;
+    static final int HEADER_SIZE = 64;
+    static final int SLOT_SIZE = 128;
+
+    private static final int SLOT_HEADER = 11;
+    private static final int LEGACY_SLOT_HEADER = 7;
+    private static final int PAYLOAD_SIZE = SLOT_SIZE - SLOT_HEADER;
+    private static final byte FREE = 0;
+    private static final byte HEAD = 1;
+    private static final byte CONTINUATION = 2;
+    private static final int NO_SLOT = -1;
+    private static final int BLOCK_SLOTS = 512;
+    private static final String TMP_SUFFIX = ".tmp";
+    private static final int[] LOAD_ORDER = loadOrder();
+
+    private static final class Entry {
+        final TaskType type;
+        final int epicId;
+        final long stamp;
+        final int[] slots;
+
+        Entry(TaskType type, int epicId, long stamp, int[] slots) {
+            this.type = type;
+            this.epicId = epicId;
+            this.stamp = stamp;
+            this.slots = slots;
+        }
+    }
+
+    private static int[] loadOrder() {
+        int[] order = new int[TaskType.values().length];
+        order[TaskType.TASK.ordinal()] = 0;
+        order[TaskType.EPIC.ordinal()] = 1;
+        order[TaskType.SUBTASK.ordinal()] = 2;
+        return order;
+    }
+
+    private final File file;
+    private FileChannel channel;
+    private Map<Integer, Entry> index = new HashMap<>();
+    private BitSet free = new BitSet();
+    private int slotCount;
+    private long nextStamp = 1;
+    private boolean legacy;
+
+    private SlotFile(File file) throws IOException {
+        this.file = file;
+        this.channel = openChannel(file);
+    }
+
+    private static FileChannel openChannel(File file) throws IOException {
+        return FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    static SlotFile open(File file) {
+        try {
+            return new SlotFile(file);
+        } catch (IOException e) {
+            throw new ManagerSaveException("Ошибка открытия файла " + file.getName());
+        }
+    }
+
+    /**
+     * true, если прочитан файл старой версии и его нужно переписать целиком.
+     */
+    synchronized boolean isLegacy() {
+        return legacy;
+    }
+
+    //---------------------------------------------------
+    // блок чтения
+    //---------------------------------------------------
+    static long read(File source, Consumer<Task> sink) throws IOException {
+        try (SlotFile slots = new SlotFile(source)) {
+            return slots.read(sink);
+        }
+    }
+
+    /**
+     * Передаёт живые записи в sink и строит индекс слотов. Возвращает поколение файла.
+     */
+    synchronized long read(Consumer<Task> sink) throws IOException {
+        index.clear();
+        free.clear();
+        nextStamp = 1;
+        legacy = false;
+        long size = channel.size();
+        if (size == 0) {
+            slotCount = 0;
+            return 0;
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        readFully(header, 0);
+        int version = header.getInt(4);
+        if (header.getInt(0) != MAGIC || (version != VERSION && version != LEGACY_VERSION)
+                || header.getInt(8) != SLOT_SIZE) {
+            throw new ManagerSaveException("Неизвестный формат файла: " + file.getName());
+        }
+        legacy = version == LEGACY_VERSION;
+        long generation = header.getLong(12);
+        int slotHeader = legacy ? LEGACY_SLOT_HEADER : SLOT_HEADER;
+        int payloadSize = SLOT_SIZE - slotHeader;
+
+        long slots = (size - HEADER_SIZE) / SLOT_SIZE;
+        if (slots > Integer.MAX_VALUE) {
+            throw new ManagerSaveException("Слишком много слотов в файле " + file.getName() + ": " + slots);
+        }
+        slotCount = (int) slots;
+        byte[] states = new byte[slotCount];
+        int[] next = new int[slotCount];
+        short[] lengths = new short[slotCount];
+        boolean[] intact = new boolean[slotCount];
+
+        // первый проход держит в памяти только заголовки слотов, содержимое проверяется по ходу чтения
+        ByteBuffer buffer = ByteBuffer.allocate(SLOT_SIZE * BLOCK_SLOTS);
+        CRC32C crc = new CRC32C();
+        for (int first = 0; first < slotCount; first += BLOCK_SLOTS) {
+            int count = readBlock(buffer, first);
+            for (int i = 0; i < count; i++) {
+                int base = i * SLOT_SIZE;
+                int slot = first + i;
+                states[slot] = buffer.get(base);
+                next[slot] = buffer.getInt(base + 1);
+                lengths[slot] = buffer.getShort(base + 5);
+                intact[slot] = lengths[slot] >= 0 && lengths[slot] <= payloadSize;
+                if (!legacy && intact[slot] && states[slot] != FREE) {
+                    crc.reset();
+                    crc.update(buffer.array(), base, 7);
+                    crc.update(buffer.array(), base + slotHeader, lengths[slot]);
+                    intact[slot] = (int) crc.getValue() == buffer.getInt(base + 7);
+                }
+            }
+        }
+
+        // второй проход снова идёт по файлу блоками: голова берётся из блока,
+        // продолжение из другого блока дочитывается отдельно
+        Map<Integer, Task> records = new HashMap<>();
+        ByteBuffer single = ByteBuffer.allocate(SLOT_SIZE);
+        int blockFirst = 0;
+        int blockCount = 0;
+        for (int slot = 0; slot < slotCount; slot++) {
+            if (states[slot] != HEAD) {
+                continue;
+            }
+            if (slot >= blockFirst + blockCount) {
+                blockFirst = slot - slot % BLOCK_SLOTS;
+                blockCount = readBlock(buffer, blockFirst);
+            }
+
+            List<Integer> chain = new ArrayList<>();
+            Set<Integer> seen = new HashSet<>();
+            ByteArrayOutputStream record = new ByteArrayOutputStream();
+            boolean complete = true;
+            for (int current = slot; current != NO_SLOT; current = next[current]) {
+                if (current < 0 || current >= slotCount || !seen.add(current) || !intact[current]
+                        || (current != slot && states[current] != CONTINUATION)) {
+                    complete = false;
+                    break;
+                }
+                chain.add(current);
+                if (current >= blockFirst && current < blockFirst + blockCount) {
+                    record.write(buffer.array(), (current - blockFirst) * SLOT_SIZE + slotHeader, lengths[current]);
+                } else {
+                    single.clear();
+                    readFully(single, position(current));
+                    record.write(single.array(), slotHeader, lengths[current]);
+                }
+            }
+            if (!complete) {
+                System.out.println("slot chain " + slot + " in " + file.getName() + " is damaged, skipped");
+                continue;
+            }
+
+            Task task;
+            long stamp;
+            try {
+                ByteArrayInputStream in = new ByteArrayInputStream(record.toByteArray());
+                stamp = legacy ? 0 : CompactSnapshot.readVarLong(in);
+                task = CompactSnapshot.readRecord(in, in.read());
+            } catch (IOException e) {
+                System.out.println("slot chain " + slot + " in " + file.getName() + " is damaged, skipped");
+                continue;
+            }
+
+            Entry previous = index.get(task.getId());
+            if (previous != null && previous.stamp >= stamp) {
+                continue;
+            }
+            index.put(task.getId(), new Entry(task.getType(), epicIdOf(task), stamp,
+                    chain.stream().mapToInt(Integer::intValue).toArray()));
+            records.put(task.getId(), task);
+            nextStamp = Math.max(nextStamp, stamp + 1);
+        }
+
+        BitSet used = new BitSet(slotCount);
+        for (Entry entry : index.values()) {
+            for (int slot : entry.slots) {
+                used.set(slot);
+            }
+        }
+        free.set(0, slotCount);
+        free.andNot(used);
+
+        // слоты переиспользуются, поэтому порядок в файле произвольный: эпики отдаются раньше подзадач
+        List<Map.Entry<Integer, Entry>> live = new ArrayList<>(index.entrySet());
+        live.sort(Comparator.<Map.Entry<Integer, Entry>>comparingInt(e -> LOAD_ORDER[e.getValue().type.ordinal()])
+                .thenComparingInt(e -> e.getValue().slots[0]));
+        for (Map.Entry<Integer, Entry> entry : live) {
+            sink.accept(records.get(entry.getKey()));
+        }
+        return generation;
+    }
+
+    //---------------------------------------------------
+    // блок записи
+    //---------------------------------------------------
+    static void write(File target, List<Task> tasks, List<Epic> epics, long generation, boolean force) {
+        try {
+            create(target, tasks, epics, generation, force).close();
+        } catch (IOException e) {
+            throw new ManagerSaveException("Ошибка записи в файл " + target.getName());
+        }
+    }
+
+    private static SlotFile create(File target, List<Task> tasks, List<Epic> epics, long generation, boolean force)
+            throws IOException {
+        SlotFile slots = new SlotFile(target);
+        try {
+            slots.channel.truncate(0);
+            slots.writeHeader(generation);
+            for (Task task : tasks) {
+                slots.put(task);
+            }
+            for (Epic epic : epics) {
+                slots.put(epic);
+                for (Subtask subtask : epic.getSubtasks()) {
+                    slots.put(subtask);
+                }
+            }
+            if (force) {
+                slots.channel.force(false);
+            }
+            return slots;
+        } catch (IOException | RuntimeException e) {
+            slots.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Переписывает файл целиком во временный файл и атомарно подменяет им текущий.
+     */
+    synchronized void rewrite(List<Task> tasks, List<Epic> epics, long generation, boolean force) {
+        File tmp = new File(file.getPath() + TMP_SUFFIX);
+        try {
+            SlotFile fresh = create(tmp, tasks, epics, generation, force);
+            fresh.close();
+            channel.close();
+            Files.move(tmp.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            channel = openChannel(file);
+
+            index = fresh.index;
+            free = fresh.free;
+            slotCount = fresh.slotCount;
+            nextStamp = fresh.nextStamp;
+            legacy = false;
+        } catch (IOException e) {
+            throw new ManagerSaveException("Ошибка записи в файл " + file.getName());
+        }
+    }
+
+    /**
+     * Применяет набор изменений: удаляет все записи очищенных типов и записи deleted,
+     * затем переписывает puts. Записи из puts не удаляются, даже если их тип очищен.
+     * Удаление эпика удаляет и его подзадачи.
+     */
+    synchronized void apply(Set<TaskType> cleared, Collection<Integer> deleted, List<Task> puts, boolean force) {
+        try {
+            Set<Integer> kept = new HashSet<>();
+            puts.forEach(task -> kept.add(task.getId()));
+
+            Set<Integer> removedEpics = new HashSet<>();
+            List<Integer> removed = new ArrayList<>();
+            index.forEach((id, entry) -> {
+                if (!kept.contains(id) && cleared.contains(entry.type)) {
+                    removed.add(id);
+                }
+            });
+            for (Integer id : deleted) {
+                if (!kept.contains(id) && index.containsKey(id)) {
+                    removed.add(id);
+                }
+            }
+            for (Integer id : removed) {
+                Entry entry = index.get(id);
+                if (entry != null && entry.type == TaskType.EPIC) {
+                    removedEpics.add(id);
+                }
+            }
+            if (!removedEpics.isEmpty()) {
+                index.forEach((id, entry) -> {
+                    if (entry.type == TaskType.SUBTASK && removedEpics.contains(entry.epicId) && !kept.contains(id)) {
+                        removed.add(id);
+                    }
+                });
+            }
+
+            for (Integer id : removed) {
+                Entry entry = index.remove(id);
+                if (entry != null) {
+                    release(entry.slots);
+                }
+            }
+            for (Task task : puts) {
+                put(task);
+            }
+            if (force) {
+                channel.force(false);
+            }
+        } catch (IOException e) {
+            throw new ManagerSaveException("Ошибка записи в файл " + file.getName());
+        }
+    }
+
+    private void put(Task task) throws IOException {
+        long stamp = nextStamp++;
+        ByteArrayOutputStream out = new ByteArrayOutputStream(PAYLOAD_SIZE);
+        CompactSnapshot.writeVarLong(out, stamp);
+        CompactSnapshot.writeRecord(out, task);
+        byte[] record = out.toByteArray();
+        int needed = Math.max(1, (record.length + PAYLOAD_SIZE - 1) / PAYLOAD_SIZE);
+
+        int[] chain = new int[needed];
+        for (int i = 0; i < needed; i++) {
+            chain[i] = allocate();
+        }
+        for (int i = needed - 1; i >= 0; i--) {
+            int offset = i * PAYLOAD_SIZE;
+            writeSlot(chain[i], i == 0 ? HEAD : CONTINUATION, i + 1 < needed ? chain[i + 1] : NO_SLOT,
+                    record, offset, Math.min(PAYLOAD_SIZE, record.length - offset));
+        }
+
+        Entry previous = index.put(task.getId(), new Entry(task.getType(), epicIdOf(task), stamp, chain));
+        if (previous != null) {
+            release(previous.slots);
+        }
+    }
+
+    private int allocate() {
+        int slot = free.nextSetBit(0);
+        if (slot >= 0) {
+            free.clear(slot);
+            return slot;
+        }
+        return slotCount++;
+    }
+
+    private void release(int[] slots) throws IOException {
+        for (int slot : slots) {
+            writeState(slot, FREE);
+            free.set(slot);
+        }
+    }
+
+    private void writeSlot(int slot, byte state, int next, byte[] data, int offset, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(SLOT_SIZE);
+        buffer.put(state).putInt(next).putShort((short) length);
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.array(), 0, 7);
+        crc.update(data, offset, length);
+        buffer.putInt((int) crc.getValue()).put(data, offset, length);
+        buffer.clear();
+        writeFully(buffer, position(slot));
+    }
+
+    private void writeState(int slot, byte state) throws IOException {
+        writeFully(ByteBuffer.wrap(new byte[]{state}), position(slot));
+    }
+
+    private void writeHeader(long generation) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).putInt(SLOT_SIZE).putLong(generation);
+        header.clear();
+        writeFully(header, 0);
+    }
+
+    private static long position(int slot) {
+        return HEADER_SIZE + (long) slot * SLOT_SIZE;
+    }
+
+    private static int epicIdOf(Task task) {
+        return task instanceof Subtask subtask ? subtask.getEpicId() : NO_SLOT;
+    }
+
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    /*
+     * Читает в buffer до BLOCK_SLOTS слотов, начиная с first, и возвращает их число.
+     */
+    private int readBlock(ByteBuffer buffer, int first) throws IOException {
+        int count = Math.min(BLOCK_SLOTS, slotCount - first);
+        buffer.clear().limit(count * SLOT_SIZE);
+        readFully(buffer, position(first));
+        return count;
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new ManagerSaveException("Файл обрезан: " + file.getName());
+            }
+            position += read;
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+}
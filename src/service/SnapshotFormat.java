@@ -0,0 +1,135 @@
+package service;
+
+import exceptions.ManagerSaveException;
+import model.Epic;
+import model.Task;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.function.Consumer;
+
+enum SnapshotFormat {
+    CSV,
+    BINARY,
+    COMPACT,
+    SLOTS,
+    SEGMENTS;
+
+    private static final String TMP_SUFFIX = ".tmp";
+
+    /**
+     * Формат определяется по расширению без суффикса сжатия: board.csv.gz - это CSV.
+     */
+    static SnapshotFormat forFile(File file) {
+        String name = Compression.innerName(file);
+        if (name.endsWith(".bin")) {
+            return BINARY;
+        }
+        if (name.endsWith(".tasks")) {
+            return COMPACT;
+        }
+        if (name.endsWith(".slots")) {
+            return SLOTS;
+        }
+        if (name.endsWith(".segments")) {
+            return SEGMENTS;
+        }
+        return CSV;
+    }
+
+    /**
+     * Слоты и сегменты переписываются по месту и сжиматься не могут.
+     */
+    boolean supportsCompression() {
+        return this == CSV || this == BINARY || this == COMPACT;
+    }
+
+    void write(File target, List<Task> tasks, List<Epic> epics, long generation, boolean force,
+               Compression compression) {
+        if (compression != Compression.NONE && !supportsCompression()) {
+            throw new IllegalArgumentException("Format " + this + " cannot be compressed: " + target.getName());
+        }
+        switch (this) {
+            case CSV -> FileBackedTaskManager.writeCsvSnapshot(target, tasks, epics, generation, force, compression);
+            case BINARY -> BinarySnapshot.write(target, tasks, epics, generation, force, compression);
+            case COMPACT -> CompactSnapshot.write(target, tasks, epics, generation, force, compression);
+            case SLOTS -> SlotFile.write(target, tasks, epics, generation, force);
+            case SEGMENTS -> SegmentStore.write(target, tasks, epics, generation, force);
+        }
+    }
+
+    /**
+     * Заменяет снимок target целиком. Снимок пишется во временный файл и атомарно заменяет старый,
+     * так что падение посреди записи оставляет на диске прежний снимок целиком. Каталог сегментов
+     * так заменить нельзя: сегменты меняются по одному, манифест - последним.
+     */
+    void replace(File target, List<Task> tasks, List<Epic> epics, long generation, boolean force,
+                 Compression compression) {
+        if (this == SEGMENTS) {
+            write(target, tasks, epics, generation, force, compression);
+            return;
+        }
+
+        File tmp = new File(target.getPath() + TMP_SUFFIX);
+        write(tmp, tasks, epics, generation, force, compression);
+        try {
+            Files.move(tmp.toPath(), target.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new ManagerSaveException("Ошибка замены снимка " + target.getName());
+        }
+    }
+
+    /**
+     * Передаёт записи снимка в sink и возвращает поколение снимка. Сжатый снимок
+     * распознаётся по содержимому и распаковывается окнами по ходу разбора. Исключение - .bin:
+     * его записи ссылаются на строки в конце файла, поэтому он распаковывается в память целиком.
+     */
+    long read(File source, Consumer<Task> sink) throws IOException {
+        if (supportsCompression() && Compression.isCompressed(source)) {
+            try (Compression.Windows windows = Compression.open(source)) {
+                return switch (this) {
+                    case CSV -> ParallelCsvLoader.load(windows, source.getName(), sink);
+                    case BINARY -> BinarySnapshot.read(inflateBinary(windows.stream(), source.getName()),
+                            source.getName(), sink);
+                    default -> readCompact(windows.stream(), source.getName(), sink);
+                };
+            }
+        }
+        return switch (this) {
+            case CSV -> ParallelCsvLoader.load(source, sink);
+            case BINARY -> BinarySnapshot.read(source, sink);
+            case COMPACT -> CompactSnapshot.read(source, sink);
+            case SLOTS -> SlotFile.read(source, sink);
+            case SEGMENTS -> SegmentStore.read(source, sink);
+        };
+    }
+
+    /*
+     * Снимок .bin адресуется int, как и при отображении несжатого файла в память.
+     */
+    private static ByteBuffer inflateBinary(InputStream content, String name) throws IOException {
+        byte[] bytes = content.readNBytes(Integer.MAX_VALUE - 8);
+        if (content.read() >= 0) {
+            throw new ManagerSaveException("Снимок слишком велик для чтения в память: " + name);
+        }
+        return ByteBuffer.wrap(bytes);
+    }
+
+    private static long readCompact(InputStream content, String name, Consumer<Task> sink) throws IOException {
+        PushbackInputStream in = new PushbackInputStream(new BufferedInputStream(content, 1 << 16));
+        int first = in.read();
+        if (first < 0) {
+            return 0;
+        }
+        in.unread(first);
+        return CompactSnapshot.read(in, name, sink);
+    }
+}
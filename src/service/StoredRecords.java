@@ -0,0 +1,94 @@
+package service;
+
+import model.Epic;
+import model.Subtask;
+import model.Task;
+import model.TaskType;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Записи, восстановленные из снимка и журнала без менеджера: задачи, эпики и подзадачи по id
+ * в порядке чтения. Запись, удаление и очистка из журнала применяются к ним так же, как к менеджеру.
+ */
+final class StoredRecords {
+
+    private static final TaskType[] TYPES = TaskType.values();
+    private static final FileBackedTaskManager.JournalOp[] OPS = FileBackedTaskManager.JournalOp.values();
+
+    private final Map<Integer, Task> tasks = new LinkedHashMap<>();
+    private final Map<Integer, Epic> epics = new LinkedHashMap<>();
+    private final Map<Integer, Subtask> subtasks = new LinkedHashMap<>();
+
+    void put(Task task) {
+        if (task instanceof Subtask subtask) {
+            subtasks.put(subtask.getId(), subtask);
+        } else if (task instanceof Epic epic) {
+            epics.put(epic.getId(), epic);
+        } else if (task != null) {
+            tasks.put(task.getId(), task);
+        }
+    }
+
+    /**
+     * Применяет запись журнала: операцию и её поля, как их пишет {@link FileBackedTaskManager}.
+     */
+    void apply(CsvTokenizer record) {
+        switch (record.enumValue(0, OPS)) {
+            case PUT -> put(FileBackedTaskManager.fromRecord(record, 1));
+            case DELETE -> {
+                int id = record.intValue(2);
+                switch (record.enumValue(1, TYPES)) {
+                    case TASK -> tasks.remove(id);
+                    case SUBTASK -> subtasks.remove(id);
+                    case EPIC -> {
+                        epics.remove(id);
+                        subtasks.values().removeIf(subtask -> subtask.getEpicId() == id);
+                    }
+                }
+            }
+            case CLEAR -> {
+                switch (record.enumValue(1, TYPES)) {
+                    case TASK -> tasks.clear();
+                    case SUBTASK -> subtasks.clear();
+                    case EPIC -> {
+                        epics.clear();
+                        subtasks.clear();
+                    }
+                }
+            }
+        }
+    }
+
+    List<Task> tasks() {
+        return new ArrayList<>(tasks.values());
+    }
+
+    /**
+     * Копии эпиков с подключёнными подзадачами, в том виде, в каком их принимает снимок.
+     */
+    List<Epic> epicsWithSubtasks() {
+        Map<Integer, Epic> byId = new LinkedHashMap<>();
+        epics.values().forEach(epic -> byId.put(epic.getId(), epic.cloneEpic()));
+        subtasks.values().forEach(subtask -> {
+            Epic epic = byId.get(subtask.getEpicId());
+            if (epic != null) {
+                epic.addSubtask(subtask);
+            }
+        });
+        return new ArrayList<>(byId.values());
+    }
+
+    /**
+     * Передаёт записи в sink: сначала задачи, затем эпики, затем подзадачи.
+     */
+    void forEach(Consumer<Task> sink) {
+        tasks.values().forEach(sink);
+        epics.values().forEach(sink);
+        subtasks.values().forEach(sink);
+    }
+}
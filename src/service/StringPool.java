@@ -0,0 +1,91 @@
+package service;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Пул для устранения повторяющихся строк в названиях и описаниях задач. На доске с тысячами
+ * подзадач по шаблону одинаковые строки после загрузки и клонирования живут отдельными копиями,
+ * пул заменяет их одним экземпляром.
+ *
+ * <p>Пул - таблица фиксированного размера со слабыми ссылками: строка попадает в ячейку по хэшу
+ * и вытесняет прежнюю при коллизии, а строки, на которые больше никто не ссылается, собирает GC.
+ * Поэтому пул не растёт сверх capacity и не удерживает удалённые задачи. Ячейки читаются
+ * и пишутся без блокировок; гонка между потоками приводит лишь к пропущенному совпадению.
+ */
+public final class StringPool {
+
+    private static final int STRING_HEADER = 24;
+    private static final int ARRAY_HEADER = 16;
+
+    private final AtomicReferenceArray<WeakReference<String>> slots;
+    private final int mask;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder bytesSaved = new LongAdder();
+
+    /**
+     * capacity округляется вверх до степени двойки.
+     */
+    public StringPool(int capacity) {
+        if (capacity <= 0 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Invalid string pool capacity: " + capacity);
+        }
+        int size = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+    }
+
+    /**
+     * Возвращает экземпляр из пула, равный value, или запоминает value, если такого нет.
+     */
+    public String intern(String value) {
+        if (value == null) {
+            return null;
+        }
+        int hash = value.hashCode();
+        int index = (hash ^ hash >>> 16) & mask;
+        WeakReference<String> slot = slots.get(index);
+        String pooled = slot == null ? null : slot.get();
+        if (pooled == value) {
+            return value;
+        }
+        if (pooled != null && pooled.equals(value)) {
+            hits.increment();
+            bytesSaved.add(footprint(value));
+            return pooled;
+        }
+        slots.set(index, new WeakReference<>(value));
+        return value;
+    }
+
+    public int getCapacity() {
+        return slots.length();
+    }
+
+    /**
+     * Сколько раз вместо переданной строки был возвращён экземпляр из пула.
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Оценка памяти, освобождённой заменой копий: заголовок строки и её массив байт.
+     */
+    public long getBytesSaved() {
+        return bytesSaved.sum();
+    }
+
+    private static long footprint(String value) {
+        int bytesPerChar = 1;
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) > 0xFF) {
+                bytesPerChar = 2;
+                break;
+            }
+        }
+        long array = ARRAY_HEADER + (long) value.length() * bytesPerChar;
+        return STRING_HEADER + (array + 7 & ~7L);
+    }
+}
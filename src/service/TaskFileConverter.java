@@ -0,0 +1,59 @@
+package service;
+
+import exceptions.ManagerSaveException;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Переводит файл задач из одного формата в другой: .csv, .bin или компактный .tasks.
+ * Формат источника и результата определяется по расширению, журнал источника учитывается.
+ * Источник и его журналы только читаются: оборванный хвост журнала пропускается, но не отрезается.
+ *
+ * <pre>
+ * java service.TaskFileConverter tasks.csv tasks.tasks
+ * </pre>
+ */
+public final class TaskFileConverter {
+
+    private TaskFileConverter() {
+    }
+
+    public static void convert(File source, File target) {
+        StoredRecords records = new StoredRecords();
+        File journal = new File(source.getPath() + FileBackedTaskManager.JOURNAL_SUFFIX);
+        File oldJournal = new File(source.getPath() + FileBackedTaskManager.OLD_JOURNAL_SUFFIX);
+        long generation;
+
+        try {
+            long snapshotGeneration = 0;
+            if (source.exists()) {
+                snapshotGeneration = SnapshotFormat.forFile(source).read(source, records::put);
+            }
+            JournalReplay replay = new JournalReplay(snapshotGeneration);
+            replay.replay(oldJournal, false, records::apply);
+            replay.replay(journal, false, records::apply);
+            generation = replay.generation();
+        } catch (IOException e) {
+            throw new ManagerSaveException("Load file error: " + source.getName());
+        }
+
+        SnapshotFormat.forFile(target).write(target, records.tasks(), records.epicsWithSubtasks(), generation, true,
+                Compression.forFile(target));
+    }
+
+    public static void main(String[] args) {
+        if (args.length != 2) {
+            System.out.println("usage: TaskFileConverter <source> <target>");
+            System.out.println("formats by extension: .csv, .bin, .tasks");
+            System.out.println("compression by suffix: .gz, .bgz (block-framed gzip)");
+            return;
+        }
+
+        File source = new File(args[0]);
+        File target = new File(args[1]);
+        convert(source, target);
+        System.out.println(source.getName() + " (" + source.length() + " bytes) -> "
+                + target.getName() + " (" + target.length() + " bytes)");
+    }
+}
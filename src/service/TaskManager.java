@@ -1,8 +1,11 @@
 package service;
 
 import model.Epic;
+import model.EpicView;
 import model.Subtask;
+import model.SubtaskView;
 import model.Task;
+import model.TaskView;
 
 import java.util.List;
 
@@ -55,6 +58,30 @@ public interface TaskManager {
 
     List<Subtask> getEpicsSubtasksById(int epicId);
 
+    //---------------------------------------------------
+    //просмотр без копирования
+    //---------------------------------------------------
+
+    /**
+     * Хранимая задача только для чтения или null. В отличие от getTaskById данные задачи
+     * не копируются: возвращается небольшая обёртка со ссылкой на хранимый объект, и просмотр
+     * не попадает в историю. Обёртка не является Task, изменить через неё задачу нельзя.
+     * Обновление заменяет хранимую задачу новым объектом, так что полученное представление
+     * остаётся снимком на момент чтения. Для редактирования нужна копия из getTaskById.
+     */
+    TaskView viewTask(int id);
+
+    /**
+     * Хранимая подзадача только для чтения или null; снимок, как у viewTask.
+     */
+    SubtaskView viewSubtask(int id);
+
+    /**
+     * Хранимый эпик только для чтения или null. Эпик обновляется на месте, поэтому представление
+     * сразу показывает новые статус, время и состав подзадач.
+     */
+    EpicView viewEpic(int id);
+
     //---------------------------------------------------
     //История просмотров задач
     //---------------------------------------------------
@@ -0,0 +1,42 @@
+package service;
+
+import model.Epic;
+import model.Task;
+import model.TaskType;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Хранилище, через которое {@link InMemoryTaskManager} сохраняет изменения. Менеджер сообщает
+ * о каждом изменении через append-методы, а когда хранилище просит, передаёт ему состояние целиком.
+ * Реализации находятся через {@link TaskStoreProvider} и выбираются в {@link Managers}.
+ */
+public interface TaskStore extends AutoCloseable {
+
+    /**
+     * Передаёт в sink сохранённые записи: сначала задачи, затем эпики, затем подзадачи.
+     */
+    void load(Consumer<Task> sink);
+
+    void append(Task task);
+
+    void appendDelete(TaskType type, int id);
+
+    void appendClear(TaskType type);
+
+    /**
+     * true, если накопленные изменения пора заменить снимком состояния.
+     */
+    boolean needsSnapshot();
+
+    void snapshot(List<Task> tasks, List<Epic> epics);
+
+    /**
+     * Дожидается, пока все принятые изменения окажутся на диске.
+     */
+    void flush();
+
+    @Override
+    void close();
+}
@@ -0,0 +1,15 @@
+package service;
+
+/**
+ * Поставщик хранилищ для {@link java.util.ServiceLoader}. Реализации перечисляются
+ * в META-INF/services/service.TaskStoreProvider и выбираются по имени.
+ */
+public interface TaskStoreProvider {
+
+    String name();
+
+    /**
+     * Открывает хранилище по адресу location. null означает адрес по умолчанию.
+     */
+    TaskStore open(String location);
+}
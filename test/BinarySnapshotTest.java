@@ -0,0 +1,146 @@
+import model.Epic;
+import model.Subtask;
+import model.Task;
+import model.TaskStatus;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import service.FileBackedTaskManager;
+import service.PersistenceMode;
+
+import java.io.File;
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BinarySnapshotTest extends TaskManagerTest<FileBackedTaskManager> {
+
+    private File file;
+
+    @Override
+    protected FileBackedTaskManager createManager() {
+        Assertions.assertDoesNotThrow(() -> {
+            file = File.createTempFile("test", ".bin");
+            file.deleteOnExit();
+        });
+
+        return new FileBackedTaskManager(file);
+    }
+
+    @Test
+    void loadEmptyBinaryFile() {
+        FileBackedTaskManager loaded = FileBackedTaskManager.loadFromFile(file);
+        assertTrue(loaded.getTasks().isEmpty());
+        assertTrue(loaded.getEpics().isEmpty());
+        assertTrue(loaded.getSubtasks().isEmpty());
+    }
+
+    @Test
+    void saveAndLoadAllFields() {
+        Task timed = new Task("Задача, с запятой", "Описание", TaskStatus.IN_PROGRESS,
+                LocalDateTime.of(2024, 5, 1, 9, 15, 30), Duration.ofMinutes(90));
+        manager.createTask(timed);
+        manager.createTask(new Task("Plain", null, TaskStatus.NEW));
+
+        Epic epic1 = new Epic("Epic", "Epic description");
+        manager.createEpic(epic1);
+        Subtask sub = new Subtask("Sub", "Sub description", TaskStatus.DONE,
+                LocalDateTime.of(2024, 5, 2, 10, 0), Duration.ofMinutes(30), epic1.getId());
+        manager.createSubtask(sub);
+
+        FileBackedTaskManager loaded = FileBackedTaskManager.loadFromFile(file);
+
+        Task loadedTimed = loaded.getTaskById(timed.getId());
+        assertEquals("Задача, с запятой", loadedTimed.getName());
+        assertEquals(TaskStatus.IN_PROGRESS, loadedTimed.getStatus());
+        assertEquals(timed.getStartTime(), loadedTimed.getStartTime());
+        assertEquals(timed.getDuration(), loadedTimed.getDuration());
+        assertNull(loaded.getTaskById(timed.getId() + 1).getDescription());
+
+        Subtask loadedSub = loaded.getSubtaskById(sub.getId());
+        assertEquals(epic1.getId(), loadedSub.getEpicId());
+        assertEquals(sub.getEndTime(), loadedSub.getEndTime());
+        assertEquals(TaskStatus.DONE, loaded.getEpicById(epic1.getId()).getStatus());
+        assertEquals(2, loaded.getPrioritizedTasks().size());
+    }
+
+    @Test
+    void journalCompactsIntoBinarySnapshot() {
+        new File(file.getPath() + ".journal").deleteOnExit();
+        FileBackedTaskManager journaled = new FileBackedTaskManager(file, PersistenceMode.JOURNAL);
+
+        Epic epic1 = new Epic("Epic", "Epic description");
+        journaled.createEpic(epic1);
+        for (int i = 0; i < 1000; i++) {
+            journaled.createSubtask(new Subtask("Sub" + i, "Desc", TaskStatus.NEW, epic1.getId()));
+        }
+        journaled.compact();
+        journaled.createTask(new Task("After compaction", "Desc", TaskStatus.NEW));
+        journaled.close();
+
+        FileBackedTaskManager loaded = FileBackedTaskManager.loadFromFile(file, PersistenceMode.JOURNAL);
+        assertEquals(1000, loaded.getEpicsSubtasksById(epic1.getId()).size());
+        assertEquals(1, loaded.getTasks().size());
+    }
+
+    @Test
+    void lazyLoadReadsBodiesOnDemand() {
+        Epic epic1 = new Epic("Epic", "Epic description");
+        manager.createEpic(epic1);
+        for (int i = 0; i < 100; i++) {
+            manager.createTask(new Task("Task" + i, i % 2 == 0 ? "Описание " + i : null, TaskStatus.NEW));
+        }
+        Subtask sub = new Subtask("Sub", "Sub description", TaskStatus.DONE,
+                LocalDateTime.of(2024, 5, 2, 10, 0), Duration.ofMinutes(30), epic1.getId());
+        manager.createSubtask(sub);
+
+        new File(file.getPath() + ".journal").deleteOnExit();
+        try (FileBackedTaskManager lazy = FileBackedTaskManager.loadLazily(file, PersistenceMode.JOURNAL, 3)) {
+            assertEquals(100, lazy.getTasks().size());
+            for (int round = 0; round < 2; round++) {
+                for (int i = 0; i < 100; i++) {
+                    Task task = lazy.getTaskById(epic1.getId() + 1 + i);
+                    assertEquals("Task" + i, task.getName());
+                    assertEquals(i % 2 == 0 ? "Описание " + i : null, task.getDescription());
+                }
+            }
+
+            Subtask loadedSub = lazy.getSubtaskById(sub.getId());
+            assertEquals("Sub description", loadedSub.getDescription());
+            assertEquals(sub.getStartTime(), loadedSub.getStartTime());
+            assertEquals("Epic description", lazy.getEpicById(epic1.getId()).getDescription());
+            assertEquals(TaskStatus.DONE, lazy.getEpicById(epic1.getId()).getStatus());
+        }
+    }
+
+    @Test
+    void lazyManagerSavesFullBodies() {
+        for (int i = 0; i < 10; i++) {
+            manager.createTask(new Task("Task" + i, "Desc" + i, TaskStatus.NEW));
+        }
+        Epic epic1 = new Epic("Epic", "Epic description");
+        manager.createEpic(epic1);
+        manager.createSubtask(new Subtask("Sub", "Sub description", TaskStatus.NEW, epic1.getId()));
+
+        FileBackedTaskManager lazy = FileBackedTaskManager.loadLazily(file, PersistenceMode.SNAPSHOT, 1);
+        Task changed = lazy.getTaskById(1);
+        changed.setName("Changed");
+        lazy.updateTask(changed);
+        lazy.createTask(new Task("New", "New desc", TaskStatus.NEW));
+
+        FileBackedTaskManager loaded = FileBackedTaskManager.loadFromFile(file);
+        assertEquals(11, loaded.getTasks().size());
+        assertEquals("Changed", loaded.getTaskById(1).getName());
+        assertEquals("Desc9", loaded.getTaskById(10).getDescription());
+        assertEquals("Sub", loaded.getEpicsSubtasksById(epic1.getId()).get(0).getName());
+        assertEquals("New desc", loaded.getTaskById(13).getDescription());
+    }
+
+    @Test
+    void lazyLoadRequiresBinarySnapshot() {
+        assertThrows(IllegalArgumentException.class, () -> FileBackedTaskManager.loadLazily(
+                new File(file.getPath() + ".csv"), PersistenceMode.SNAPSHOT, 10));
+        assertThrows(IllegalArgumentException.class,
+                () -> FileBackedTaskManager.loadLazily(file, PersistenceMode.SNAPSHOT, 0));
+    }
+}
@@ -0,0 +1,168 @@
+import exceptions.ManagerSaveException;
+import exceptions.TaskOverlapException;
+import model.Epic;
+import model.Subtask;
+import model.Task;
+import model.TaskStatus;
+import org.junit.jupiter.api.Test;
+import service.BoardTransfer;
+import service.FileBackedTaskManager;
+import service.InMemoryTaskManager;
+import service.PersistenceMode;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BoardTransferTest {
+
+    private static InMemoryTaskManager board() {
+        InMemoryTaskManager manager = new InMemoryTaskManager();
+        manager.createTask(new Task("Task", "Desc, с запятой", TaskStatus.NEW,
+                LocalDateTime.of(2024, 5, 1, 9, 0), Duration.ofMinutes(30)));
+        Epic epic1 = new Epic("Epic", "Epic description");
+        manager.createEpic(epic1);
+        manager.createSubtask(new Subtask("Subtask", "Описание\nв две строки", TaskStatus.DONE,
+                LocalDateTime.of(2024, 5, 1, 10, 0), Duration.ofMinutes(45), epic1.getId()));
+        manager.createSubtask(new Subtask("Subtask2", "Desc", TaskStatus.NEW,
+                LocalDateTime.of(2024, 5, 1, 11, 0), Duration.ofMinutes(15), epic1.getId()));
+        manager.createTask(new Task("Task2", "Desc", TaskStatus.IN_PROGRESS));
+        return manager;
+    }
+
+    private static byte[] export(InMemoryTaskManager manager) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(5, BoardTransfer.export(manager, out));
+        return out.toByteArray();
+    }
+
+    @Test
+    void roundTripInSmallBatches() {
+        InMemoryTaskManager source = board();
+        InMemoryTaskManager target = new InMemoryTaskManager();
+
+        assertEquals(5, BoardTransfer.importFrom(target, new ByteArrayInputStream(export(source)), 2));
+
+        assertEquals(source.getTasks(), target.getTasks());
+        assertEquals(source.getEpics(), target.getEpics());
+        assertEquals(source.getSubtasks(), target.getSubtasks());
+        assertEquals("Описание\nв две строки", target.getSubtaskById(3).getDescription());
+        assertEquals(TaskStatus.IN_PROGRESS, target.getEpicById(2).getStatus());
+        assertEquals(source.getPrioritizedTasks(), target.getPrioritizedTasks());
+
+        target.createTask(new Task("Next", "Desc", TaskStatus.NEW));
+        assertNotNull(target.getTaskById(6));
+    }
+
+    @Test
+    void exportIsLoadableCsvSnapshot() throws IOException {
+        File file = File.createTempFile("test", ".csv");
+        file.deleteOnExit();
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            BoardTransfer.export(board(), out.getChannel());
+        }
+
+        FileBackedTaskManager loaded = FileBackedTaskManager.loadFromFile(file);
+        assertEquals(2, loaded.getTasks().size());
+        assertEquals(2, loaded.getEpicsSubtasksById(2).size());
+    }
+
+    @Test
+    void subtaskBeforeEpicIsDeferred() {
+        String csv = "id,type,name,status,description,startTime,duration,epic\n"
+                + "3,SUBTASK,Subtask,DONE,Desc,null,null,2\n"
+                + "1,TASK,Task,NEW,Desc,null,null\n"
+                + "2,EPIC,Epic,NEW,Desc,null,null\n"
+                + "4,SUBTASK,Orphan,NEW,Desc,null,null,7\n";
+        InMemoryTaskManager target = new InMemoryTaskManager();
+
+        assertEquals(3, BoardTransfer.importFrom(target,
+                new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)), 1));
+        assertEquals(TaskStatus.DONE, target.getEpicById(2).getStatus());
+        assertEquals(1, target.getSubtasks().size());
+    }
+
+    @Test
+    void importIntoFileBackedManagerIsPersisted() throws IOException {
+        for (PersistenceMode mode : PersistenceMode.values()) {
+            File file = File.createTempFile("test", ".csv");
+            file.deleteOnExit();
+            new File(file.getPath() + ".journal").deleteOnExit();
+            try (FileBackedTaskManager target = new FileBackedTaskManager(file, mode)) {
+                BoardTransfer.importFrom(target, Channels.newInputStream(
+                        Channels.newChannel(new ByteArrayInputStream(export(board())))));
+            }
+
+            FileBackedTaskManager loaded = FileBackedTaskManager.loadFromFile(file, mode);
+            assertEquals(2, loaded.getTasks().size(), mode.name());
+            assertEquals(2, loaded.getSubtasks().size(), mode.name());
+        }
+    }
+
+    @Test
+    void conflictsAndTruncationAreRejected() {
+        byte[] exported = export(board());
+        InMemoryTaskManager existing = board();
+        assertThrows(IllegalArgumentException.class,
+                () -> BoardTransfer.importFrom(existing, new ByteArrayInputStream(exported)));
+
+        String csv = new String(exported, StandardCharsets.UTF_8).replaceFirst("\n1,TASK[^\n]*", "");
+        assertThrows(ManagerSaveException.class, () -> BoardTransfer.importFrom(new InMemoryTaskManager(),
+                new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8))));
+        assertThrows(IllegalArgumentException.class,
+                () -> BoardTransfer.importFrom(new InMemoryTaskManager(), new ByteArrayInputStream(exported), 0));
+    }
+
+    @Test
+    void overlappingBatchLeavesManagerUnchanged() {
+        String csv = "id,type,name,status,description,startTime,duration,epic\n"
+                + "6,EPIC,Epic,NEW,Desc,null,null\n"
+                + "7,SUBTASK,Subtask,DONE,Desc,2024-05-01T09:15,30,6\n"
+                + "8,TASK,Task,NEW,Desc,2024-05-02T09:00,30\n";
+        InMemoryTaskManager target = board();
+
+        TaskOverlapException e = assertThrows(TaskOverlapException.class, () -> BoardTransfer.importFrom(target,
+                new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8))));
+
+        assertEquals(List.of(new TaskOverlapException.Conflict(1, 7)), e.getConflicts());
+        assertEquals(2, target.getTasks().size());
+        assertEquals(1, target.getEpics().size());
+        assertEquals(2, target.getSubtasks().size());
+        assertEquals(3, target.getPrioritizedTasks().size());
+        Task next = new Task("Next", "Desc", TaskStatus.NEW);
+        target.createTask(next);
+        assertEquals(6, next.getId());
+    }
+
+    @Test
+    void duplicateIdsInStreamLeaveManagerUnchanged() {
+        String sameBatch = "id,type,name,status,description,startTime,duration,epic\n"
+                + "6,TASK,Task,NEW,Desc,null,null\n"
+                + "6,EPIC,Epic,NEW,Desc,null,null\n";
+        String deferred = "id,type,name,status,description,startTime,duration,epic\n"
+                + "7,SUBTASK,Subtask,DONE,Desc,null,null,8\n"
+                + "7,TASK,Task,NEW,Desc,null,null\n";
+        InMemoryTaskManager target = board();
+
+        assertThrows(IllegalArgumentException.class, () -> BoardTransfer.importFrom(target,
+                new ByteArrayInputStream(sameBatch.getBytes(StandardCharsets.UTF_8))));
+        assertThrows(IllegalArgumentException.class, () -> BoardTransfer.importFrom(target,
+                new ByteArrayInputStream(deferred.getBytes(StandardCharsets.UTF_8)), 1));
+
+        assertEquals(2, target.getTasks().size());
+        assertEquals(1, target.getEpics().size());
+        assertEquals(2, target.getSubtasks().size());
+        Task next = new Task("Next", "Desc", TaskStatus.NEW);
+        target.createTask(next);
+        assertEquals(6, next.getId());
+    }
+}
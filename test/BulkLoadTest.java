@@ -0,0 +1,156 @@
+import exceptions.TaskOverlapException;
+import model.Epic;
+import model.Subtask;
+import model.TaskStatus;
+import org.junit.jupiter.api.Test;
+import service.FileBackedTaskManager;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BulkLoadTest {
+
+    private static final LocalDateTime START = LocalDateTime.of(2024, 1, 1, 0, 0);
+
+    private static File csv(String... lines) throws IOException {
+        File file = File.createTempFile("test", ".csv");
+        file.deleteOnExit();
+        Files.write(file.toPath(), List.of(lines), StandardCharsets.UTF_8);
+        return file;
+    }
+
+    @Test
+    void largeEpicLoadsInOnePass() throws IOException {
+        int count = 100_000;
+        File file = File.createTempFile("test", ".csv");
+        file.deleteOnExit();
+        try (BufferedWriter writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            writer.write("id,type,name,status,description,startTime,duration,epic\n");
+            writer.write("1,EPIC,Epic,NEW,Desc,null,null\n");
+            for (int i = 0; i < count; i++) {
+                TaskStatus status = i == 0 ? TaskStatus.IN_PROGRESS : TaskStatus.DONE;
+                writer.write((i + 2) + ",SUBTASK,Sub" + i + "," + status + ",Desc," + START.plusMinutes(i * 10L)
+                        + ",5,1\n");
+            }
+        }
+
+        long started = System.nanoTime();
+        FileBackedTaskManager loaded = FileBackedTaskManager.loadFromFile(file);
+        assertTrue(System.nanoTime() - started < 30_000_000_000L);
+
+        Epic epic = loaded.getEpicById(1);
+        assertEquals(count, loaded.getEpicsSubtasksById(1).size());
+        assertEquals(count, loaded.getPrioritizedTasks().size());
+        assertEquals(TaskStatus.IN_PROGRESS, epic.getStatus());
+        assertEquals(START, epic.getStartTime());
+        assertEquals(Duration.ofMinutes(5L * count), epic.getDuration());
+        assertEquals(START.plusMinutes((count - 1) * 10L + 5), epic.getEndTime());
+    }
+
+    @Test
+    void aggregatesArePerEpicAndIndependentOfOrder() throws IOException {
+        File file = csv("id,type,name,status,description,startTime,duration,epic",
+                "3,SUBTASK,Sub,DONE,Desc,2024-05-01T10:00,30,2",
+                "1,EPIC,Empty,DONE,Desc,null,null",
+                "2,EPIC,Epic,NEW,Desc,null,null",
+                "4,SUBTASK,Sub,DONE,Desc,2024-05-01T09:00,15,2",
+                "5,EPIC,Other,NEW,Desc,null,null",
+                "6,SUBTASK,Sub,NEW,Desc,2024-05-02T09:00,60,5");
+
+        FileBackedTaskManager loaded = FileBackedTaskManager.loadFromFile(file);
+
+        assertEquals(TaskStatus.DONE, loaded.getEpicById(1).getStatus());
+        Epic epic = loaded.getEpicById(2);
+        assertEquals(TaskStatus.DONE, epic.getStatus());
+        assertEquals(LocalDateTime.of(2024, 5, 1, 9, 0), epic.getStartTime());
+        assertEquals(Duration.ofMinutes(45), epic.getDuration());
+        assertEquals(LocalDateTime.of(2024, 5, 1, 10, 30), epic.getEndTime());
+        assertEquals(LocalDateTime.of(2024, 5, 2, 9, 0), loaded.getEpicById(5).getStartTime());
+        assertEquals(Duration.ofMinutes(60), loaded.getEpicById(5).getDuration());
+
+        loaded.createSubtask(new Subtask("New", "Desc", TaskStatus.NEW,
+                LocalDateTime.of(2024, 5, 3, 9, 0), Duration.ofMinutes(10), 5));
+        assertEquals(Duration.ofMinutes(70), loaded.getEpicById(5).getDuration());
+        assertEquals(LocalDateTime.of(2024, 5, 2, 9, 0), loaded.getEpicById(5).getStartTime());
+    }
+
+    @Test
+    void overlapsAreRejectedOnLoad() throws IOException {
+        File file = csv("id,type,name,status,description,startTime,duration,epic",
+                "1,TASK,Task,NEW,Desc,2024-05-01T09:00,60",
+                "2,EPIC,Epic,NEW,Desc,null,null",
+                "3,SUBTASK,Sub,NEW,Desc,2024-05-01T09:30,10,2");
+
+        assertThrows(IllegalArgumentException.class, () -> FileBackedTaskManager.loadFromFile(file));
+    }
+
+    @Test
+    void zeroLengthTaskInsideAnotherIsAnOverlap() throws IOException {
+        File file = csv("id,type,name,status,description,startTime,duration,epic",
+                "1,TASK,Long,NEW,Desc,2024-05-01T09:00,240",
+                "2,TASK,Instant,NEW,Desc,2024-05-01T10:00,0");
+
+        assertThrows(IllegalArgumentException.class, () -> FileBackedTaskManager.loadFromFile(file));
+    }
+
+    @Test
+    void allConflictingPairsAreReported() throws IOException, ClassNotFoundException {
+        File file = csv("id,type,name,status,description,startTime,duration,epic",
+                "1,TASK,Day,NEW,Desc,2024-05-01T09:00,480",
+                "2,TASK,Free,NEW,Desc,2024-05-02T09:00,60",
+                "3,EPIC,Epic,NEW,Desc,null,null",
+                "4,SUBTASK,Morning,NEW,Desc,2024-05-01T10:00,60,3",
+                "5,SUBTASK,Back to back,NEW,Desc,2024-05-01T17:00,30,3",
+                "6,TASK,Lunch,NEW,Desc,2024-05-01T10:30,60",
+                "7,TASK,Untimed,NEW,Desc,null,null");
+
+        TaskOverlapException e = assertThrows(TaskOverlapException.class,
+                () -> FileBackedTaskManager.loadFromFile(file));
+        assertEquals(List.of(new TaskOverlapException.Conflict(1, 4), new TaskOverlapException.Conflict(1, 6),
+                new TaskOverlapException.Conflict(4, 6)), e.getConflicts().stream().sorted(
+                Comparator.comparing(TaskOverlapException.Conflict::first)
+                        .thenComparing(TaskOverlapException.Conflict::second)).toList());
+        assertTrue(e.getMessage().contains("3 conflicting pairs"));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(e);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            TaskOverlapException copy = (TaskOverlapException) in.readObject();
+            assertEquals(e.getConflicts(), copy.getConflicts());
+        }
+    }
+
+    @Test
+    void manyTimedTasksAreValidatedInOneSweep() throws IOException {
+        int count = 500_000;
+        File file = File.createTempFile("test", ".csv");
+        file.deleteOnExit();
+        try (BufferedWriter writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            writer.write("id,type,name,status,description,startTime,duration,epic\n");
+            for (int i = count; i > 0; i--) {
+                writer.write(i + ",TASK,Task,NEW,Desc," + START.plusMinutes(i * 2L) + ",2\n");
+            }
+        }
+
+        long started = System.nanoTime();
+        FileBackedTaskManager loaded = FileBackedTaskManager.loadFromFile(file);
+        assertTrue(System.nanoTime() - started < 30_000_000_000L);
+        assertEquals(count, loaded.getPrioritizedTasks().size());
+        assertEquals(1, loaded.getPrioritizedTasks().get(0).getId());
+    }
+}
@@ -0,0 +1,120 @@
+import model.Epic;
+import model.Subtask;
+import model.Task;
+import model.TaskStatus;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import service.FileBackedTaskManager;
+import service.PersistenceMode;
+import service.TaskFileConverter;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompactSnapshotTest extends TaskManagerTest<FileBackedTaskManager> {
+
+    private File file;
+
+    @Override
+    protected FileBackedTaskManager createManager() {
+        Assertions.assertDoesNotThrow(() -> {
+            file = File.createTempFile("test", ".tasks");
+            file.deleteOnExit();
+        });
+
+        return new FileBackedTaskManager(file);
+    }
+
+    @Test
+    void loadEmptyCompactFile() {
+        FileBackedTaskManager loaded = FileBackedTaskManager.loadFromFile(file);
+        assertTrue(loaded.getTasks().isEmpty());
+        assertTrue(loaded.getEpics().isEmpty());
+    }
+
+    @Test
+    void saveAndLoadAllFields() {
+        Task timed = new Task("Задача, с запятой", "Описание", TaskStatus.IN_PROGRESS,
+                LocalDateTime.of(2024, 5, 1, 9, 15, 30, 500), Duration.ofMinutes(90));
+        manager.createTask(timed);
+        Task old = new Task("Old", null, TaskStatus.DONE,
+                LocalDateTime.of(1960, 1, 1, 0, 0), Duration.ofMinutes(5));
+        manager.createTask(old);
+
+        Epic epic1 = new Epic("Epic", "");
+        manager.createEpic(epic1);
+        Subtask sub = new Subtask("Sub", "Sub description", TaskStatus.DONE,
+                LocalDateTime.of(2024, 5, 2, 10, 0), Duration.ofMinutes(30), epic1.getId());
+        manager.createSubtask(sub);
+
+        FileBackedTaskManager loaded = FileBackedTaskManager.loadFromFile(file);
+
+        Task loadedTimed = loaded.getTaskById(timed.getId());
+        assertEquals("Задача, с запятой", loadedTimed.getName());
+        assertEquals(TaskStatus.IN_PROGRESS, loadedTimed.getStatus());
+        assertEquals(timed.getStartTime(), loadedTimed.getStartTime());
+        assertEquals(timed.getDuration(), loadedTimed.getDuration());
+        assertEquals(old.getStartTime(), loaded.getTaskById(old.getId()).getStartTime());
+        assertNull(loaded.getTaskById(old.getId()).getDescription());
+        assertEquals("", loaded.getEpicById(epic1.getId()).getDescription());
+
+        Subtask loadedSub = loaded.getSubtaskById(sub.getId());
+        assertEquals(epic1.getId(), loadedSub.getEpicId());
+        assertEquals(sub.getEndTime(), loadedSub.getEndTime());
+        assertEquals(TaskStatus.DONE, loaded.getEpicById(epic1.getId()).getStatus());
+    }
+
+    @Test
+    void converterRoundTripsThroughCsv() {
+        Epic epic1 = new Epic("Epic", "Epic description");
+        manager.createEpic(epic1);
+        for (int i = 0; i < 100; i++) {
+            manager.createSubtask(new Subtask("Sub " + i, "Описание, \"в кавычках\"", TaskStatus.NEW,
+                    LocalDateTime.of(2024, 1, 1, 0, 0).plusHours(i), Duration.ofMinutes(15), epic1.getId()));
+        }
+
+        File csv = new File(file.getPath() + ".csv");
+        File back = new File(file.getPath() + ".copy.tasks");
+        csv.deleteOnExit();
+        back.deleteOnExit();
+        TaskFileConverter.convert(file, csv);
+        TaskFileConverter.convert(csv, back);
+
+        assertTrue(file.length() < csv.length());
+        assertEquals(file.length(), back.length());
+        FileBackedTaskManager loaded = FileBackedTaskManager.loadFromFile(back);
+        assertEquals(manager.getSubtasks(), loaded.getSubtasks());
+        assertEquals(100, loaded.getPrioritizedTasks().size());
+    }
+
+    @Test
+    void converterDoesNotRewriteSourceWithJournal() throws IOException {
+        File source = File.createTempFile("journal", ".tasks");
+        File journal = new File(source.getPath() + ".journal");
+        File target = new File(source.getPath() + ".csv");
+        source.deleteOnExit();
+        journal.deleteOnExit();
+        target.deleteOnExit();
+
+        try (FileBackedTaskManager journaled = new FileBackedTaskManager(source, PersistenceMode.JOURNAL)) {
+            journaled.createTask(new Task("Из снимка", "Описание", TaskStatus.NEW));
+            journaled.compact();
+            journaled.createTask(new Task("Из журнала", "Описание", TaskStatus.DONE));
+        }
+        byte[] snapshot = Files.readAllBytes(source.toPath());
+        byte[] records = Files.readAllBytes(journal.toPath());
+
+        TaskFileConverter.convert(source, target);
+
+        assertArrayEquals(snapshot, Files.readAllBytes(source.toPath()));
+        assertArrayEquals(records, Files.readAllBytes(journal.toPath()));
+        FileBackedTaskManager converted = FileBackedTaskManager.loadFromFile(target);
+        assertEquals(2, converted.getTasks().size());
+        assertEquals(TaskStatus.DONE, converted.getTasks().get(1).getStatus());
+    }
+}
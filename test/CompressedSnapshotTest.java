@@ -0,0 +1,171 @@
+import exceptions.ManagerSaveException;
+import model.Epic;
+import model.Subtask;
+import model.Task;
+import model.TaskStatus;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import service.Compression;
+import service.FileBackedTaskManager;
+import service.PersistenceMode;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompressedSnapshotTest extends TaskManagerTest<FileBackedTaskManager> {
+
+    private File file;
+
+    @Override
+    protected FileBackedTaskManager createManager() {
+        Assertions.assertDoesNotThrow(() -> {
+            file = File.createTempFile("test", ".csv.bgz");
+            file.deleteOnExit();
+        });
+
+        return new FileBackedTaskManager(file);
+    }
+
+    private File tempFile(String suffix) throws IOException {
+        File result = File.createTempFile("test", suffix);
+        result.deleteOnExit();
+        return result;
+    }
+
+    private static void fillBoard(FileBackedTaskManager target, int count) {
+        for (int i = 0; i < count; i++) {
+            target.createTask(new Task("Task" + i, "Повторяющееся описание задачи " + i, TaskStatus.NEW));
+        }
+        Epic epic1 = new Epic("Epic", "Epic description");
+        target.createEpic(epic1);
+        target.createSubtask(new Subtask("Задача, с запятой", "Описание\nв две строки", TaskStatus.IN_PROGRESS,
+                LocalDateTime.of(2024, 5, 1, 9, 15), Duration.ofMinutes(90), epic1.getId()));
+    }
+
+    @Test
+    void loadEmptyCompressedFile() {
+        FileBackedTaskManager loaded = FileBackedTaskManager.loadFromFile(file);
+        assertTrue(loaded.getTasks().isEmpty());
+        assertTrue(loaded.getEpics().isEmpty());
+    }
+
+    @Test
+    void blocksAreReadableByGzipAndLoadInParallel() throws IOException {
+        new File(file.getPath() + ".journal").deleteOnExit();
+        File plain = tempFile(".csv");
+        try (FileBackedTaskManager journaled = new FileBackedTaskManager(file, PersistenceMode.JOURNAL)) {
+            fillBoard(journaled, 30_000);
+            journaled.compact();
+            journaled.exportSnapshot(plain);
+        }
+
+        assertTrue(plain.length() > 2L * (1 << 20));
+        assertTrue(file.length() * 4 < plain.length());
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(file.toPath()))) {
+            assertArrayEquals(Files.readAllBytes(plain.toPath()), in.readAllBytes());
+        }
+
+        FileBackedTaskManager loaded = FileBackedTaskManager.loadFromFile(file, PersistenceMode.JOURNAL);
+        assertEquals(30_000, loaded.getTasks().size());
+        assertEquals("Task29999", loaded.getTaskById(30_000).getName());
+        assertEquals("Описание\nв две строки", loaded.getSubtaskById(30_002).getDescription());
+    }
+
+    @Test
+    void quotedRecordsSpanningWindowsAreParsed() throws IOException {
+        new File(file.getPath() + ".journal").deleteOnExit();
+        File gzip = tempFile(".csv.gz");
+        try (FileBackedTaskManager journaled = new FileBackedTaskManager(file, PersistenceMode.JOURNAL)) {
+            for (int i = 0; i < 30_000; i++) {
+                journaled.createTask(new Task("Task" + i, "Описание, с запятой\nи \"кавычками\" " + i,
+                        TaskStatus.NEW));
+            }
+            journaled.compact();
+            journaled.exportSnapshot(gzip);
+        }
+
+        for (File source : new File[]{file, gzip}) {
+            FileBackedTaskManager loaded = FileBackedTaskManager.loadFromFile(source, PersistenceMode.JOURNAL);
+            assertEquals(30_000, loaded.getTasks().size(), source.getName());
+            for (Task task : loaded.getTasks()) {
+                assertEquals("Описание, с запятой\nи \"кавычками\" " + (task.getId() - 1), task.getDescription(),
+                        source.getName());
+            }
+        }
+    }
+
+    @Test
+    void checksumIsVerifiedWhileStreaming() throws IOException {
+        File plain = tempFile(".csv");
+        fillBoard(manager, 10);
+        manager.exportSnapshot(plain);
+        byte[] changed = new String(Files.readAllBytes(plain.toPath()), StandardCharsets.UTF_8)
+                .replace("Task7", "Task8").getBytes(StandardCharsets.UTF_8);
+
+        File damaged = tempFile(".csv.gz");
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(damaged.toPath()))) {
+            out.write(changed);
+        }
+        assertThrows(ManagerSaveException.class, () -> FileBackedTaskManager.loadFromFile(damaged));
+    }
+
+    @Test
+    void gzipWorksForEveryStreamFormat() throws IOException {
+        fillBoard(manager, 100);
+        for (String suffix : new String[]{".csv.gz", ".bin.gz", ".tasks.gz", ".bin.bgz", ".tasks.bgz"}) {
+            File target = tempFile(suffix);
+            manager.exportSnapshot(target);
+
+            try (InputStream in = Files.newInputStream(target.toPath())) {
+                assertEquals(0x1f, in.read(), suffix);
+                assertEquals(0x8b, in.read(), suffix);
+            }
+            FileBackedTaskManager loaded = FileBackedTaskManager.loadFromFile(target);
+            assertEquals(100, loaded.getTasks().size(), suffix);
+            assertEquals(manager.getSubtaskById(102).getStartTime(), loaded.getSubtaskById(102).getStartTime(),
+                    suffix);
+        }
+    }
+
+    @Test
+    void compressionIsDetectedByContent() throws IOException {
+        File target = tempFile(".csv");
+        FileBackedTaskManager configured = new FileBackedTaskManager(target);
+        configured.setCompression(Compression.GZIP);
+        configured.createTask(new Task("Task", "Desc", TaskStatus.NEW));
+
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(target.toPath()))) {
+            assertTrue(new String(in.readAllBytes()).startsWith("id,type"));
+        }
+        assertEquals("Desc", FileBackedTaskManager.loadFromFile(target).getTaskById(1).getDescription());
+    }
+
+    @Test
+    void damagedBlockIsRejected() throws IOException {
+        fillBoard(manager, 100);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(40);
+            raf.write(raf.read() ^ 0xFF);
+        }
+        assertThrows(ManagerSaveException.class, () -> FileBackedTaskManager.loadFromFile(file));
+    }
+
+    @Test
+    void inPlaceFormatsCannotBeCompressed() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new FileBackedTaskManager(new File("board.slots.gz")));
+        assertThrows(IllegalArgumentException.class,
+                () -> new FileBackedTaskManager(new File("board.segments")).setCompression(Compression.GZIP));
+    }
+}
@@ -10,6 +10,8 @@ import service.TaskManager;
 import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -29,6 +31,7 @@ class EpicTest {
 
     @Test
     void addSubtask() {
+        subtask.setId(epic.getId() + 1);
         epic.addSubtask(subtask);
         assertEquals(subtask, epic.getSubtasks().getLast());
     }
@@ -50,6 +53,7 @@ class EpicTest {
 
     @Test
     void getSubtasks() {
+        subtask.setId(epic.getId() + 1);
         epic.addSubtask(subtask);
         ArrayList<Subtask> testSubtasks = new ArrayList<>();
         testSubtasks.add(subtask);
@@ -138,4 +142,133 @@ class EpicTest {
     void getDurationWithoutSubtasks() {
         assertNull(epic.getDuration());
     }
-}
\ No newline at end of file
+
+    @Test
+    void aggregatesFollowAddReplaceAndRemove() {
+        Subtask first = new Subtask("Sub 1", "Desc 1", TaskStatus.DONE,
+                LocalDateTime.of(2024, 4, 1, 9, 0), Duration.ofMinutes(30), epic.getId());
+        first.setId(2);
+        Subtask second = new Subtask("Sub 2", "Desc 2", TaskStatus.DONE,
+                LocalDateTime.of(2024, 4, 2, 9, 0), Duration.ofMinutes(60), epic.getId());
+        second.setId(3);
+
+        epic.addSubtask(first);
+        epic.addSubtask(second);
+        assertEquals(TaskStatus.DONE, epic.getStatus());
+        assertEquals(first.getStartTime(), epic.getStartTime());
+        assertEquals(Duration.ofMinutes(90), epic.getDuration());
+        assertEquals(second.getEndTime(), epic.getEndTime());
+
+        Subtask moved = new Subtask("Sub 2", "Desc 2", TaskStatus.IN_PROGRESS,
+                LocalDateTime.of(2024, 3, 30, 9, 0), Duration.ofMinutes(15), epic.getId());
+        moved.setId(3);
+        epic.replaceSubtask(second, moved);
+        assertEquals(TaskStatus.IN_PROGRESS, epic.getStatus());
+        assertEquals(moved.getStartTime(), epic.getStartTime());
+        assertEquals(Duration.ofMinutes(45), epic.getDuration());
+        assertEquals(first.getEndTime(), epic.getEndTime());
+
+        epic.removeSubtask(moved);
+        assertEquals(TaskStatus.DONE, epic.getStatus());
+        assertEquals(first.getStartTime(), epic.getStartTime());
+        epic.removeSubtask(first);
+        assertEquals(TaskStatus.NEW, epic.getStatus());
+        assertNull(epic.getStartTime());
+        assertNull(epic.getEndTime());
+        assertEquals(Duration.ZERO, epic.getDuration());
+    }
+
+    @Test
+    void cloneKeepsAggregates() {
+        Subtask done = new Subtask("Sub", "Desc", TaskStatus.DONE,
+                LocalDateTime.of(2024, 4, 1, 9, 0), Duration.ofMinutes(30), epic.getId());
+        done.setId(2);
+        epic.addSubtask(done);
+
+        Epic copy = epic.cloneEpic();
+        Subtask started = new Subtask("Sub", "Desc", TaskStatus.NEW, epic.getId());
+        started.setId(3);
+        copy.addSubtask(started);
+
+        assertEquals(TaskStatus.IN_PROGRESS, copy.getStatus());
+        assertEquals(done.getStartTime(), copy.getStartTime());
+        assertEquals(TaskStatus.DONE, epic.getStatus());
+    }
+
+    @Test
+    void subtaskWritesDoNotDependOnEpicSize() {
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 0, 0);
+        long started = System.nanoTime();
+        for (int i = 0; i < 50_000; i++) {
+            manager.createSubtask(new Subtask("Sub", "Desc", i % 2 == 0 ? TaskStatus.NEW : TaskStatus.DONE,
+                    start.plusMinutes(i * 10L), Duration.ofMinutes(5), epic.getId()));
+        }
+        assertTrue(System.nanoTime() - started < 30_000_000_000L);
+
+        Epic stored = manager.getEpicById(epic.getId());
+        assertEquals(TaskStatus.IN_PROGRESS, stored.getStatus());
+        assertEquals(start, stored.getStartTime());
+        assertEquals(Duration.ofMinutes(5L * 50_000), stored.getDuration());
+    }
+
+    @Test
+    void subtaskIdsKeepInsertionOrderThroughRemovals() {
+        Epic local = new Epic("Local", "Desc");
+        local.setId(1);
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 2; i < 1_000; i++) {
+            Subtask added = new Subtask("Sub", "Desc", TaskStatus.NEW, 1);
+            added.setId(i);
+            local.addSubtask(added);
+            if (i % 3 == 0) {
+                local.removeSubtask(added);
+            } else {
+                expected.add(i);
+            }
+        }
+
+        assertEquals(expected, Arrays.stream(local.getSubtaskIds()).boxed().toList());
+        assertEquals(expected.size(), local.getSubtaskCount());
+        assertEquals(expected, local.getSubtasks().stream().map(Subtask::getId).toList());
+        assertTrue(local.containsSubtask(4));
+        assertFalse(local.containsSubtask(3));
+    }
+
+    @Test
+    void storedEpicResolvesSubtasksThroughManager() {
+        manager.createSubtask(subtask);
+        Subtask stored = manager.getSubtasks().getFirst();
+        Epic storedEpic = manager.getEpics().getFirst();
+
+        assertSame(stored, storedEpic.getSubtasks().getFirst());
+        subtask.setStatus(TaskStatus.DONE);
+        manager.updateSubtask(subtask);
+        assertSame(manager.getSubtasks().getFirst(), storedEpic.getSubtasks().getFirst());
+        assertEquals(TaskStatus.DONE, storedEpic.getStatus());
+
+        Epic copy = manager.getEpicById(epic.getId());
+        manager.deleteSubtaskById(subtask.getId());
+        assertEquals(1, copy.getSubtasks().size());
+        assertEquals(0, storedEpic.getSubtaskCount());
+    }
+
+    @Test
+    void subtaskWithoutIdIsNotAdded() {
+        epic.addSubtask(subtask);
+        assertEquals(0, epic.getSubtaskCount());
+    }
+
+    @Test
+    void subtaskWithoutStatusKeepsEpicInProgress() {
+        Subtask noStatus = new Subtask("Sub", "Desc", null, epic.getId());
+        manager.createSubtask(noStatus);
+        assertEquals(TaskStatus.IN_PROGRESS, manager.getEpicById(epic.getId()).getStatus());
+
+        noStatus.setStatus(TaskStatus.DONE);
+        manager.updateSubtask(noStatus);
+        assertEquals(TaskStatus.DONE, manager.getEpicById(epic.getId()).getStatus());
+
+        manager.deleteSubtaskById(noStatus.getId());
+        assertEquals(TaskStatus.NEW, manager.getEpicById(epic.getId()).getStatus());
+    }
+}
@@ -5,13 +5,20 @@ import model.Task;
 import model.TaskStatus;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
+import service.Durability;
 import service.FileBackedTaskManager;
+import service.PersistenceMode;
 
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
 import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -522,4 +529,461 @@ public class FileBackedTaskManagerTest extends TaskManagerTest<FileBackedTaskMan
 
         assertFalse(loaded.getPrioritizedTasks().contains(epic));
     }
+
+    //---------------------------------------------------
+    //блок тестов журнала
+    //---------------------------------------------------
+    @Test
+    void journalModeAppendsWithoutRewritingSnapshot() throws Exception {
+        File journal = new File(file.getPath() + ".journal");
+        journal.deleteOnExit();
+        FileBackedTaskManager journaled = new FileBackedTaskManager(file, PersistenceMode.JOURNAL);
+
+        journaled.createTask(new Task("Task1", "Description1", TaskStatus.NEW));
+        journaled.createEpic(new Epic("Epic1", "Description1"));
+
+        assertEquals(0, file.length());
+        assertEquals(2, Files.readAllLines(journal.toPath()).stream()
+                .filter(line -> !line.startsWith("#"))
+                .count());
+
+        FileBackedTaskManager loaded = FileBackedTaskManager.loadFromFile(file, PersistenceMode.JOURNAL);
+        assertEquals(1, loaded.getTasks().size());
+        assertEquals(1, loaded.getEpics().size());
+    }
+
+    @Test
+    void journalReplayAppliesUpdatesAndDeletes() {
+        new File(file.getPath() + ".journal").deleteOnExit();
+        FileBackedTaskManager journaled = new FileBackedTaskManager(file, PersistenceMode.JOURNAL);
+
+        Task task = new Task("Task1", "Description1", TaskStatus.NEW);
+        journaled.createTask(task);
+        task.setStatus(TaskStatus.DONE);
+        journaled.updateTask(task);
+
+        Epic epic1 = new Epic("Epic1", "Description1");
+        journaled.createEpic(epic1);
+        Subtask sub1 = new Subtask("Sub 1", "Desc 1", TaskStatus.DONE, epic1.getId());
+        Subtask sub2 = new Subtask("Sub 2", "Desc 2", TaskStatus.NEW, epic1.getId());
+        journaled.createSubtask(sub1);
+        journaled.createSubtask(sub2);
+        journaled.deleteSubtaskById(sub2.getId());
+
+        FileBackedTaskManager loaded = FileBackedTaskManager.loadFromFile(file, PersistenceMode.JOURNAL);
+
+        assertEquals(TaskStatus.DONE, loaded.getTaskById(task.getId()).getStatus());
+        assertEquals(1, loaded.getEpicsSubtasksById(epic1.getId()).size());
+        assertEquals(TaskStatus.DONE, loaded.getEpicById(epic1.getId()).getStatus());
+
+        Task next = new Task("Task2", "Description2", TaskStatus.NEW);
+        loaded.createTask(next);
+        assertEquals(sub2.getId() + 1, next.getId());
+    }
+
+    @Test
+    void compactFoldsJournalIntoSnapshot() {
+        File journal = new File(file.getPath() + ".journal");
+        FileBackedTaskManager journaled = new FileBackedTaskManager(file, PersistenceMode.JOURNAL);
+
+        journaled.createTask(new Task("Task1", "Description1", TaskStatus.NEW));
+        journaled.createTask(new Task("Task2", "Description2", TaskStatus.NEW));
+        journaled.compact();
+
+        assertFalse(journal.exists());
+        assertTrue(file.length() > 0);
+
+        FileBackedTaskManager loaded = FileBackedTaskManager.loadFromFile(file);
+        assertEquals(2, loaded.getTasks().size());
+    }
+
+    @Test
+    void compactionAppliesJournalToPreviousSnapshot() {
+        File journal = new File(file.getPath() + ".journal");
+        FileBackedTaskManager journaled = new FileBackedTaskManager(file, PersistenceMode.JOURNAL);
+
+        Task task1 = new Task("Task1", "Description1", TaskStatus.NEW);
+        Task task2 = new Task("Task2", "Description2", TaskStatus.NEW);
+        journaled.createTask(task1);
+        journaled.createTask(task2);
+        journaled.compact();
+
+        journaled.deleteTaskById(task1.getId());
+        task2.setStatus(TaskStatus.DONE);
+        journaled.updateTask(task2);
+        Epic epic = new Epic("Epic1", "Description1");
+        journaled.createEpic(epic);
+        journaled.createSubtask(new Subtask("Subtask1", "Description1", TaskStatus.IN_PROGRESS, epic.getId()));
+        journaled.compact();
+        journaled.close();
+
+        assertFalse(journal.exists());
+        FileBackedTaskManager loaded = FileBackedTaskManager.loadFromFile(file);
+        assertEquals(List.of(task2.getId()), loaded.getTasks().stream().map(Task::getId).toList());
+        assertEquals(TaskStatus.DONE, loaded.getTaskById(task2.getId()).getStatus());
+        assertEquals(1, loaded.getEpicsSubtasksById(epic.getId()).size());
+        assertEquals(TaskStatus.IN_PROGRESS, loaded.getEpicById(epic.getId()).getStatus());
+    }
+
+    @Test
+    void compactionThresholdWritesSnapshotInBackground() {
+        File journal = new File(file.getPath() + ".journal");
+        journal.deleteOnExit();
+        FileBackedTaskManager journaled = new FileBackedTaskManager(file, PersistenceMode.JOURNAL);
+        journaled.setCompactionThresholds(0, 3);
+
+        journaled.createTask(new Task("Task1", "Description1", TaskStatus.NEW));
+        journaled.createTask(new Task("Task2", "Description2", TaskStatus.NEW));
+        journaled.createTask(new Task("Task3", "Description3", TaskStatus.NEW));
+        journaled.close();
+
+        assertFalse(journal.exists());
+        assertFalse(new File(file.getPath() + ".journal.old").exists());
+        assertEquals(3, FileBackedTaskManager.loadFromFile(file, PersistenceMode.JOURNAL).getTasks().size());
+
+        journaled.createTask(new Task("Task4", "Description4", TaskStatus.NEW));
+        journaled.close();
+
+        assertTrue(journal.exists());
+        assertEquals(4, FileBackedTaskManager.loadFromFile(file, PersistenceMode.JOURNAL).getTasks().size());
+    }
+
+    @Test
+    void journalOlderThanSnapshotIsNotReplayed() {
+        File oldJournal = new File(file.getPath() + ".journal.old");
+        oldJournal.deleteOnExit();
+        Assertions.assertDoesNotThrow(() -> {
+            BufferedWriter writer = new BufferedWriter(new FileWriter(file));
+            writer.append("id,type,name,status,description,startTime,duration,epic").append("\n");
+            writer.append("#gen,2").append("\n");
+            writer.append("1,TASK,Task 1,DONE,moved,2023-01-01T12:00,60").append("\n");
+            writer.append("2,TASK,Task 2,NEW,second,2023-01-01T10:00,60").append("\n");
+            writer.close();
+
+            BufferedWriter old = new BufferedWriter(new FileWriter(oldJournal));
+            old.append("#gen,1").append("\n");
+            old.append("PUT,1,TASK,Task 1,NEW,first,2023-01-01T10:00,60").append("\n");
+            old.close();
+        });
+
+        FileBackedTaskManager loaded = FileBackedTaskManager.loadFromFile(file, PersistenceMode.JOURNAL);
+
+        assertEquals(TaskStatus.DONE, loaded.getTaskById(1).getStatus());
+        assertEquals(2, loaded.getTasks().size());
+        assertFalse(oldJournal.exists());
+    }
+
+    //---------------------------------------------------
+    //блок тестов надёжности записи
+    //---------------------------------------------------
+    @Test
+    void batchedJournalIsWrittenOnSync() {
+        new File(file.getPath() + ".journal").deleteOnExit();
+        FileBackedTaskManager journaled = new FileBackedTaskManager(file, PersistenceMode.JOURNAL);
+        journaled.setDurability(Durability.BATCHED, Duration.ofMillis(50));
+
+        for (int i = 0; i < 100; i++) {
+            journaled.createTask(new Task("Task" + i, "Description", TaskStatus.NEW));
+        }
+        journaled.flush();
+
+        assertEquals(100, FileBackedTaskManager.loadFromFile(file, PersistenceMode.JOURNAL).getTasks().size());
+        journaled.close();
+    }
+
+    @Test
+    void waitForCommitMakesConcurrentChangesDurable() throws InterruptedException {
+        new File(file.getPath() + ".journal").deleteOnExit();
+        FileBackedTaskManager journaled = new FileBackedTaskManager(file, PersistenceMode.JOURNAL);
+        journaled.setDurability(Durability.BATCHED, Duration.ofMillis(20));
+        journaled.setWaitForCommit(true);
+
+        List<Thread> writers = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            Thread writer = new Thread(() -> {
+                for (int j = 0; j < 10; j++) {
+                    journaled.createTask(new Task("Task", "Description", TaskStatus.NEW));
+                }
+            });
+            writers.add(writer);
+            writer.start();
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+
+        FileBackedTaskManager loaded = FileBackedTaskManager.loadFromFile(file, PersistenceMode.JOURNAL);
+        assertEquals(80, loaded.getTasks().size());
+        journaled.close();
+    }
+
+    @Test
+    void batchedSnapshotCoalescesRewrites() {
+        manager.setDurability(Durability.BATCHED, Duration.ofMillis(50));
+
+        Epic epic1 = new Epic("Epic1", "Description1");
+        manager.createEpic(epic1);
+        manager.createSubtask(new Subtask("Sub 1", "Desc 1", TaskStatus.DONE, epic1.getId()));
+        manager.flush();
+
+        FileBackedTaskManager loaded = FileBackedTaskManager.loadFromFile(file);
+        assertEquals(TaskStatus.DONE, loaded.getEpicById(epic1.getId()).getStatus());
+        manager.close();
+    }
+
+    @Test
+    void failedBatchIsReportedToEveryWaiter() throws IOException, InterruptedException {
+        File dir = Files.createTempDirectory("batch").toFile();
+        File target = new File(dir, "tasks.csv");
+        FileBackedTaskManager batched = new FileBackedTaskManager(target);
+        batched.setDurability(Durability.BATCHED, Duration.ofMillis(200));
+        batched.setWaitForCommit(true);
+        assertTrue(dir.delete());
+
+        List<Throwable> errors = new ArrayList<>();
+        List<Thread> writers = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            Thread writer = new Thread(() -> {
+                try {
+                    batched.createTask(new Task("Task", "Description", TaskStatus.NEW));
+                } catch (RuntimeException e) {
+                    synchronized (errors) {
+                        errors.add(e);
+                    }
+                }
+            });
+            writers.add(writer);
+            writer.start();
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+
+        assertEquals(4, errors.size());
+        errors.forEach(e -> assertInstanceOf(ManagerSaveException.class, e));
+        assertThrows(ManagerSaveException.class, batched::flush);
+        assertThrows(ManagerSaveException.class, batched::close);
+    }
+
+    @Test
+    void syncEachWritesThroughImmediately() {
+        manager.setDurability(Durability.SYNC_EACH);
+        manager.createTask(new Task("Task1", "Description1", TaskStatus.NEW));
+
+        assertEquals(1, FileBackedTaskManager.loadFromFile(file).getTasks().size());
+    }
+
+    //---------------------------------------------------
+    //блок тестов отложенной записи
+    //---------------------------------------------------
+    @Test
+    void writeBehindSnapshotIsWrittenOnFlush() {
+        manager.setWriteBehind(16);
+
+        Epic epic1 = new Epic("Epic1", "Description1");
+        manager.createEpic(epic1);
+        for (int i = 0; i < 50; i++) {
+            manager.createSubtask(new Subtask("Sub" + i, "Desc", TaskStatus.NEW, epic1.getId()));
+        }
+        manager.flush();
+
+        FileBackedTaskManager loaded = FileBackedTaskManager.loadFromFile(file);
+        assertEquals(50, loaded.getEpicsSubtasksById(epic1.getId()).size());
+        manager.close();
+    }
+
+    @Test
+    void writeBehindJournalSurvivesBackgroundCompaction() {
+        new File(file.getPath() + ".journal").deleteOnExit();
+        FileBackedTaskManager journaled = new FileBackedTaskManager(file, PersistenceMode.JOURNAL);
+        journaled.setWriteBehind(4);
+        journaled.setCompactionThresholds(0, 10);
+
+        for (int i = 0; i < 55; i++) {
+            journaled.createTask(new Task("Task" + i, "Description", TaskStatus.NEW));
+        }
+        journaled.close();
+
+        FileBackedTaskManager loaded = FileBackedTaskManager.loadFromFile(file, PersistenceMode.JOURNAL);
+        assertEquals(55, loaded.getTasks().size());
+    }
+
+    //---------------------------------------------------
+    //блок тестов разбора CSV
+    //---------------------------------------------------
+    @Test
+    void namesWithCommasQuotesAndNewlinesSurviveReload() {
+        Task task = new Task("Купить молоко, хлеб", "Сказать \"спасибо\"\nи уйти", TaskStatus.NEW,
+                LocalDateTime.of(2024, 2, 29, 23, 59, 7, 120_000_000), Duration.ofMinutes(15));
+        manager.createTask(task);
+        Epic epic1 = new Epic("Эпик,\r\nмногострочный", "");
+        manager.createEpic(epic1);
+
+        FileBackedTaskManager loaded = FileBackedTaskManager.loadFromFile(file);
+
+        Task loadedTask = loaded.getTaskById(task.getId());
+        assertEquals(task.getName(), loadedTask.getName());
+        assertEquals(task.getDescription(), loadedTask.getDescription());
+        assertEquals(task.getStartTime(), loadedTask.getStartTime());
+        assertEquals(epic1.getName(), loaded.getEpicById(epic1.getId()).getName());
+        assertEquals("", loaded.getEpicById(epic1.getId()).getDescription());
+    }
+
+    @Test
+    void quotedFieldsSurviveJournalReplay() {
+        new File(file.getPath() + ".journal").deleteOnExit();
+        FileBackedTaskManager journaled = new FileBackedTaskManager(file, PersistenceMode.JOURNAL);
+
+        Task task = new Task("a,b", "line1\n#gen,99\nline3", TaskStatus.NEW);
+        journaled.createTask(task);
+        journaled.createTask(new Task("plain", "plain", TaskStatus.DONE));
+
+        FileBackedTaskManager loaded = FileBackedTaskManager.loadFromFile(file, PersistenceMode.JOURNAL);
+        assertEquals(2, loaded.getTasks().size());
+        assertEquals("line1\n#gen,99\nline3", loaded.getTaskById(task.getId()).getDescription());
+    }
+
+    @Test
+    void loadWindowsLineEndings() {
+        Assertions.assertDoesNotThrow(() -> {
+            BufferedWriter writer = new BufferedWriter(new FileWriter(file));
+            writer.append("id,type,name,status,description,startTime,duration,epic").append("\r\n");
+            writer.append("1,EPIC,epic 1,NEW,first,null,null").append("\r\n");
+            writer.append("2,SUBTASK,Sub,DONE,desc,2023-01-01T12:00:30,60,1").append("\r\n");
+            writer.close();
+        });
+
+        FileBackedTaskManager loaded = FileBackedTaskManager.loadFromFile(file);
+        assertEquals(1, loaded.getEpicsSubtasksById(1).size());
+        assertEquals(LocalDateTime.of(2023, 1, 1, 12, 0, 30), loaded.getSubtaskById(2).getStartTime());
+    }
+
+    @Test
+    void largeSnapshotIsSplitOnRecordBoundaries() {
+        int tasks = 40_000;
+        String description = "\"line, with \"\"quotes\"\"\n9999999,TASK,fake,NEW,\"\"not a record\"\",null,null\n\"";
+        Assertions.assertDoesNotThrow(() -> {
+            BufferedWriter writer = new BufferedWriter(new FileWriter(file));
+            writer.append("id,type,name,status,description,startTime,duration,epic\n");
+            writer.append("#gen,3\n");
+            int id = 1;
+            for (int i = 0; i < tasks; i++) {
+                if (i % 1000 == 0) {
+                    // подзадача идёт раньше своего эпика: порядок в файле не должен мешать загрузке
+                    writer.append(String.valueOf(id + 1)).append(",SUBTASK,sub,DONE,")
+                            .append(description).append(",null,null,").append(String.valueOf(id)).append("\n");
+                    writer.append(String.valueOf(id)).append(",EPIC,epic,NEW,epic,null,null\n");
+                    id += 2;
+                }
+                writer.append(String.valueOf(id++)).append(",TASK,task ").append(String.valueOf(i))
+                        .append(",NEW,").append(description).append(",null,null\n");
+            }
+            writer.close();
+        });
+        assertTrue(file.length() > 4 << 20);
+
+        FileBackedTaskManager loaded = FileBackedTaskManager.loadFromFile(file);
+        assertEquals(tasks, loaded.getTasks().size());
+        assertEquals(tasks / 1000, loaded.getEpics().size());
+        assertEquals(tasks / 1000, loaded.getSubtasks().size());
+        assertEquals("line, with \"quotes\"\n9999999,TASK,fake,NEW,\"not a record\",null,null\n",
+                loaded.getTasks().get(0).getDescription());
+        assertEquals(TaskStatus.DONE, loaded.getEpicById(1).getStatus());
+
+        Task next = new Task("next", "after load", TaskStatus.NEW);
+        loaded.createTask(next);
+        assertEquals(tasks + 2 * (tasks / 1000) + 1, next.getId());
+    }
+
+    @Test
+    void tornJournalTailIsTruncatedOnLoad() throws IOException {
+        File journal = new File(file.getPath() + ".journal");
+        journal.deleteOnExit();
+        FileBackedTaskManager journaled = new FileBackedTaskManager(file, PersistenceMode.JOURNAL);
+        for (int i = 0; i < 3; i++) {
+            journaled.createTask(new Task("Task" + i, "Description", TaskStatus.NEW));
+        }
+        journaled.close();
+        long intact = journal.length();
+
+        // процесс упал посреди записи: заголовок есть, а запись оборвана
+        Files.write(journal.toPath(), "@120,0badcafe,PUT,4,TASK,Lost".getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.APPEND);
+
+        FileBackedTaskManager loaded = FileBackedTaskManager.loadFromFile(file, PersistenceMode.JOURNAL);
+        assertEquals(3, loaded.getTasks().size());
+        assertEquals(intact, journal.length());
+
+        loaded.createTask(new Task("After recovery", "Description", TaskStatus.NEW));
+        loaded.close();
+        assertEquals(4, FileBackedTaskManager.loadFromFile(file, PersistenceMode.JOURNAL).getTasks().size());
+    }
+
+    @Test
+    void zeroFilledJournalTailIsTruncatedOnLoad() throws IOException {
+        File journal = new File(file.getPath() + ".journal");
+        journal.deleteOnExit();
+        FileBackedTaskManager journaled = new FileBackedTaskManager(file, PersistenceMode.JOURNAL);
+        journaled.createTask(new Task("Task1", "Description", TaskStatus.NEW));
+        journaled.createTask(new Task("Task2", "Description", TaskStatus.NEW));
+        journaled.close();
+        long intact = journal.length();
+
+        // после падения файловая система оставила в хвосте нули
+        Files.write(journal.toPath(), new byte[64], StandardOpenOption.APPEND);
+
+        FileBackedTaskManager loaded = FileBackedTaskManager.loadFromFile(file, PersistenceMode.JOURNAL);
+        assertEquals(2, loaded.getTasks().size());
+        assertEquals(intact, journal.length());
+    }
+
+    @Test
+    void journalRecordWithWrongChecksumEndsReplay() throws IOException {
+        File journal = new File(file.getPath() + ".journal");
+        journal.deleteOnExit();
+        FileBackedTaskManager journaled = new FileBackedTaskManager(file, PersistenceMode.JOURNAL);
+        journaled.createTask(new Task("Kept", "Description", TaskStatus.NEW));
+        journaled.createTask(new Task("Damaged", "Description", TaskStatus.NEW));
+        journaled.close();
+
+        byte[] bytes = Files.readAllBytes(journal.toPath());
+        String text = new String(bytes, StandardCharsets.UTF_8);
+        bytes[text.lastIndexOf("Damaged")] = 'd';
+        Files.write(journal.toPath(), bytes);
+
+        FileBackedTaskManager loaded = FileBackedTaskManager.loadFromFile(file, PersistenceMode.JOURNAL);
+        assertEquals(1, loaded.getTasks().size());
+        assertEquals("Kept", loaded.getTasks().get(0).getName());
+    }
+
+    @Test
+    void legacyJournalWithoutChecksumsIsLoadedAndCompacted() {
+        File journal = new File(file.getPath() + ".journal");
+        journal.deleteOnExit();
+        Assertions.assertDoesNotThrow(() -> {
+            BufferedWriter writer = new BufferedWriter(new FileWriter(journal));
+            writer.append("#gen,0\n");
+            writer.append("PUT,1,TASK,Task1,NEW,Description1,null,null\n");
+            writer.append("PUT,2,EPIC,Epic1,NEW,Description1,null,null\n");
+            writer.append("PUT,3,SUBTASK,Sub,DONE,Desc,null,null,2\n");
+            writer.close();
+        });
+
+        FileBackedTaskManager loaded = FileBackedTaskManager.loadFromFile(file, PersistenceMode.JOURNAL);
+        assertEquals(1, loaded.getTasks().size());
+        assertEquals(1, loaded.getEpicsSubtasksById(2).size());
+        assertFalse(journal.exists());
+    }
+
+    @Test
+    void corruptedSnapshotIsRejected() throws IOException {
+        manager.createTask(new Task("Task1", "Description1", TaskStatus.NEW));
+        manager.createTask(new Task("Task2", "Description2", TaskStatus.NEW));
+        assertFalse(new File(file.getPath() + ".tmp").exists());
+
+        String text = Files.readString(file.toPath());
+        Files.writeString(file.toPath(), text.replace("Description2", "Descriptiom2"));
+
+        assertThrows(ManagerSaveException.class, () -> FileBackedTaskManager.loadFromFile(file));
+    }
 }
@@ -115,4 +115,22 @@ class InMemoryHistoryManagerTest {
         historyManager.remove(task3.getId());
         assertTrue(historyManager.getHistory().isEmpty());
     }
-}
\ No newline at end of file
+
+    @Test
+    void historyKeepsOrderThroughRepeatedViews() {
+        for (int round = 0; round < 10; round++) {
+            for (int id = 1; id <= 5_000; id++) {
+                Task task = new Task("Task", "desc", TaskStatus.NEW);
+                task.setId(id * 7919);
+                historyManager.add(task);
+            }
+            for (int id = 2; id <= 5_000; id += 2) {
+                historyManager.remove(id * 7919);
+            }
+        }
+
+        assertEquals(2_500, historyManager.getHistory().size());
+        assertEquals(7919, historyManager.getHistory().getFirst().getId());
+        assertEquals(4_999 * 7919, historyManager.getHistory().getLast().getId());
+    }
+}
@@ -6,6 +6,7 @@ import service.InMemoryTaskManager;
 
 import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -63,4 +64,85 @@ class InMemoryTaskManagerTest extends TaskManagerTest<InMemoryTaskManager> {
         assertEquals(subtask, manager.getPrioritizedTasks().getLast());
     }
 
-}
\ No newline at end of file
+    @Test
+    void untimedTasksCanBeUpdatedAndDeletedNextToTimedOnes() {
+        manager.createTask(new Task("Timed", "desc", TaskStatus.NEW,
+                LocalDateTime.of(2023, 1, 1, 10, 0), Duration.ofMinutes(30)));
+        Task untimed = new Task("Untimed", "desc", TaskStatus.NEW);
+        manager.createTask(untimed);
+
+        untimed.setName("Renamed");
+        manager.updateTask(untimed);
+        assertEquals("Renamed", manager.getTaskById(untimed.getId()).getName());
+        manager.deleteTaskById(untimed.getId());
+
+        assertEquals(1, manager.getTasks().size());
+        assertEquals(1, manager.getPrioritizedTasks().size());
+    }
+
+    @Test
+    void movedTaskIsCheckedAgainstTasksAfterItsOldSlot() {
+        Task moved = new Task("Moved", "desc", TaskStatus.NEW,
+                LocalDateTime.of(2023, 1, 1, 12, 0), Duration.ofMinutes(60));
+        manager.createTask(moved);
+        manager.createTask(new Task("Later", "desc", TaskStatus.NEW,
+                LocalDateTime.of(2023, 1, 1, 15, 0), Duration.ofMinutes(60)));
+
+        moved.setStartTime(LocalDateTime.of(2023, 1, 1, 10, 0));
+        moved.setDuration(Duration.ofHours(6));
+        assertThrows(IllegalArgumentException.class, () -> manager.updateTask(moved));
+
+        moved.setDuration(Duration.ofHours(5));
+        manager.updateTask(moved);
+        assertEquals(LocalDateTime.of(2023, 1, 1, 10, 0), manager.getPrioritizedTasks().getFirst().getStartTime());
+    }
+
+    @Test
+    void boundariesAndZeroLengthTasks() {
+        LocalDateTime ten = LocalDateTime.of(2023, 1, 1, 10, 0);
+        manager.createTask(new Task("Instant", "desc", TaskStatus.NEW, ten, Duration.ZERO));
+        manager.createTask(new Task("Hour", "desc", TaskStatus.NEW, ten, Duration.ofMinutes(60)));
+        manager.createTask(new Task("Before", "desc", TaskStatus.NEW, ten.minusHours(1), Duration.ofMinutes(60)));
+
+        assertThrows(IllegalArgumentException.class, () -> manager.createTask(
+                new Task("Inside", "desc", TaskStatus.NEW, ten.plusMinutes(30), Duration.ZERO)));
+        assertThrows(IllegalArgumentException.class, () -> manager.createTask(
+                new Task("Same start", "desc", TaskStatus.NEW, ten, Duration.ofMinutes(1))));
+        manager.createTask(new Task("After", "desc", TaskStatus.NEW, ten.plusHours(1), Duration.ofMinutes(1)));
+        assertEquals(4, manager.getPrioritizedTasks().size());
+    }
+
+    @Test
+    void manyAdjacentTimedTasksAreCreated() {
+        LocalDateTime start = LocalDateTime.of(2023, 1, 1, 0, 0);
+        for (int i = 0; i < 200_000; i++) {
+            manager.createTask(new Task("Task", "desc", TaskStatus.NEW,
+                    start.plusMinutes(i * 10L), Duration.ofMinutes(10)));
+        }
+        List<Task> prioritized = manager.getPrioritizedTasks();
+        assertEquals(200_000, prioritized.size());
+        assertEquals(start, prioritized.get(0).getStartTime());
+        assertEquals(start.plusMinutes(199_999 * 10L), prioritized.get(199_999).getStartTime());
+    }
+
+    @Test
+    void storesSurviveHeavyCreateDeleteChurn() {
+        List<Integer> alive = new ArrayList<>();
+        for (int round = 0; round < 20; round++) {
+            for (int i = 0; i < 1_000; i++) {
+                Task task = new Task("Task", "desc", TaskStatus.NEW);
+                manager.createTask(task);
+                alive.add(task.getId());
+            }
+            for (int i = alive.size() - 1; i >= 0; i -= 2) {
+                manager.deleteTaskById(alive.remove(i));
+            }
+        }
+
+        assertEquals(alive.size(), manager.getTasks().size());
+        assertEquals(alive, manager.getTasks().stream().map(Task::getId).sorted().toList());
+        alive.forEach(taskId -> assertNotNull(manager.getTaskById(taskId)));
+        assertNull(manager.getTaskById(null));
+        assertNull(manager.getTaskById(alive.getLast() + 1));
+    }
+}
@@ -0,0 +1,105 @@
+import model.Epic;
+import model.Subtask;
+import model.Task;
+import model.TaskStatus;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import service.FileBackedTaskManager;
+import service.PersistenceMode;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SegmentStoreTest extends TaskManagerTest<FileBackedTaskManager> {
+
+    private File directory;
+
+    @Override
+    protected FileBackedTaskManager createManager() {
+        Assertions.assertDoesNotThrow(() -> {
+            directory = new File(Files.createTempDirectory("test").toFile(), "board.segments");
+            directory.getParentFile().deleteOnExit();
+        });
+
+        return new FileBackedTaskManager(directory);
+    }
+
+    private Object fileKey(String name) throws IOException {
+        return Files.readAttributes(new File(directory, name).toPath(), BasicFileAttributes.class).fileKey();
+    }
+
+    @Test
+    void changeTouchesOnlyItsEpicSegment() throws IOException {
+        manager.createTask(new Task("Task", "Description", TaskStatus.NEW));
+        Epic epic1 = new Epic("Epic 1", "Description");
+        manager.createEpic(epic1);
+        Epic epic2 = new Epic("Epic 2", "Description");
+        manager.createEpic(epic2);
+        manager.createSubtask(new Subtask("Sub", "Description", TaskStatus.NEW, epic2.getId()));
+
+        Object tasksKey = fileKey("tasks.seg");
+        Object epic1Key = fileKey("epic-" + epic1.getId() + ".seg");
+        Object epic2Key = fileKey("epic-" + epic2.getId() + ".seg");
+        Object manifestKey = fileKey("manifest");
+
+        manager.createSubtask(new Subtask("Sub 2", "Description", TaskStatus.DONE, epic2.getId()));
+
+        assertEquals(tasksKey, fileKey("tasks.seg"));
+        assertEquals(epic1Key, fileKey("epic-" + epic1.getId() + ".seg"));
+        assertEquals(manifestKey, fileKey("manifest"));
+        assertNotEquals(epic2Key, fileKey("epic-" + epic2.getId() + ".seg"));
+
+        FileBackedTaskManager loaded = FileBackedTaskManager.loadFromFile(directory);
+        assertEquals(1, loaded.getTasks().size());
+        assertEquals(2, loaded.getEpicsSubtasksById(epic2.getId()).size());
+        assertEquals(TaskStatus.IN_PROGRESS, loaded.getEpicById(epic2.getId()).getStatus());
+        assertTrue(loaded.getEpicsSubtasksById(epic1.getId()).isEmpty());
+    }
+
+    @Test
+    void deletedEpicsLoseTheirSegments() {
+        Epic epic1 = new Epic("Epic 1", "Description");
+        manager.createEpic(epic1);
+        Epic epic2 = new Epic("Epic 2", "Description");
+        manager.createEpic(epic2);
+        manager.createSubtask(new Subtask("Sub", "Description", TaskStatus.NEW, epic2.getId()));
+
+        manager.deleteEpicById(epic1.getId());
+        assertFalse(new File(directory, "epic-" + epic1.getId() + ".seg").exists());
+        assertEquals(1, FileBackedTaskManager.loadFromFile(directory).getEpics().size());
+
+        manager.deleteAllEpics();
+        manager.createEpic(new Epic("Epic 3", "Description"));
+        String[] segments = directory.list((dir, name) -> name.startsWith("epic-"));
+        assertEquals(1, segments.length);
+
+        FileBackedTaskManager loaded = FileBackedTaskManager.loadFromFile(directory);
+        assertEquals(1, loaded.getEpics().size());
+        assertTrue(loaded.getSubtasks().isEmpty());
+    }
+
+    @Test
+    void journalCompactsIntoSegments() {
+        new File(directory.getPath() + ".journal").deleteOnExit();
+        FileBackedTaskManager journaled = new FileBackedTaskManager(directory, PersistenceMode.JOURNAL);
+
+        for (int i = 0; i < 20; i++) {
+            Epic epic = new Epic("Epic " + i, "Description");
+            journaled.createEpic(epic);
+            journaled.createSubtask(new Subtask("Sub " + i, "Description", TaskStatus.DONE, epic.getId()));
+        }
+        journaled.compact();
+        journaled.createTask(new Task("After compaction", "Description", TaskStatus.NEW));
+        journaled.close();
+
+        FileBackedTaskManager loaded = FileBackedTaskManager.loadFromFile(directory, PersistenceMode.JOURNAL);
+        assertEquals(20, loaded.getEpics().size());
+        assertEquals(20, loaded.getSubtasks().size());
+        assertEquals(1, loaded.getTasks().size());
+        assertEquals(20, directory.list((dir, name) -> name.startsWith("epic-")).length);
+    }
+}
@@ -0,0 +1,132 @@
+import model.Epic;
+import model.Subtask;
+import model.Task;
+import model.TaskStatus;
+import org.junit.jupiter.api.Test;
+import service.InMemoryTaskManager;
+import service.SlotCalendar;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SlotCalendarTest extends TaskManagerTest<InMemoryTaskManager> {
+
+    private static final LocalDateTime HORIZON = LocalDateTime.of(2020, 1, 1, 0, 0);
+    private static final Duration SLOT = Duration.ofMinutes(15);
+
+    @Override
+    protected InMemoryTaskManager createManager() {
+        InMemoryTaskManager result = new InMemoryTaskManager();
+        result.setSlotCalendar(new SlotCalendar(HORIZON, Duration.ofDays(3660), SLOT));
+        return result;
+    }
+
+    private static LocalDateTime slot(long index) {
+        return HORIZON.plus(SLOT.multipliedBy(index));
+    }
+
+    @Test
+    void windowsAcrossWordsAndPages() {
+        SlotCalendar calendar = new SlotCalendar(HORIZON, SLOT.multipliedBy(10_000), SLOT);
+
+        assertTrue(calendar.reserve(slot(60), SLOT.multipliedBy(10)));
+        assertTrue(calendar.reserve(slot(4090), SLOT.multipliedBy(20)));
+        assertEquals(30, calendar.getOccupiedSlots());
+
+        assertFalse(calendar.isFree(slot(69), SLOT));
+        assertTrue(calendar.isFree(slot(70), SLOT.multipliedBy(4020)));
+        assertFalse(calendar.isFree(slot(4000), SLOT.multipliedBy(5000)));
+        assertFalse(calendar.reserve(slot(4109), SLOT.multipliedBy(2)));
+        assertTrue(calendar.reserve(slot(4110), SLOT.multipliedBy(5890)));
+
+        calendar.release(slot(4090), SLOT.multipliedBy(20));
+        assertTrue(calendar.isFree(slot(4090), SLOT.multipliedBy(20)));
+        assertEquals(10 + 5890, calendar.getOccupiedSlots());
+    }
+
+    @Test
+    void onlyAlignedWindowsInsideHorizonAreAccepted() {
+        SlotCalendar calendar = new SlotCalendar(HORIZON, Duration.ofDays(1), SLOT);
+
+        assertTrue(calendar.isAligned(slot(4), Duration.ofHours(1)));
+        assertFalse(calendar.isAligned(slot(4).plusMinutes(5), Duration.ofHours(1)));
+        assertFalse(calendar.isAligned(slot(4), Duration.ofMinutes(20)));
+        assertFalse(calendar.isAligned(slot(4), Duration.ZERO));
+        assertFalse(calendar.isAligned(HORIZON.minusDays(1), Duration.ofHours(1)));
+        assertFalse(calendar.isAligned(slot(95), Duration.ofMinutes(30)));
+        assertThrows(IllegalArgumentException.class, () -> calendar.reserve(slot(4).plusMinutes(5), SLOT));
+        assertThrows(IllegalArgumentException.class,
+                () -> new SlotCalendar(HORIZON, Duration.ofMinutes(100), SLOT));
+        assertThrows(IllegalArgumentException.class, () -> new SlotCalendar(HORIZON, Duration.ofDays(1), Duration.ZERO));
+    }
+
+    @Test
+    void managerKeepsCalendarInSyncWithTasks() {
+        Task task = new Task("Task", "desc", TaskStatus.NEW, slot(100), Duration.ofHours(1));
+        manager.createTask(task);
+        SlotCalendar calendar = manager.getSlotCalendar();
+        assertEquals(4, calendar.getOccupiedSlots());
+
+        task.setStartTime(slot(102));
+        manager.updateTask(task);
+        assertEquals(4, calendar.getOccupiedSlots());
+        assertFalse(calendar.isFree(slot(105), SLOT));
+        assertTrue(calendar.isFree(slot(100), SLOT.multipliedBy(2)));
+
+        manager.createEpic(epic);
+        manager.createSubtask(new Subtask("Sub", "desc", TaskStatus.NEW, slot(110), SLOT, epic.getId()));
+        assertEquals(5, calendar.getOccupiedSlots());
+        manager.deleteEpicById(epic.getId());
+        manager.deleteTaskById(task.getId());
+        assertEquals(0, calendar.getOccupiedSlots());
+    }
+
+    @Test
+    void unalignedTasksAreCheckedExactly() {
+        manager.createTask(new Task("Odd", "desc", TaskStatus.NEW, slot(10).plusMinutes(7), Duration.ofMinutes(5)));
+        assertEquals(0, manager.getSlotCalendar().getOccupiedSlots());
+
+        assertThrows(IllegalArgumentException.class, () -> manager.createTask(
+                new Task("Aligned", "desc", TaskStatus.NEW, slot(10), SLOT)));
+        manager.createTask(new Task("Next", "desc", TaskStatus.NEW, slot(11), SLOT));
+        assertThrows(IllegalArgumentException.class, () -> manager.createTask(
+                new Task("Unaligned", "desc", TaskStatus.NEW, slot(11).plusMinutes(1), Duration.ofMinutes(1))));
+    }
+
+    @Test
+    void calendarCanBeAttachedToExistingBoard() {
+        InMemoryTaskManager board = new InMemoryTaskManager();
+        board.createTask(new Task("Task", "desc", TaskStatus.NEW, slot(8), Duration.ofHours(2)));
+        Epic epic1 = new Epic("Epic", "desc");
+        board.createEpic(epic1);
+        board.createSubtask(new Subtask("Sub", "desc", TaskStatus.NEW, slot(20), SLOT, epic1.getId()));
+
+        SlotCalendar calendar = new SlotCalendar(HORIZON, Duration.ofDays(30), SLOT);
+        board.setSlotCalendar(calendar);
+        assertEquals(9, calendar.getOccupiedSlots());
+        assertThrows(IllegalArgumentException.class, () -> board.createTask(
+                new Task("Clash", "desc", TaskStatus.NEW, slot(15), SLOT)));
+        assertThrows(IllegalArgumentException.class, () -> new InMemoryTaskManager().setSlotCalendar(calendar));
+    }
+
+    @Test
+    void autoPlanningAttemptsAreCheap() {
+        int placed = 0;
+        long started = System.nanoTime();
+        for (int attempt = 0; attempt < 100_000; attempt++) {
+            Task task = new Task("Auto", "desc", TaskStatus.NEW,
+                    slot((attempt * 7919L) % 50_000), SLOT.multipliedBy(1 + attempt % 4));
+            try {
+                manager.createTask(task);
+                placed++;
+            } catch (IllegalArgumentException e) {
+                // окно занято, планировщик пробует следующее
+            }
+        }
+        assertTrue(System.nanoTime() - started < 30_000_000_000L);
+        assertEquals(placed, manager.getPrioritizedTasks().size());
+        assertTrue(placed > 0);
+    }
+}
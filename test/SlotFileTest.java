@@ -0,0 +1,164 @@
+import model.Epic;
+import model.Subtask;
+import model.Task;
+import model.TaskStatus;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import service.FileBackedTaskManager;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SlotFileTest extends TaskManagerTest<FileBackedTaskManager> {
+
+    private File file;
+
+    @Override
+    protected FileBackedTaskManager createManager() {
+        Assertions.assertDoesNotThrow(() -> {
+            file = File.createTempFile("test", ".slots");
+            file.deleteOnExit();
+        });
+
+        return new FileBackedTaskManager(file);
+    }
+
+    @Test
+    void updatesAndDeletesSurviveReload() {
+        Task task1 = new Task("Task", "Description", TaskStatus.NEW);
+        manager.createTask(task1);
+        Task task2 = new Task("Task 2", "Description", TaskStatus.NEW);
+        manager.createTask(task2);
+        Epic epic1 = new Epic("Epic", "Epic description");
+        manager.createEpic(epic1);
+        Subtask sub1 = new Subtask("Sub 1", "Desc", TaskStatus.DONE, epic1.getId());
+        manager.createSubtask(sub1);
+        Subtask sub2 = new Subtask("Sub 2", "Desc", TaskStatus.NEW, epic1.getId());
+        manager.createSubtask(sub2);
+        Epic epic2 = new Epic("Epic 2", "Removed");
+        manager.createEpic(epic2);
+        manager.createSubtask(new Subtask("Orphan", "Desc", TaskStatus.NEW, epic2.getId()));
+
+        Task updated = new Task("Task renamed", "New description", TaskStatus.IN_PROGRESS,
+                LocalDateTime.of(2024, 1, 3, 10, 0), Duration.ofMinutes(15));
+        updated.setId(task1.getId());
+        manager.deleteTaskById(task2.getId());
+        manager.deleteSubtaskById(sub2.getId());
+        manager.deleteEpicById(epic2.getId());
+        manager.updateTask(updated);
+        manager.close();
+
+        FileBackedTaskManager loaded = FileBackedTaskManager.loadFromFile(file);
+        assertEquals(1, loaded.getTasks().size());
+        assertEquals("Task renamed", loaded.getTaskById(task1.getId()).getName());
+        assertEquals(TaskStatus.IN_PROGRESS, loaded.getTaskById(task1.getId()).getStatus());
+        assertEquals(1, loaded.getEpics().size());
+        assertEquals(1, loaded.getSubtasks().size());
+        assertEquals(TaskStatus.DONE, loaded.getEpicById(epic1.getId()).getStatus());
+        assertEquals(updated.getStartTime(), loaded.getTaskById(task1.getId()).getStartTime());
+    }
+
+    @Test
+    void changesRewriteSlotsInPlace() {
+        for (int i = 0; i < 100; i++) {
+            manager.createTask(new Task("Task " + i, "Description", TaskStatus.NEW));
+        }
+        long size = file.length();
+
+        // изменённая запись пишется в свободный слот, поэтому сначала освобождаем его удалением
+        manager.deleteTaskById(2);
+        Task updated = new Task("Task 0", "Other description", TaskStatus.DONE);
+        updated.setId(1);
+        manager.updateTask(updated);
+        manager.createTask(new Task("Reuses the freed slot", "Description", TaskStatus.NEW));
+        assertEquals(size, file.length());
+
+        FileBackedTaskManager loaded = FileBackedTaskManager.loadFromFile(file);
+        assertEquals(100, loaded.getTasks().size());
+        assertEquals("Other description", loaded.getTaskById(1).getDescription());
+        assertNull(loaded.getTaskById(2));
+    }
+
+    @Test
+    void longRecordsSpanSeveralSlots() {
+        String longDescription = "Длинное описание, ".repeat(100);
+        Task task = new Task("Long", longDescription, TaskStatus.NEW);
+        manager.createTask(task);
+        manager.createTask(new Task("Short", "Description", TaskStatus.NEW));
+
+        Task shorter = new Task("Long", "Short now", TaskStatus.NEW);
+        shorter.setId(task.getId());
+        manager.updateTask(shorter);
+        manager.createTask(new Task("Next", longDescription.substring(0, 500), TaskStatus.NEW));
+
+        FileBackedTaskManager loaded = FileBackedTaskManager.loadFromFile(file);
+        assertEquals(3, loaded.getTasks().size());
+        assertEquals("Short now", loaded.getTaskById(task.getId()).getDescription());
+        assertEquals(longDescription.substring(0, 500), loaded.getTaskById(task.getId() + 2).getDescription());
+    }
+
+    @Test
+    void chainsCrossingReadBlocksSurviveReload() {
+        for (int i = 0; i < 600; i++) {
+            manager.createTask(new Task("Task " + i, "Description", TaskStatus.NEW));
+        }
+        // освободившийся младший слот и хвост файла попадают в разные блоки чтения
+        manager.deleteTaskById(2);
+        String longDescription = "Длинное описание, ".repeat(20);
+        Task longer = new Task("Task 599", longDescription, TaskStatus.DONE);
+        longer.setId(600);
+        manager.updateTask(longer);
+
+        FileBackedTaskManager loaded = FileBackedTaskManager.loadFromFile(file);
+        assertEquals(599, loaded.getTasks().size());
+        assertEquals(longDescription, loaded.getTaskById(600).getDescription());
+        assertEquals("Task 0", loaded.getTaskById(1).getName());
+    }
+
+    @Test
+    void clearedTypesAreRemovedOnWriteBehindFlush() {
+        manager.setWriteBehind(1024);
+        Epic epic1 = new Epic("Epic", "Epic description");
+        manager.createEpic(epic1);
+        for (int i = 0; i < 10; i++) {
+            manager.createSubtask(new Subtask("Sub " + i, "Desc", TaskStatus.DONE, epic1.getId()));
+            manager.createTask(new Task("Task " + i, "Desc", TaskStatus.NEW));
+        }
+        manager.flush();
+        manager.deleteAllSubtasks();
+        manager.createTask(new Task("After clear", "Desc", TaskStatus.NEW));
+        manager.close();
+
+        FileBackedTaskManager loaded = FileBackedTaskManager.loadFromFile(file);
+        assertEquals(11, loaded.getTasks().size());
+        assertTrue(loaded.getSubtasks().isEmpty());
+        assertEquals(TaskStatus.NEW, loaded.getEpicById(epic1.getId()).getStatus());
+    }
+
+    @Test
+    void damagedSlotIsSkippedOnLoad() throws IOException {
+        manager.createTask(new Task("Kept", "Description", TaskStatus.NEW));
+        Task damaged = new Task("Damaged", "Description", TaskStatus.NEW);
+        manager.createTask(damaged);
+        manager.close();
+
+        // второй слот: заголовок файла 64 байта, слот 128 байт, payload после 11 байт заголовка слота
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(64 + 128 + 20);
+            raf.write('x');
+        }
+
+        FileBackedTaskManager loaded = FileBackedTaskManager.loadFromFile(file);
+        assertEquals(1, loaded.getTasks().size());
+        assertNull(loaded.getTaskById(damaged.getId()));
+
+        loaded.createTask(new Task("Reuses the damaged slot", "Description", TaskStatus.NEW));
+        loaded.close();
+        assertEquals(2, FileBackedTaskManager.loadFromFile(file).getTasks().size());
+    }
+}
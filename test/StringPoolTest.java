@@ -0,0 +1,114 @@
+import model.Epic;
+import model.Subtask;
+import model.Task;
+import model.TaskStatus;
+import org.junit.jupiter.api.Test;
+import service.FileBackedTaskManager;
+import service.InMemoryTaskManager;
+import service.Managers;
+import service.StringPool;
+import service.TaskManager;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StringPoolTest {
+
+    private static String copy(String value) {
+        return new String(value.toCharArray());
+    }
+
+    @Test
+    void equalStringsShareOneInstance() {
+        StringPool pool = new StringPool(100);
+        String first = copy("Подготовить релиз");
+        String second = copy("Подготовить релиз");
+
+        assertSame(first, pool.intern(first));
+        assertSame(first, pool.intern(second));
+        assertSame(first, pool.intern(first));
+        assertNull(pool.intern(null));
+
+        assertEquals(128, pool.getCapacity());
+        assertEquals(1, pool.getHits());
+        assertEquals(24 + 16 + 2 * 17 + 6, pool.getBytesSaved());
+        assertThrows(IllegalArgumentException.class, () -> new StringPool(0));
+    }
+
+    @Test
+    void poolIsBoundedByCapacity() {
+        StringPool pool = new StringPool(4);
+        for (int i = 0; i < 1_000; i++) {
+            pool.intern("value" + i);
+        }
+        assertEquals(4, pool.getCapacity());
+
+        int pooled = 0;
+        for (int i = 0; i < 1_000; i++) {
+            String value = "value" + i;
+            if (pool.intern(value) != value) {
+                pooled++;
+            }
+        }
+        assertTrue(pooled <= 4);
+    }
+
+    @Test
+    void managerDeduplicatesCreatedAndUpdatedTasks() {
+        StringPool pool = new StringPool(1024);
+        InMemoryTaskManager manager = new InMemoryTaskManager(Managers.openStore("memory", null), pool);
+        Epic epic1 = new Epic("Epic", "Шаблон описания");
+        manager.createEpic(epic1);
+        for (int i = 0; i < 10; i++) {
+            manager.createSubtask(new Subtask(copy("Проверить"), copy("Шаблон описания"), TaskStatus.NEW,
+                    epic1.getId()));
+        }
+        Task task = new Task("Task", "Desc", TaskStatus.NEW);
+        manager.createTask(task);
+        task.setName(copy("Проверить"));
+        manager.updateTask(task);
+
+        List<Subtask> subtasks = manager.getSubtasks();
+        String name = subtasks.get(0).getName();
+        subtasks.forEach(subtask -> assertSame(name, subtask.getName()));
+        subtasks.forEach(subtask -> assertSame(manager.getEpicById(epic1.getId()).getDescription(),
+                subtask.getDescription()));
+        assertSame(name, manager.getTaskById(task.getId()).getName());
+        assertTrue(pool.getBytesSaved() > 0);
+    }
+
+    @Test
+    void poolAppliesToLoadedTasks() throws IOException {
+        File file = File.createTempFile("test", ".csv");
+        file.deleteOnExit();
+        FileBackedTaskManager source = new FileBackedTaskManager(file);
+        for (int i = 0; i < 5; i++) {
+            source.createTask(new Task("Повтор", "Описание", TaskStatus.NEW));
+        }
+
+        FileBackedTaskManager loaded = FileBackedTaskManager.loadFromFile(file);
+        assertNotSame(loaded.getTaskById(1).getName(), loaded.getTaskById(2).getName());
+        StringPool pool = new StringPool(64);
+        loaded.setStringPool(pool);
+
+        List<Task> tasks = loaded.getTasks();
+        tasks.forEach(task -> assertSame(tasks.get(0).getName(), task.getName()));
+        tasks.forEach(task -> assertSame(tasks.get(0).getDescription(), task.getDescription()));
+        assertEquals(8, pool.getHits());
+    }
+
+    @Test
+    void defaultManagerUsesConfiguredPool() {
+        System.setProperty(Managers.STRING_POOL_PROPERTY, "256");
+        try {
+            TaskManager manager = Managers.getDefault();
+            assertEquals(256, ((InMemoryTaskManager) manager).getStringPool().getCapacity());
+        } finally {
+            System.clearProperty(Managers.STRING_POOL_PROPERTY);
+        }
+        assertNull(((InMemoryTaskManager) Managers.getDefault()).getStringPool());
+    }
+}
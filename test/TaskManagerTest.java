@@ -1,7 +1,9 @@
 import model.Epic;
+import model.EpicView;
 import model.Subtask;
 import model.Task;
 import model.TaskStatus;
+import model.TaskView;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import service.TaskManager;
@@ -797,4 +799,34 @@ public abstract class TaskManagerTest<T extends TaskManager> {
         assertEquals(expectedEnd, manager.getEpicById(epic.getId()).getEndTime());
         assertEquals(expectedStart, manager.getEpicById(epic.getId()).getStartTime());
     }
+
+    @Test
+    void viewsShareStoredObjectsWithoutHistory() {
+        manager.createTask(task);
+        manager.createEpic(epic);
+        Subtask sub = new Subtask("Sub", "desc", TaskStatus.NEW, epic.getId());
+        manager.createSubtask(sub);
+
+        TaskView taskView = manager.viewTask(task.getId());
+        assertEquals(taskView, manager.viewTask(task.getId()));
+        assertFalse(taskView instanceof Task);
+        assertFalse(manager.viewEpic(epic.getId()) instanceof Epic);
+        assertEquals(task.getName(), taskView.getName());
+        assertEquals(epic.getId(), manager.viewSubtask(sub.getId()).getEpicId());
+        assertNull(manager.viewTask(sub.getId()));
+        assertTrue(manager.getHistory().isEmpty());
+
+        EpicView epicView = manager.viewEpic(epic.getId());
+        assertEquals(1, epicView.getSubtaskCount());
+        assertTrue(epicView.containsSubtask(sub.getId()));
+        sub.setStatus(TaskStatus.DONE);
+        manager.updateSubtask(sub);
+        assertEquals(TaskStatus.DONE, epicView.getStatus());
+        assertEquals(TaskStatus.DONE, manager.viewSubtask(sub.getId()).getStatus());
+
+        task.setName("Renamed");
+        manager.updateTask(task);
+        assertEquals("Test model.Task", taskView.getName());
+        assertEquals("Renamed", manager.viewTask(task.getId()).getName());
+    }
 }
@@ -0,0 +1,109 @@
+import model.Epic;
+import model.Subtask;
+import model.Task;
+import model.TaskStatus;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import service.FileTaskStore;
+import service.InMemoryTaskManager;
+import service.Managers;
+import service.NoOpTaskStore;
+import service.TaskManager;
+import service.TaskStore;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TaskStoreTest extends TaskManagerTest<InMemoryTaskManager> {
+
+    private File file;
+
+    @Override
+    protected InMemoryTaskManager createManager() {
+        Assertions.assertDoesNotThrow(() -> {
+            file = File.createTempFile("test", ".bin");
+            file.deleteOnExit();
+            new File(file.getPath() + ".journal").deleteOnExit();
+        });
+
+        FileTaskStore store = (FileTaskStore) Managers.openStore("binary", file.getPath());
+        store.setSnapshotThreshold(3);
+        return new InMemoryTaskManager(store);
+    }
+
+    private File tempFile(String suffix) throws IOException {
+        File result = File.createTempFile("test", suffix);
+        result.deleteOnExit();
+        new File(result.getPath() + ".journal").deleteOnExit();
+        return result;
+    }
+
+    @Test
+    void providersAreDiscovered() {
+        assertTrue(Managers.getStoreNames().containsAll(List.of("memory", "csv", "binary", "compact")));
+        assertSame(NoOpTaskStore.class, Managers.openStore("memory", null).getClass());
+        assertThrows(IllegalArgumentException.class, () -> Managers.openStore("unknown", null));
+    }
+
+    @Test
+    void changesSurviveReopenThroughEveryFileStore() throws IOException {
+        for (String name : new String[]{"csv", "binary", "compact"}) {
+            File target = tempFile("." + name);
+            try (InMemoryTaskManager first = new InMemoryTaskManager(Managers.openStore(name, target.getPath()))) {
+                first.createTask(new Task("Task", "Desc", TaskStatus.NEW,
+                        LocalDateTime.of(2024, 5, 1, 9, 0), Duration.ofMinutes(30)));
+                Epic epic1 = new Epic("Epic", "Epic description");
+                first.createEpic(epic1);
+                first.createSubtask(new Subtask("Sub", "Sub description", TaskStatus.DONE, epic1.getId()));
+                first.createTask(new Task("Deleted", "Desc", TaskStatus.NEW,
+                        LocalDateTime.of(2024, 5, 2, 9, 0), Duration.ofMinutes(30)));
+                first.deleteTaskById(4);
+            }
+
+            try (InMemoryTaskManager reopened = new InMemoryTaskManager(Managers.openStore(name, target.getPath()))) {
+                assertEquals(1, reopened.getTasks().size(), name);
+                assertEquals(TaskStatus.DONE, reopened.getEpicById(2).getStatus(), name);
+                assertEquals("Sub description", reopened.getSubtaskById(3).getDescription(), name);
+                reopened.createTask(new Task("Next", "Desc", TaskStatus.NEW));
+                assertEquals(2, reopened.getTasks().size(), name);
+            }
+            assertFalse(new File(target.getPath() + ".journal").length() > 200, name);
+        }
+    }
+
+    @Test
+    void journalIsReplacedBySnapshotAtThreshold() {
+        File journal = new File(file.getPath() + ".journal");
+        manager.createTask(new Task("One", "Desc", TaskStatus.NEW));
+        manager.createTask(new Task("Two", "Desc", TaskStatus.NEW));
+        assertTrue(journal.exists());
+        manager.createTask(new Task("Three", "Desc", TaskStatus.NEW));
+        assertFalse(journal.exists());
+        assertTrue(file.length() > 0);
+    }
+
+    @Test
+    void defaultManagerUsesConfiguredStore() throws IOException {
+        File target = tempFile(".csv");
+        System.setProperty(Managers.STORE_PROPERTY, "csv");
+        System.setProperty(Managers.STORE_LOCATION_PROPERTY, target.getPath());
+        try {
+            TaskManager configured = Managers.getDefault();
+            configured.createTask(new Task("Stored", "Desc", TaskStatus.NEW));
+            ((InMemoryTaskManager) configured).close();
+
+            assertEquals("Stored", Managers.getDefault().getTaskById(1).getName());
+        } finally {
+            System.clearProperty(Managers.STORE_PROPERTY);
+            System.clearProperty(Managers.STORE_LOCATION_PROPERTY);
+        }
+
+        TaskStore store = Managers.getDefaultStore();
+        assertInstanceOf(NoOpTaskStore.class, store);
+    }
+}
@@ -135,4 +135,42 @@ class TaskTest {
     void testGetEndTimeWhenStartAndDurationAreNull() {
         assertNull(task.getEndTime());
     }
-}
\ No newline at end of file
+
+    @Test
+    void timeFieldsRoundTripWithNanos() {
+        LocalDateTime start = LocalDateTime.of(2024, 5, 1, 9, 15, 30, 999_999_999);
+        Duration duration = Duration.ofSeconds(90, 2);
+        task.setStartTime(start);
+        task.setDuration(duration);
+
+        assertEquals(start, task.getStartTime());
+        assertEquals(duration, task.getDuration());
+        assertEquals(start.plus(duration), task.getEndTime());
+        assertEquals(start.plus(duration), task.cloneTask().getEndTime());
+
+        task.setDuration(null);
+        assertNull(task.getEndTime());
+        assertEquals(Task.NO_TIME, task.getDurationSeconds());
+        task.setStartTime(LocalDateTime.of(1960, 1, 1, 0, 0));
+        task.setDuration(Duration.ofMinutes(5));
+        assertEquals(LocalDateTime.of(1960, 1, 1, 0, 5), task.getEndTime());
+    }
+
+    @Test
+    void overlapChecksCompareStoredTimes() {
+        LocalDateTime ten = LocalDateTime.of(2024, 1, 1, 10, 0);
+        Task hour = new Task("Hour", "desc", TaskStatus.NEW, ten, Duration.ofHours(1));
+        Task next = new Task("Next", "desc", TaskStatus.NEW, ten.plusHours(1), Duration.ofMinutes(1));
+        Task point = new Task("Point", "desc", TaskStatus.NEW, ten.plusMinutes(30), null);
+
+        assertFalse(hour.overlaps(next));
+        assertTrue(hour.overlaps(point));
+        assertTrue(point.overlaps(hour));
+        assertTrue(hour.compareStartTime(next) < 0);
+        assertTrue(next.compareEndTime(hour) > 0);
+        assertTrue(point.compareEndTime(hour) < 0);
+
+        next.setStartTime(ten.plusMinutes(59).plusSeconds(59).plusNanos(1));
+        assertTrue(hour.overlaps(next));
+    }
+}